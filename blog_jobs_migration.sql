@@ -0,0 +1,22 @@
+-- 博客生成任务队列迁移脚本
+-- POST /api/papers/{paperId}/generate-blog 只写入任务并返回任务ID，由后台工作线程调用DeepSeek生成博客
+
+CREATE TABLE IF NOT EXISTS blog_jobs (
+    job_id INT AUTO_INCREMENT PRIMARY KEY,
+    user_id INT NOT NULL,
+    paper_id INT NOT NULL,
+    status VARCHAR(16) NOT NULL DEFAULT 'queued',   -- queued / running / succeeded / failed
+    attempts INT NOT NULL DEFAULT 0,                -- 已尝试次数
+    recommendation_id INT NULL,                     -- 成功后写入的推荐记录ID
+    error_message TEXT NULL,                        -- 失败原因
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    started_at TIMESTAMP NULL,
+    finished_at TIMESTAMP NULL,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    INDEX idx_blog_jobs_status (status, job_id),
+    INDEX idx_blog_jobs_user_paper (user_id, paper_id, status),
+    FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE CASCADE,
+    FOREIGN KEY (paper_id) REFERENCES papers(paper_id) ON DELETE CASCADE
+);
+
+COMMIT;
@@ -0,0 +1,14 @@
+-- 抓取检查点迁移脚本
+-- 记录每个arXiv分类的抓取进度，使FetchOrchestrator可以断点续抓并增量抓取
+
+CREATE TABLE IF NOT EXISTS harvest_state (
+    category VARCHAR(64) PRIMARY KEY,           -- arXiv分类查询，如 cs.*
+    window_start DATETIME NOT NULL,             -- 当前抓取窗口起点（UTC，submittedDate）
+    window_end DATETIME NOT NULL,               -- 当前抓取窗口终点（UTC，submittedDate）
+    page_offset INT NOT NULL DEFAULT 0,         -- 当前窗口内已入库的结果偏移量
+    last_submitted_at DATETIME NULL,            -- 已入库论文的最新提交时间（水位线，UTC）
+    completed BOOLEAN NOT NULL DEFAULT FALSE,   -- 当前窗口是否已全部入库
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
+
+COMMIT;
@@ -0,0 +1,17 @@
+-- 迁移脚本：任务去重由数据库保证
+-- 原先的去重是先查询再插入，只有同一JVM内的synchronized保护，多个节点可能为同一去重键各插入一个任务。
+-- active_key在任务未结束时等于dedupe_key，结束（成功或失败）时置为NULL，
+-- (job_type, active_key)上的唯一键保证同一类型和去重键同时只有一个未结束的任务（NULL不参与唯一性检查）
+
+ALTER TABLE jobs
+    ADD COLUMN active_key VARCHAR(191) NULL,        -- 未结束任务的去重键，结束后为NULL
+    ADD UNIQUE KEY uk_jobs_active (job_type, active_key);
+
+-- 已有的未结束任务：每个去重键只为最新的任务设置active_key
+UPDATE jobs j
+JOIN (SELECT job_type, dedupe_key, MAX(job_id) AS job_id FROM jobs
+      WHERE status IN ('queued', 'running') AND dedupe_key IS NOT NULL
+      GROUP BY job_type, dedupe_key) latest ON j.job_id = latest.job_id
+SET j.active_key = j.dedupe_key;
+
+COMMIT;
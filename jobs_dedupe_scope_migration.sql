@@ -0,0 +1,8 @@
+-- 迁移脚本：只在排队期间去重的任务
+-- 候选集刷新等任务在执行时读取最新数据：已开始执行的任务可能使用了旧数据，新的提交不能合并进去，
+-- 这类任务被领取时即清除active_key，之后相同去重键的提交会排入新的任务
+
+ALTER TABLE jobs
+    ADD COLUMN dedupe_while_running TINYINT(1) NOT NULL DEFAULT 1;  -- 0：只与排队中的任务去重
+
+COMMIT;
@@ -0,0 +1,37 @@
+-- 迁移脚本：通用任务队列
+-- 所有后台任务（博客生成、用户兴趣向量生成）写入jobs表，由各节点的工作线程以 FOR UPDATE SKIP LOCKED 领取；
+-- 领取后available_at设为可见性超时的截止时间，工作线程崩溃后任务超时即可被重新领取，进程重启不会丢失任务
+
+CREATE TABLE IF NOT EXISTS jobs (
+    job_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    job_type VARCHAR(32) NOT NULL,                  -- blog / interest_embedding
+    payload JSON NOT NULL,                          -- 任务参数
+    priority INT NOT NULL DEFAULT 0,                -- 越大越先执行
+    dedupe_key VARCHAR(191) NULL,                   -- 相同类型和去重键的未结束任务只保留一个
+    status VARCHAR(16) NOT NULL DEFAULT 'queued',   -- queued / running / succeeded / failed
+    attempts INT NOT NULL DEFAULT 0,                -- 已尝试次数
+    max_attempts INT NOT NULL DEFAULT 3,            -- 最多尝试次数
+    available_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,  -- queued：最早可执行时间；running：可见性超时截止时间
+    locked_by VARCHAR(128) NULL,                    -- 正在处理的工作线程
+    result JSON NULL,                               -- 成功后的结果
+    error_message TEXT NULL,                        -- 最近一次失败原因
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    started_at TIMESTAMP NULL,
+    finished_at TIMESTAMP NULL,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    INDEX idx_jobs_claim (status, available_at, priority),
+    INDEX idx_jobs_dedupe (job_type, dedupe_key, status)
+);
+
+-- 迁移blog_jobs中的任务，保留job_id使已返回的status_url仍然有效；运行中的任务重新排队
+INSERT INTO jobs (job_id, job_type, payload, dedupe_key, status, attempts, result, error_message,
+                  created_at, started_at, finished_at)
+SELECT job_id, 'blog', JSON_OBJECT('user_id', user_id, 'paper_id', paper_id), CONCAT(user_id, ':', paper_id),
+       IF(status = 'running', 'queued', status), attempts,
+       IF(recommendation_id IS NULL, NULL, JSON_OBJECT('recommendation_id', recommendation_id)),
+       error_message, created_at, started_at, finished_at
+FROM blog_jobs;
+
+DROP TABLE blog_jobs;
+
+COMMIT;
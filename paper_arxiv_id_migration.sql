@@ -0,0 +1,26 @@
+-- 论文arXiv ID迁移脚本
+-- 为papers表添加arxiv_id（不含版本号）和arxiv_version字段，并建立唯一索引，
+-- 使重复抓取同一篇论文时只更新而不重复插入
+
+ALTER TABLE papers ADD COLUMN arxiv_id VARCHAR(32) NULL COMMENT 'arXiv ID（不含版本号）';
+ALTER TABLE papers ADD COLUMN arxiv_version INT NULL COMMENT 'arXiv版本号';
+
+-- 从pdf_url回填已有论文的arxiv_id和arxiv_version（pdf_url没有版本后缀时记为1）
+-- 如有重复论文，只为paper_id最小的一条回填，其余保持NULL
+-- 分组键使用不与papers列同名的别名：GROUP BY会优先解析为刚添加的papers.arxiv_id列
+UPDATE papers p
+JOIN (
+    SELECT MIN(paper_id) AS paper_id,
+           REGEXP_REPLACE(REPLACE(SUBSTRING_INDEX(pdf_url, '/pdf/', -1), '.pdf', ''), 'v[0-9]+$', '') AS base_id
+    FROM papers
+    WHERE pdf_url LIKE '%arxiv.org/pdf/%'
+    GROUP BY base_id
+) first_paper ON first_paper.paper_id = p.paper_id
+SET p.arxiv_id = first_paper.base_id,
+    p.arxiv_version = COALESCE(
+        CAST(SUBSTRING(REGEXP_SUBSTR(REPLACE(SUBSTRING_INDEX(p.pdf_url, '/pdf/', -1), '.pdf', ''), 'v[0-9]+$'), 2) AS UNSIGNED),
+        1);
+
+CREATE UNIQUE INDEX uk_papers_arxiv_id ON papers(arxiv_id);
+
+COMMIT;
@@ -0,0 +1,22 @@
+-- 迁移脚本：按论文缓存生成的博客
+-- 博客提示词只依赖论文的标题、作者和摘要，同一篇论文推荐给多个用户时只需生成一次
+-- content_hash 为提示词版本与论文内容的SHA-256，论文内容或提示词变化后会生成新的博客
+
+CREATE TABLE IF NOT EXISTS paper_blogs (
+    blog_id INT AUTO_INCREMENT PRIMARY KEY,
+    paper_id INT NOT NULL,
+    prompt_version VARCHAR(32) NOT NULL,   -- 生成时使用的提示词版本
+    content_hash CHAR(64) NOT NULL,        -- SHA-256(提示词版本 + 标题 + 作者 + 摘要)
+    blog LONGTEXT NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE KEY uk_paper_blogs_content (paper_id, content_hash),
+    FOREIGN KEY (paper_id) REFERENCES papers(paper_id) ON DELETE CASCADE
+);
+
+-- 推荐记录引用共享的博客；已有记录保留原来的blog内容，读取时优先使用paper_blogs
+ALTER TABLE recommendations ADD COLUMN blog_id INT NULL COMMENT '引用paper_blogs.blog_id';
+ALTER TABLE recommendations MODIFY COLUMN blog LONGTEXT NULL COMMENT '旧记录的博客内容，新记录为NULL';
+ALTER TABLE recommendations ADD CONSTRAINT fk_recommendations_blog
+    FOREIGN KEY (blog_id) REFERENCES paper_blogs(blog_id) ON DELETE SET NULL;
+
+COMMIT;
@@ -0,0 +1,26 @@
+-- 迁移脚本：论文向量的索引序号
+-- 增量评分的水位原为paper_embeddings.id，但重新索引（新版本论文）时ON DUPLICATE KEY UPDATE保留旧id，
+-- 更新后的向量永远不会被重新评分；并发写入时自增id的提交顺序也可能与分配顺序不同，扫描会越过尚未提交的行。
+-- 改为每次写入向量时从序号表取得新的index_seq：序号行在写入事务提交前一直被锁定，
+-- 因此序号按提交顺序递增，且重新索引的论文获得新的序号
+
+CREATE TABLE IF NOT EXISTS paper_embedding_seq (
+    id TINYINT PRIMARY KEY,
+    value INT NOT NULL                           -- 最近分配的index_seq
+);
+
+ALTER TABLE paper_embeddings
+    ADD COLUMN index_seq INT NOT NULL DEFAULT 0, -- 最近一次写入向量时分配的序号
+    ADD INDEX idx_paper_embeddings_index_seq (index_seq);
+
+-- 已有向量沿用id作为序号，已保存的水位保持有效
+UPDATE paper_embeddings SET index_seq = id;
+
+INSERT INTO paper_embedding_seq (id, value)
+SELECT 1, COALESCE(MAX(index_seq), 0) FROM paper_embeddings;
+
+-- 评分水位改为记录index_seq
+ALTER TABLE user_scoring_state
+    RENAME COLUMN last_embedding_id TO last_index_seq;
+
+COMMIT;
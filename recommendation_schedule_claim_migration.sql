@@ -0,0 +1,7 @@
+-- 迁移脚本：多节点推荐调度
+-- 只有获得命名锁的节点执行调度，到期用户通过条件更新next_due_at原子领取，同一用户不会被两个节点同时处理
+-- last_scheduled_at: 用户最近一次被调度领取的时间，各节点据此限制反向匹配触发的提前推荐
+
+ALTER TABLE users ADD COLUMN last_scheduled_at TIMESTAMP NULL COMMENT '最近一次被调度领取的时间';
+
+COMMIT;
@@ -0,0 +1,8 @@
+-- 迁移脚本：按用户推荐频率调度推荐
+-- next_due_at: 用户下一次应生成推荐的时间，由RecommendationScheduler维护
+-- 为NULL的用户（新用户或首次启用调度）会在一个频率周期内均匀分散地安排首次推荐
+
+ALTER TABLE users ADD COLUMN next_due_at TIMESTAMP NULL COMMENT '下一次生成推荐的时间';
+CREATE INDEX idx_users_next_due_at ON users(next_due_at);
+
+COMMIT;
@@ -0,0 +1,15 @@
+-- 迁移脚本：分片推荐与数据库租约
+-- 用户按 user_id % recommend.shards.count 划分为分片，各节点的工作线程以带过期时间的租约领取分片并定期续约，
+-- 节点崩溃后租约过期，分片会被其他节点重新领取
+
+CREATE TABLE IF NOT EXISTS recommendation_shards (
+    shard_id INT PRIMARY KEY,
+    run_epoch INT NOT NULL DEFAULT 0,          -- 当前全量推荐的运行编号，每次启动新运行时加1
+    completed_epoch INT NOT NULL DEFAULT 0,    -- 该分片已完成的运行编号，小于run_epoch表示待处理
+    lease_owner VARCHAR(128) NULL,             -- 持有租约的工作线程
+    lease_expires_at TIMESTAMP NULL,           -- 租约过期时间，由心跳续约
+    heartbeat_at TIMESTAMP NULL,               -- 最近一次心跳时间
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
+
+COMMIT;
@@ -5,7 +5,7 @@ echo ========================================
 echo.
 echo Starting Fetch Orchestrator...
 echo This will fetch arXiv papers from yesterday to today
-echo and process them through the Papers API.
+echo and ingest them directly into the database (no web server required).
 echo.
 echo Press any key to continue...
 pause > nul
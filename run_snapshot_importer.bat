@@ -0,0 +1,26 @@
+@echo off
+echo ========================================
+echo  ScholarLinkAI arXiv Snapshot Importer
+echo ========================================
+echo.
+echo Usage: run_snapshot_importer.bat ^<snapshot.json[.gz]^> [category] [fromDate^|-] [toDate^|-]
+echo This will import papers from a local arXiv metadata snapshot
+echo directly into the database (no arXiv API requests).
+echo.
+
+if "%~1"=="" (
+    echo Please specify the snapshot file.
+    pause > nul
+    exit /b 1
+)
+
+REM Change to project directory
+cd /d %~dp0
+
+REM Run the importer
+java -cp target/classes org.example.orchestrator_layer.ArxivSnapshotImporter %*
+
+echo.
+echo Snapshot import completed!
+echo Press any key to exit...
+pause > nul
@@ -0,0 +1,35 @@
+package org.example.api_layer;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+import org.example.orchestrator_layer.CandidateRefresher;
+import org.example.service.BlogJobService;
+import org.example.service.InterestEmbeddingService;
+import org.example.service.JobQueueService;
+
+/**
+ * 随Web应用注册任务处理器并启动和停止任务队列的工作线程
+ */
+@WebListener
+public class JobQueueListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        try {
+            JobQueueService jobQueue = JobQueueService.getInstance();
+            jobQueue.registerHandler(BlogJobService.JOB_TYPE, BlogJobService.getInstance());
+            jobQueue.registerHandler(InterestEmbeddingService.JOB_TYPE, InterestEmbeddingService.getInstance());
+            jobQueue.registerHandler(CandidateRefresher.JOB_TYPE, CandidateRefresher.getInstance());
+            jobQueue.start();
+        } catch (Exception e) {
+            System.err.println("❌ Failed to start JobQueueService: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        JobQueueService.getInstance().shutdown();
+    }
+}
@@ -0,0 +1,91 @@
+package org.example.api_layer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+import org.example.service.HttpClientRegistry;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 运行指标API
+ * 提供共享HTTP客户端的调用和连接池指标
+ */
+@WebServlet(name = "metricsApi", value = "/api/metrics/*")
+@Tag(name = "运行指标", description = "运行指标相关的 API 操作")
+public class MetricsApi extends HttpServlet {
+    private ObjectMapper objectMapper;
+
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        objectMapper = new ObjectMapper();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Access-Control-Allow-Origin", "*");
+
+        String pathInfo = request.getPathInfo();
+        PrintWriter out = response.getWriter();
+
+        try {
+            if (pathInfo == null || pathInfo.equals("/") || pathInfo.equals("/http")) {
+                // GET /api/metrics/http - 获取HTTP客户端指标
+                handleGetHttpMetrics(out);
+            } else {
+                sendError(response, out, 404, "Not Found");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("MetricsApi error: " + e.getMessage());
+            sendError(response, out, 500, "Internal server error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取HTTP客户端指标
+     */
+    @Operation(
+        summary = "获取HTTP客户端指标",
+        description = "返回每个上游（arxiv、gemini、deepseek）的调用次数、失败数、平均耗时、状态码分布以及连接池的连接数和空闲连接数",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "获取成功"),
+            @ApiResponse(responseCode = "500", description = "服务器内部错误")
+        }
+    )
+    private void handleGetHttpMetrics(PrintWriter out) throws IOException {
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", "success");
+        result.put("data", HttpClientRegistry.getInstance().getMetrics());
+
+        out.print(objectMapper.writeValueAsString(result));
+        out.flush();
+    }
+
+    /**
+     * 发送错误响应
+     */
+    private void sendError(HttpServletResponse response, PrintWriter out,
+                          int statusCode, String message) throws IOException {
+        response.setStatus(statusCode);
+        Map<String, Object> error = new HashMap<>();
+        error.put("status", "error");
+        error.put("message", message);
+        out.print(objectMapper.writeValueAsString(error));
+        out.flush();
+    }
+}
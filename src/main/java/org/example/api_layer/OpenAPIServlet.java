@@ -224,6 +224,69 @@ public class OpenAPIServlet extends HttpServlet {
                             }
                         }
                     },
+                    "/api/users/{userId}/candidates": {
+                        "get": {
+                            "summary": "获取用户候选论文",
+                            "description": "返回用户当前得分最高的未推荐论文，按得分降序。候选集由推荐运行、新论文的反向匹配和兴趣更新后的刷新任务增量维护，请求时不做评分",
+                            "parameters": [
+                                {
+                                    "name": "userId",
+                                    "in": "path",
+                                    "required": true,
+                                    "schema": {"type": "integer"}
+                                },
+                                {
+                                    "name": "limit",
+                                    "in": "query",
+                                    "schema": {
+                                        "type": "integer",
+                                        "default": 10,
+                                        "minimum": 1,
+                                        "maximum": 50
+                                    }
+                                }
+                            ],
+                            "responses": {
+                                "200": {
+                                    "description": "成功获取用户候选论文",
+                                    "content": {
+                                        "application/json": {
+                                            "schema": {
+                                                "type": "object",
+                                                "properties": {
+                                                    "status": {"type": "string", "example": "success"},
+                                                    "message": {"type": "string"},
+                                                    "data": {
+                                                        "type": "object",
+                                                        "properties": {
+                                                            "user_id": {"type": "integer"},
+                                                            "count": {"type": "integer"},
+                                                            "candidates": {
+                                                                "type": "array",
+                                                                "items": {
+                                                                    "type": "object",
+                                                                    "properties": {
+                                                                        "paper_id": {"type": "integer"},
+                                                                        "score": {"type": "number", "description": "用户兴趣与论文向量的余弦相似度"},
+                                                                        "title": {"type": "string"},
+                                                                        "author": {"type": "string"},
+                                                                        "pdf_url": {"type": "string"},
+                                                                        "created_at": {"type": "integer", "format": "int64", "description": "进入候选集的时间（毫秒时间戳）"}
+                                                                    }
+                                                                }
+                                                            }
+                                                        }
+                                                    }
+                                                }
+                                            }
+                                        }
+                                    }
+                                },
+                                "400": {"description": "limit参数无效"},
+                                "404": {"description": "用户不存在"}
+                            }
+                        }
+                    },
                     "/api/papers/list": {
                         "get": {
                             "summary": "获取论文列表",
@@ -372,8 +435,8 @@ public class OpenAPIServlet extends HttpServlet {
                     },
                     "/api/papers/{paperId}/generate-blog": {
                         "post": {
-                            "summary": "生成博客",
-                            "description": "根据论文内容生成博客文章",
+                            "summary": "提交博客生成任务",
+                            "description": "提交博客生成任务并立即返回任务ID，由后台工作线程生成博客并写入推荐表",
                             "parameters": [
                                 {
                                     "name": "paperId",
@@ -398,19 +461,22 @@ public class OpenAPIServlet extends HttpServlet {
                                 "required": true
                             },
                             "responses": {
-                                "200": {
-                                    "description": "博客生成成功",
+                                "202": {
+                                    "description": "任务已提交",
                                     "content": {
                                         "application/json": {
                                             "schema": {
                                                 "type": "object",
                                                 "properties": {
                                                     "status": {"type": "string", "example": "success"},
-                                                    "message": {"type": "string", "example": "博客生成成功"},
+                                                    "message": {"type": "string", "example": "博客生成任务已提交"},
                                                     "data": {
                                                         "type": "object",
                                                         "properties": {
-                                                            "blog_content": {"type": "string", "description": "生成的博客内容"}
+                                                            "job_id": {"type": "integer", "description": "任务ID"},
+                                                            "job_status": {"type": "string", "description": "任务状态"},
+                                                            "status_url": {"type": "string", "description": "任务状态查询地址"},
+                                                            "result_url": {"type": "string", "description": "任务结果查询地址"}
                                                         }
                                                     }
                                                 }
@@ -420,10 +486,104 @@ public class OpenAPIServlet extends HttpServlet {
                                 },
                                 "400": {"description": "请求参数错误"},
                                 "404": {"description": "论文不存在"},
+                                "503": {"description": "任务队列已满"},
                                 "500": {"description": "服务器内部错误"}
                             }
                         }
                     },
+                    "/api/papers/{paperId}/generate-blog/stream": {
+                        "get": {
+                            "summary": "流式生成博客",
+                            "description": "以Server-Sent Events返回生成中的博客：首先发送start事件，delta事件携带内容片段，done事件携带推荐记录ID（完整博客已写入推荐表），error事件携带失败原因（包括并发流已达上限）",
+                            "parameters": [
+                                {
+                                    "name": "paperId",
+                                    "in": "path",
+                                    "required": true,
+                                    "schema": {"type": "integer"},
+                                    "description": "论文ID"
+                                },
+                                {
+                                    "name": "userId",
+                                    "in": "query",
+                                    "required": true,
+                                    "schema": {"type": "integer"},
+                                    "description": "用户ID"
+                                }
+                            ],
+                            "responses": {
+                                "200": {
+                                    "description": "事件流",
+                                    "content": {
+                                        "text/event-stream": {
+                                            "schema": {"type": "string", "example": "event: delta\ndata: {\"text\":\"# 论文简介\"}\n\n"}
+                                        }
+                                    }
+                                },
+                                "400": {"description": "请求参数错误"},
+                                "404": {"description": "用户或论文不存在"}
+                            }
+                        }
+                    },
+                    "/api/papers/blog-jobs/{jobId}": {
+                        "get": {
+                            "summary": "查询博客生成任务状态",
+                            "description": "返回任务状态（queued、running、succeeded、failed）、尝试次数、推荐记录ID和失败原因",
+                            "parameters": [
+                                {
+                                    "name": "jobId",
+                                    "in": "path",
+                                    "required": true,
+                                    "schema": {"type": "integer"},
+                                    "description": "任务ID"
+                                }
+                            ],
+                            "responses": {
+                                "200": {"description": "获取成功"},
+                                "404": {"description": "任务不存在"}
+                            }
+                        }
+                    },
+                    "/api/papers/blog-jobs/{jobId}/result": {
+                        "get": {
+                            "summary": "获取博客生成任务结果",
+                            "description": "任务成功时返回生成的博客；任务未结束时返回202，失败时返回409及失败原因",
+                            "parameters": [
+                                {
+                                    "name": "jobId",
+                                    "in": "path",
+                                    "required": true,
+                                    "schema": {"type": "integer"},
+                                    "description": "任务ID"
+                                }
+                            ],
+                            "responses": {
+                                "200": {
+                                    "description": "获取成功",
+                                    "content": {
+                                        "application/json": {
+                                            "schema": {
+                                                "type": "object",
+                                                "properties": {
+                                                    "status": {"type": "string", "example": "success"},
+                                                    "data": {
+                                                        "type": "object",
+                                                        "properties": {
+                                                            "recommendation_id": {"type": "integer", "description": "推荐记录ID"},
+                                                            "blog": {"type": "string", "description": "生成的博客内容"}
+                                                        }
+                                                    }
+                                                }
+                                            }
+                                        }
+                                    }
+                                },
+                                "202": {"description": "任务尚未完成"},
+                                "404": {"description": "任务不存在"},
+                                "409": {"description": "任务失败"}
+                            }
+                        }
+                    },
                     "/api/index/paper": {
                         "post": {
                             "summary": "为论文创建向量索引",
@@ -512,7 +672,7 @@ public class OpenAPIServlet extends HttpServlet {
                     "/api/orchestrator/fetch": {
                         "post": {
                             "summary": "运行Fetch Orchestrator",
-                            "description": "启动Fetch Orchestrator，从arXiv获取最新的计算机科学论文，自动抓取论文信息并创建向量索引",
+                            "description": "启动Fetch Orchestrator，从arXiv获取最新的计算机科学论文，自动抓取论文信息并创建向量索引。同一时间只有一个fetch运行（跨节点由数据库命名锁保证），已有运行时加入该运行",
                             "responses": {
                                 "200": {
                                     "description": "Orchestrator启动成功",
@@ -526,7 +686,10 @@ public class OpenAPIServlet extends HttpServlet {
                                                     "data": {
                                                         "type": "object",
                                                         "properties": {
-                                                            "note": {"type": "string", "description": "处理说明"}
+                                                            "run_id": {"type": "integer", "description": "运行ID"},
+                                                            "attached": {"type": "boolean", "description": "同类型的运行已在进行，本次触发加入了该运行"},
+                                                            "run_status": {"type": "string", "description": "queued / running"},
+                                                            "status_url": {"type": "string", "description": "查询运行进度的地址"}
                                                         }
                                                     }
                                                 }
@@ -534,14 +697,14 @@ public class OpenAPIServlet extends HttpServlet {
                                         }
                                     }
                                 },
-                                "500": {"description": "Orchestrator启动失败"}
+                                "503": {"description": "运行中和排队的运行已达上限"}
                             }
                         }
                     },
                     "/api/orchestrator/recommend": {
                         "post": {
                             "summary": "运行Recommendation Orchestrator",
-                            "description": "启动Recommendation Orchestrator，基于用户兴趣计算论文相似度并生成个性化推荐博客",
+                            "description": "启动一次全量推荐。启用分片时各节点的工作线程以租约领取用户分片（user_id % 分片数）并行处理，已有运行未完成时加入该运行并返回其运行编号；未启用分片时在本节点异步运行。同一时间只有一个recommend运行，已有运行时加入该运行",
                             "responses": {
                                 "200": {
                                     "description": "Orchestrator启动成功",
@@ -555,7 +718,113 @@ public class OpenAPIServlet extends HttpServlet {
                                                     "data": {
                                                         "type": "object",
                                                         "properties": {
-                                                            "note": {"type": "string", "description": "处理说明"}
+                                                            "run_id": {"type": "integer", "description": "运行ID"},
+                                                            "attached": {"type": "boolean", "description": "同类型的运行已在进行，本次触发加入了该运行"},
+                                                            "run_status": {"type": "string", "description": "queued / running"},
+                                                            "status_url": {"type": "string", "description": "查询运行进度的地址"}
+                                                        }
+                                                    }
+                                                }
+                                            }
+                                        }
+                                    }
+                                },
+                                "503": {"description": "运行中和排队的运行已达上限"}
+                            }
+                        }
+                    },
+                    "/api/orchestrator/runs": {
+                        "get": {
+                            "summary": "获取最近的编排器运行",
+                            "description": "按启动顺序返回本节点运行中、排队中和最近结束的运行及其进度",
+                            "responses": {
+                                "200": {
+                                    "description": "获取成功",
+                                    "content": {
+                                        "application/json": {
+                                            "schema": {
+                                                "type": "object",
+                                                "properties": {
+                                                    "status": {"type": "string", "example": "success"},
+                                                    "data": {"type": "array", "items": {"$ref": "#/components/schemas/OrchestratorRun"}}
+                                                }
+                                            }
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    },
+                    "/api/orchestrator/runs/{runId}": {
+                        "get": {
+                            "summary": "获取编排器运行进度",
+                            "description": "返回运行状态以及每个阶段的处理数量、总量、队列深度、吞吐量和预计剩余时间",
+                            "parameters": [
+                                {"name": "runId", "in": "path", "required": true, "schema": {"type": "integer"}, "description": "运行ID"}
+                            ],
+                            "responses": {
+                                "200": {
+                                    "description": "获取成功",
+                                    "content": {
+                                        "application/json": {
+                                            "schema": {
+                                                "type": "object",
+                                                "properties": {
+                                                    "status": {"type": "string", "example": "success"},
+                                                    "data": {"$ref": "#/components/schemas/OrchestratorRun"}
+                                                }
+                                            }
+                                        }
+                                    }
+                                },
+                                "404": {"description": "运行不存在"}
+                            }
+                        },
+                        "delete": {
+                            "summary": "取消编排器运行",
+                            "description": "排队中的运行直接取消；运行中的运行被中断，在下一个检查点结束（抓取保留已保存的检查点，分片推荐跳过剩余分片）",
+                            "parameters": [
+                                {"name": "runId", "in": "path", "required": true, "schema": {"type": "integer"}, "description": "运行ID"}
+                            ],
+                            "responses": {
+                                "200": {"description": "已请求取消"},
+                                "404": {"description": "运行不存在"},
+                                "409": {"description": "运行已结束"}
+                            }
+                        }
+                    },
+                    "/api/orchestrator/recommend/shards": {
+                        "get": {
+                            "summary": "获取推荐分片状态",
+                            "description": "返回当前运行编号下每个分片的完成编号、租约持有者、租约过期时间和最近心跳时间",
+                            "responses": {
+                                "200": {
+                                    "description": "获取成功",
+                                    "content": {
+                                        "application/json": {
+                                            "schema": {
+                                                "type": "object",
+                                                "properties": {
+                                                    "status": {"type": "string", "example": "success"},
+                                                    "data": {
+                                                        "type": "object",
+                                                        "properties": {
+                                                            "run_epoch": {"type": "integer", "description": "当前运行编号"},
+                                                            "pending_shards": {"type": "integer", "description": "尚未完成的分片数"},
+                                                            "shards": {
+                                                                "type": "array",
+                                                                "items": {
+                                                                    "type": "object",
+                                                                    "properties": {
+                                                                        "shard_id": {"type": "integer"},
+                                                                        "run_epoch": {"type": "integer"},
+                                                                        "completed_epoch": {"type": "integer"},
+                                                                        "lease_owner": {"type": "string", "nullable": true},
+                                                                        "lease_expires_at": {"type": "string", "format": "date-time", "nullable": true},
+                                                                        "heartbeat_at": {"type": "string", "format": "date-time", "nullable": true}
+                                                                    }
+                                                                }
+                                                            }
                                                         }
                                                     }
                                                 }
@@ -563,7 +832,30 @@ public class OpenAPIServlet extends HttpServlet {
                                         }
                                     }
                                 },
-                                "500": {"description": "Orchestrator启动失败"}
+                                "503": {"description": "分片推荐未启用"}
+                            }
+                        }
+                    },
+                    "/api/metrics/http": {
+                        "get": {
+                            "summary": "获取HTTP客户端指标",
+                            "description": "返回每个上游（arxiv、gemini、deepseek）的调用次数、失败数、平均耗时、状态码分布以及连接池的连接数和空闲连接数",
+                            "responses": {
+                                "200": {
+                                    "description": "获取成功",
+                                    "content": {
+                                        "application/json": {
+                                            "schema": {
+                                                "type": "object",
+                                                "properties": {
+                                                    "status": {"type": "string", "example": "success"},
+                                                    "data": {"type": "object", "description": "上游名称到指标的映射"}
+                                                }
+                                            }
+                                        }
+                                    }
+                                },
+                                "500": {"description": "服务器内部错误"}
                             }
                         }
                     },
@@ -603,6 +895,41 @@ public class OpenAPIServlet extends HttpServlet {
                             }
                         }
                     }
+                },
+                "components": {
+                    "schemas": {
+                        "OrchestratorRun": {
+                            "type": "object",
+                            "properties": {
+                                "run_id": {"type": "integer"},
+                                "type": {"type": "string", "description": "fetch / recommend"},
+                                "status": {"type": "string", "description": "queued / running / succeeded / failed / cancelled"},
+                                "cancel_requested": {"type": "boolean"},
+                                "created_at": {"type": "integer", "format": "int64", "description": "毫秒时间戳"},
+                                "started_at": {"type": "integer", "format": "int64", "nullable": true},
+                                "finished_at": {"type": "integer", "format": "int64", "nullable": true},
+                                "elapsed_seconds": {"type": "integer"},
+                                "error": {"type": "string", "nullable": true},
+                                "note": {"type": "string", "nullable": true, "description": "补充说明，如加入了其他节点上的运行"},
+                                "triggers": {"type": "integer", "description": "加入本运行的触发次数（含首次）"},
+                                "eta_seconds": {"type": "integer", "nullable": true, "description": "预计剩余秒数（各阶段的最大值）"},
+                                "stages": {
+                                    "type": "array",
+                                    "items": {
+                                        "type": "object",
+                                        "properties": {
+                                            "name": {"type": "string", "description": "fetch / parse / persist / embed，或 prepare / score / recommend，或 shards"},
+                                            "processed": {"type": "integer"},
+                                            "total": {"type": "integer", "nullable": true},
+                                            "queue_depth": {"type": "integer"},
+                                            "rate_per_second": {"type": "number"},
+                                            "eta_seconds": {"type": "integer", "nullable": true}
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
                 }
             }
             """;
@@ -7,17 +7,26 @@ import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
 import org.example.orchestrator_layer.FetchOrchestrator;
+import org.example.orchestrator_layer.OrchestratorRun;
+import org.example.orchestrator_layer.OrchestratorRunManager;
 import org.example.orchestrator_layer.RecommendationOrchestrator;
+import org.example.orchestrator_layer.RecommendationScheduler;
+import org.example.orchestrator_layer.ShardedRecommendationRunner;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Orchestrator API
@@ -27,11 +36,78 @@ import java.util.concurrent.CompletableFuture;
 @Tag(name = "编排器管理", description = "编排器相关的 API 操作")
 public class OrchestratorApi extends HttpServlet {
     private ObjectMapper objectMapper;
+    private OrchestratorRunManager runManager;
+    // 编排器在首次触发时创建并在之后的请求中复用，保持数据库连接和HTTP连接池
+    private FetchOrchestrator fetchOrchestrator;
+    private RecommendationOrchestrator recommendationOrchestrator;
 
     @Override
     public void init() throws ServletException {
         super.init();
         objectMapper = new ObjectMapper();
+        runManager = OrchestratorRunManager.getInstance();
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        if (runManager != null) {
+            runManager.shutdown();
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Access-Control-Allow-Origin", "*");
+
+        String pathInfo = request.getPathInfo();
+        PrintWriter out = response.getWriter();
+
+        try {
+            if (pathInfo != null && pathInfo.equals("/recommend/shards")) {
+                // GET /api/orchestrator/recommend/shards - 获取分片推荐状态
+                handleGetShards(response, out);
+            } else if (pathInfo != null && pathInfo.equals("/runs")) {
+                // GET /api/orchestrator/runs - 获取最近的运行
+                handleListRuns(out);
+            } else if (pathInfo != null && pathInfo.matches("/runs/\\d+")) {
+                // GET /api/orchestrator/runs/{runId} - 获取运行进度
+                handleGetRun(Long.parseLong(pathInfo.substring("/runs/".length())), response, out);
+            } else {
+                sendError(response, out, 404, "Not Found");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("OrchestratorApi error: " + e.getMessage());
+            sendError(response, out, 500, "Internal server error: " + e.getMessage());
+        }
+    }
+
+    @Override
+    protected void doDelete(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Access-Control-Allow-Origin", "*");
+
+        String pathInfo = request.getPathInfo();
+        PrintWriter out = response.getWriter();
+
+        try {
+            if (pathInfo != null && pathInfo.matches("/runs/\\d+")) {
+                // DELETE /api/orchestrator/runs/{runId} - 取消运行
+                handleCancelRun(Long.parseLong(pathInfo.substring("/runs/".length())), response, out);
+            } else {
+                sendError(response, out, 404, "Not Found");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("OrchestratorApi error: " + e.getMessage());
+            sendError(response, out, 500, "Internal server error: " + e.getMessage());
+        }
     }
 
     @Override
@@ -75,34 +151,14 @@ public class OrchestratorApi extends HttpServlet {
     private void handleStartFetchOrchestrator(HttpServletResponse response,
                                              PrintWriter out) throws IOException {
         try {
-            // 异步执行Fetch Orchestrator，避免阻塞HTTP响应
-            CompletableFuture.runAsync(() -> {
-                try {
-                    System.out.println("🔄 Starting Fetch Orchestrator via API...");
-                    FetchOrchestrator orchestrator = new FetchOrchestrator();
-                    orchestrator.initDocset();
-                    System.out.println("✅ Fetch Orchestrator completed via API");
-                } catch (Exception e) {
-                    System.err.println("❌ Fetch Orchestrator failed via API: " + e.getMessage());
-                    e.printStackTrace();
-                }
-            });
-
-            // 立即返回成功响应
-            Map<String, Object> result = new HashMap<>();
-            result.put("status", "success");
-            result.put("message", "Fetch Orchestrator started successfully");
-            Map<String, Object> data = new HashMap<>();
-            data.put("note", "Orchestrator is running asynchronously. Check server logs for progress.");
-            result.put("data", data);
-
-            out.print(objectMapper.writeValueAsString(result));
-
-        } catch (Exception e) {
-            sendError(response, out, 500, "Failed to start Fetch Orchestrator: " + e.getMessage());
+            // 在专用线程池中执行，避免阻塞HTTP响应；已有fetch运行时加入该运行
+            OrchestratorRunManager.Submission submission = runManager.submit("fetch",
+                    r -> getFetchOrchestrator().initDocset(r));
+            sendRunStarted(submission, "Fetch Orchestrator", out);
+        } catch (RejectedExecutionException e) {
+            response.setHeader("Retry-After", "60");
+            sendError(response, out, 503, "Too many orchestrator runs in progress");
         }
-
-        out.flush();
     }
 
     /**
@@ -110,7 +166,8 @@ public class OrchestratorApi extends HttpServlet {
      */
     @Operation(
         summary = "启动Recommendation Orchestrator",
-        description = "异步启动Recommendation Orchestrator，基于用户兴趣计算论文相似度并生成个性化推荐博客",
+        description = "启动一次全量推荐：启用分片时由各节点的工作线程领取用户分片并行处理，已有运行未完成时加入该运行；" +
+                      "未启用分片时在本节点异步运行Recommendation Orchestrator",
         responses = {
             @ApiResponse(responseCode = "200", description = "Orchestrator启动成功"),
             @ApiResponse(responseCode = "500", description = "Orchestrator启动失败")
@@ -119,36 +176,202 @@ public class OrchestratorApi extends HttpServlet {
     private void handleStartRecommendationOrchestrator(HttpServletResponse response,
                                                        PrintWriter out) throws IOException {
         try {
-            // 异步执行Recommendation Orchestrator，避免阻塞HTTP响应
-            CompletableFuture.runAsync(() -> {
-                try {
-                    System.out.println("🧠 Starting Recommendation Orchestrator via API...");
-                    RecommendationOrchestrator orchestrator = new RecommendationOrchestrator();
-                    orchestrator.generateRecommendations();
-                    System.out.println("✅ Recommendation Orchestrator completed via API");
-                } catch (Exception e) {
-                    System.err.println("❌ Recommendation Orchestrator failed via API: " + e.getMessage());
-                    e.printStackTrace();
+            // 运行期间各节点的推荐调度tick暂停
+            OrchestratorRunManager.Submission submission = runManager.submit("recommend",
+                    r -> RecommendationScheduler.runExclusive(r, this::runRecommendations));
+            sendRunStarted(submission, "Recommendation Orchestrator", out);
+        } catch (RejectedExecutionException e) {
+            response.setHeader("Retry-After", "60");
+            sendError(response, out, 503, "Too many orchestrator runs in progress");
+        }
+    }
+
+    /**
+     * 执行全量推荐
+     */
+    private void runRecommendations(OrchestratorRun run) throws Exception {
+        ShardedRecommendationRunner runner = ShardedRecommendationRunner.getInstance();
+        if (runner != null) {
+            // 各节点的工作线程领取分片并行处理，等待全部分片完成
+            runner.runAndWait(run);
+            return;
+        }
+        getRecommendationOrchestrator().generateRecommendations(run);
+    }
+
+    /**
+     * 返回已登记或加入的运行
+     */
+    private void sendRunStarted(OrchestratorRunManager.Submission submission, String name,
+                                PrintWriter out) throws IOException {
+        OrchestratorRun run = submission.getRun();
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", "success");
+        result.put("message", submission.isAttached()
+                ? name + " run already in progress, attached to it"
+                : name + " started successfully");
+        Map<String, Object> data = new HashMap<>();
+        data.put("run_id", run.getRunId());
+        data.put("attached", submission.isAttached());
+        data.put("run_status", run.getStatus().name().toLowerCase());
+        data.put("status_url", "/api/orchestrator/runs/" + run.getRunId());
+        result.put("data", data);
+
+        out.print(objectMapper.writeValueAsString(result));
+        out.flush();
+    }
+
+    /**
+     * 获取最近的运行
+     */
+    @Operation(
+        summary = "获取最近的编排器运行",
+        description = "按启动顺序返回本节点运行中、排队中和最近结束的运行及其进度",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "获取成功")
+        }
+    )
+    private void handleListRuns(PrintWriter out) throws IOException {
+        List<Map<String, Object>> runs = new ArrayList<>();
+        for (OrchestratorRun run : runManager.list()) {
+            runs.add(run.toMap());
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", "success");
+        result.put("data", runs);
+        out.print(objectMapper.writeValueAsString(result));
+        out.flush();
+    }
+
+    /**
+     * 获取运行进度
+     */
+    @Operation(
+        summary = "获取编排器运行进度",
+        description = "返回运行状态以及每个阶段的处理数量、总量、队列深度、吞吐量和预计剩余时间",
+        parameters = {
+            @Parameter(name = "runId", description = "运行ID", required = true, schema = @Schema(type = "integer"))
+        },
+        responses = {
+            @ApiResponse(responseCode = "200", description = "获取成功"),
+            @ApiResponse(responseCode = "404", description = "运行不存在")
+        }
+    )
+    private void handleGetRun(long runId, HttpServletResponse response, PrintWriter out) throws IOException {
+        OrchestratorRun run = runManager.get(runId);
+        if (run == null) {
+            sendError(response, out, 404, "Run not found");
+            return;
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", "success");
+        result.put("data", run.toMap());
+        out.print(objectMapper.writeValueAsString(result));
+        out.flush();
+    }
+
+    /**
+     * 取消运行
+     */
+    @Operation(
+        summary = "取消编排器运行",
+        description = "排队中的运行直接取消；运行中的运行被中断，在下一个检查点结束（抓取保留已保存的检查点，分片推荐跳过剩余分片）",
+        parameters = {
+            @Parameter(name = "runId", description = "运行ID", required = true, schema = @Schema(type = "integer"))
+        },
+        responses = {
+            @ApiResponse(responseCode = "200", description = "已请求取消"),
+            @ApiResponse(responseCode = "404", description = "运行不存在"),
+            @ApiResponse(responseCode = "409", description = "运行已结束")
+        }
+    )
+    private void handleCancelRun(long runId, HttpServletResponse response, PrintWriter out) throws IOException {
+        OrchestratorRun run = runManager.get(runId);
+        if (run == null) {
+            sendError(response, out, 404, "Run not found");
+            return;
+        }
+        if (!runManager.cancel(run)) {
+            sendError(response, out, 409, "Run already finished with status " + run.getStatus().name().toLowerCase());
+            return;
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", "success");
+        result.put("message", "Cancellation requested");
+        result.put("data", run.toMap());
+        out.print(objectMapper.writeValueAsString(result));
+        out.flush();
+    }
+
+    /**
+     * 获取分片推荐运行的各分片状态
+     */
+    @Operation(
+        summary = "获取推荐分片状态",
+        description = "返回当前运行编号下每个分片的完成情况、租约持有者和最近心跳时间",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "获取成功"),
+            @ApiResponse(responseCode = "503", description = "分片推荐未启用")
+        }
+    )
+    private void handleGetShards(HttpServletResponse response, PrintWriter out) throws IOException {
+        ShardedRecommendationRunner runner = ShardedRecommendationRunner.getInstance();
+        if (runner == null) {
+            sendError(response, out, 503, "Sharded recommendation is disabled");
+            return;
+        }
+
+        try {
+            List<Map<String, Object>> shards = runner.getShards();
+            int runEpoch = 0;
+            int pending = 0;
+            for (Map<String, Object> shard : shards) {
+                int epoch = (Integer) shard.get("run_epoch");
+                runEpoch = Math.max(runEpoch, epoch);
+                if ((Integer) shard.get("completed_epoch") < epoch) {
+                    pending++;
                 }
-            });
+            }
+
+            Map<String, Object> data = new HashMap<>();
+            data.put("run_epoch", runEpoch);
+            data.put("pending_shards", pending);
+            data.put("shards", shards);
 
-            // 立即返回成功响应
             Map<String, Object> result = new HashMap<>();
             result.put("status", "success");
-            result.put("message", "Recommendation Orchestrator started successfully");
-            Map<String, Object> data = new HashMap<>();
-            data.put("note", "Orchestrator is running asynchronously. Check server logs for progress.");
             result.put("data", data);
-
             out.print(objectMapper.writeValueAsString(result));
-
-        } catch (Exception e) {
-            sendError(response, out, 500, "Failed to start Recommendation Orchestrator: " + e.getMessage());
+        } catch (SQLException e) {
+            sendError(response, out, 500, "Failed to load shards: " + e.getMessage());
         }
 
         out.flush();
     }
 
+    /**
+     * 获取复用的Fetch Orchestrator，首次调用时创建
+     */
+    private synchronized FetchOrchestrator getFetchOrchestrator() {
+        if (fetchOrchestrator == null) {
+            fetchOrchestrator = new FetchOrchestrator();
+        }
+        return fetchOrchestrator;
+    }
+
+    /**
+     * 获取复用的Recommendation Orchestrator，首次调用时创建
+     */
+    private synchronized RecommendationOrchestrator getRecommendationOrchestrator() {
+        if (recommendationOrchestrator == null) {
+            recommendationOrchestrator = new RecommendationOrchestrator();
+        }
+        return recommendationOrchestrator;
+    }
+
     /**
      * 发送错误响应
      */
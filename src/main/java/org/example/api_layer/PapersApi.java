@@ -3,7 +3,13 @@ package org.example.api_layer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.example.data_access_layer.Dbmanager;
 import org.example.service.PaperFetchService;
-import org.example.service.BlogGeneratorService;
+import org.example.service.PaperIngestService;
+import org.example.service.BlogJobService;
+import org.example.service.BlogStreamService;
+import org.example.service.RecommendationWriter;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -21,25 +27,29 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
-@WebServlet(name = "papersApi", value = "/api/papers/*")
+@WebServlet(name = "papersApi", value = "/api/papers/*", asyncSupported = true)
 @Tag(name = "论文管理", description = "论文相关的 API 操作")
 public class PapersApi extends HttpServlet {
     private Dbmanager dbManager;
     private ObjectMapper objectMapper;
-    private PaperFetchService paperFetchService;
-    private BlogGeneratorService blogGeneratorService;
+    private PaperIngestService paperIngestService;
+    private BlogJobService blogJobService;
+    private BlogStreamService blogStreamService;
     
     @Override
     public void init() throws ServletException {
         super.init();
         dbManager = new Dbmanager();
         objectMapper = new ObjectMapper();
-        paperFetchService = new PaperFetchService();
-        blogGeneratorService = new BlogGeneratorService();
+        paperIngestService = new PaperIngestService(new PaperFetchService(), dbManager);
+        blogJobService = BlogJobService.getInstance();
+        blogStreamService = BlogStreamService.getInstance();
     }
     
     @Override
@@ -59,6 +69,17 @@ public class PapersApi extends HttpServlet {
             } else if (pathInfo.equals("/recommendations")) {
                 // GET /api/papers/recommendations - 获取推荐博客
                 handleGetRecommendations(request, response, out);
+            } else if (pathInfo.matches("/blog-jobs/\\d+")) {
+                // GET /api/papers/blog-jobs/{jobId} - 查询博客生成任务状态
+                handleGetBlogJob(Long.parseLong(pathInfo.substring("/blog-jobs/".length())), response, out);
+            } else if (pathInfo.matches("/blog-jobs/\\d+/result")) {
+                // GET /api/papers/blog-jobs/{jobId}/result - 获取博客生成任务结果
+                String jobIdStr = pathInfo.substring("/blog-jobs/".length(), pathInfo.indexOf("/result"));
+                handleGetBlogJobResult(Long.parseLong(jobIdStr), response, out);
+            } else if (pathInfo.matches("/\\d+/generate-blog/stream")) {
+                // GET /api/papers/{paperId}/generate-blog/stream - 流式生成博客（SSE）
+                String paperIdStr = pathInfo.substring(1, pathInfo.indexOf("/generate-blog"));
+                handleStreamBlog(Integer.parseInt(paperIdStr), request, response, out);
             } else if (pathInfo.startsWith("/")) {
                 // GET /api/papers/{paperId} - 获取论文详情
                 String paperIdStr = pathInfo.substring(1);
@@ -92,7 +113,7 @@ public class PapersApi extends HttpServlet {
                 // POST /api/papers/fetch - 从arXiv抓取论文
                 handleFetchPaper(request, response, out);
             } else if (pathInfo.matches("/\\d+/generate-blog")) {
-                // POST /api/papers/{paperId}/generate-blog - 生成博客
+                // POST /api/papers/{paperId}/generate-blog - 提交博客生成任务
                 String paperIdStr = pathInfo.substring(1, pathInfo.indexOf("/generate-blog"));
                 try {
                     int paperId = Integer.parseInt(paperIdStr);
@@ -214,7 +235,7 @@ public class PapersApi extends HttpServlet {
      */
     @Operation(
         summary = "从arXiv抓取论文",
-        description = "根据arXiv ID从arXiv API抓取论文信息并保存到数据库",
+        description = "根据arXiv ID从arXiv API抓取论文信息并保存到数据库，传入arxiv_ids数组时批量抓取",
         requestBody = @RequestBody(
             content = @Content(
                 mediaType = "application/json",
@@ -236,7 +257,7 @@ public class PapersApi extends HttpServlet {
             jsonBody.append(line);
         }
         
-        Map<String, String> requestData;
+        Map<String, Object> requestData;
         try {
             requestData = objectMapper.readValue(jsonBody.toString(), Map.class);
         } catch (Exception e) {
@@ -244,48 +265,34 @@ public class PapersApi extends HttpServlet {
             return;
         }
         
-        String arxivId = requestData.get("arxiv_id");
+        // 批量抓取：{"arxiv_ids": ["2301.00001", ...]}
+        if (requestData.get("arxiv_ids") instanceof List) {
+            handleFetchPapersBatch((List<?>) requestData.get("arxiv_ids"), response, out);
+            return;
+        }
+        
+        Object arxivIdObj = requestData.get("arxiv_id");
+        String arxivId = arxivIdObj instanceof String ? (String) arxivIdObj : null;
         if (arxivId == null || arxivId.isEmpty()) {
             sendError(response, out, 400, "arxiv_id is required");
             return;
         }
         
         try {
-            // 从arXiv API抓取论文信息
-            Map<String, String> paperInfo = paperFetchService.fetchPaperByArxivId(arxivId);
+            // 从arXiv API抓取论文信息并写入数据库
+            Map<String, Object> paper = paperIngestService.ingestByArxivId(arxivId);
             
-            if (paperInfo == null || paperInfo.isEmpty()) {
+            if (paper == null) {
                 sendError(response, out, 404, "Paper not found on arXiv");
                 return;
             }
             
-            String title = paperInfo.get("title");
-            String author = paperInfo.get("author");
-            String abstractText = paperInfo.get("abstract");
-            String pdfUrl = paperInfo.get("pdf_url");
-            
-            // 插入数据库
-            int paperId = dbManager.insertPaper(
-                title != null ? title : "",
-                author != null ? author : "",
-                abstractText != null ? abstractText : "",
-                pdfUrl != null ? pdfUrl : ""
-            );
+            Map<String, Object> result = new HashMap<>();
+            result.put("status", "success");
+            result.put("message", "论文抓取成功");
+            result.put("data", paper);
             
-            if (paperId > 0) {
-                Map<String, Object> result = new HashMap<>();
-                result.put("status", "success");
-                result.put("message", "论文抓取成功");
-                Map<String, Object> data = new HashMap<>();
-                data.put("paper_id", paperId);
-                data.put("title", title);
-                data.put("author", author);
-                result.put("data", data);
-                
-                out.print(objectMapper.writeValueAsString(result));
-            } else {
-                sendError(response, out, 500, "Failed to insert paper");
-            }
+            out.print(objectMapper.writeValueAsString(result));
         } catch (IOException e) {
             e.printStackTrace();
             System.err.println("Error fetching paper from arXiv: " + e.getMessage());
@@ -295,11 +302,44 @@ public class PapersApi extends HttpServlet {
     }
     
     /**
-     * 处理生成博客
+     * 处理批量抓取论文，每个arXiv请求携带最多100个ID
+     */
+    private void handleFetchPapersBatch(List<?> arxivIdList, HttpServletResponse response,
+                                        PrintWriter out) throws IOException, SQLException {
+        List<String> arxivIds = new ArrayList<>();
+        for (Object id : arxivIdList) {
+            if (id instanceof String && !((String) id).isEmpty()) {
+                arxivIds.add((String) id);
+            }
+        }
+        if (arxivIds.isEmpty()) {
+            sendError(response, out, 400, "arxiv_ids must be a non-empty list of strings");
+            return;
+        }
+        
+        try {
+            Map<String, Object> data = paperIngestService.ingestByArxivIds(arxivIds);
+            
+            Map<String, Object> result = new HashMap<>();
+            result.put("status", "success");
+            result.put("message", "论文批量抓取完成");
+            result.put("data", data);
+            
+            out.print(objectMapper.writeValueAsString(result));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Error fetching papers from arXiv: " + e.getMessage());
+            sendError(response, out, 500, "Failed to fetch papers from arXiv: " + e.getMessage());
+        }
+        out.flush();
+    }
+    
+    /**
+     * 处理提交博客生成任务
      */
     @Operation(
-        summary = "生成论文博客",
-        description = "根据论文ID生成博客并写入推荐表",
+        summary = "提交论文博客生成任务",
+        description = "提交博客生成任务并立即返回任务ID，由后台工作线程生成博客并写入推荐表；通过 /api/papers/blog-jobs/{jobId} 查询状态和结果",
         parameters = {
             @Parameter(name = "paperId", description = "论文ID", required = true, schema = @Schema(type = "integer"))
         },
@@ -310,9 +350,10 @@ public class PapersApi extends HttpServlet {
             )
         ),
         responses = {
-            @ApiResponse(responseCode = "200", description = "博客生成成功"),
+            @ApiResponse(responseCode = "202", description = "任务已提交"),
             @ApiResponse(responseCode = "400", description = "请求参数错误"),
             @ApiResponse(responseCode = "404", description = "论文不存在"),
+            @ApiResponse(responseCode = "503", description = "任务队列已满"),
             @ApiResponse(responseCode = "500", description = "服务器内部错误")
         }
     )
@@ -368,72 +409,271 @@ public class PapersApi extends HttpServlet {
             return;
         }
         
-        String paperTitle = (String) paper.get("title");
-        String paperAuthor = (String) paper.get("author");
-        String paperAbstract = (String) paper.get("abstract");
-        
         try {
-            // 生成博客
-            String blogContent = blogGeneratorService.generateBlog(
-                paperTitle != null ? paperTitle : "",
-                paperAuthor != null ? paperAuthor : "",
-                paperAbstract != null ? paperAbstract : ""
-            );
-            
-            // 写入推荐表
-            int recommendationId = dbManager.insertRecommendation(userId, paperId, blogContent);
-            
-            if (recommendationId > 0) {
-                Map<String, Object> result = new HashMap<>();
-                result.put("status", "success");
-                result.put("message", "博客生成成功");
-                Map<String, Object> data = new HashMap<>();
-                data.put("recommendation_id", recommendationId);
-                data.put("paper_id", paperId);
-                data.put("user_id", userId);
-                data.put("blog", blogContent);
-                result.put("data", data);
-                
-                out.print(objectMapper.writeValueAsString(result));
-            } else {
-                sendError(response, out, 500, "Failed to insert recommendation");
+            // 写入任务队列，由后台工作线程生成博客
+            Map<String, Object> job = blogJobService.submit(userId, paperId);
+            long jobId = (Long) job.get("job_id");
+
+            response.setStatus(202);
+            response.setHeader("Location", request.getContextPath() + "/api/papers/blog-jobs/" + jobId);
+            Map<String, Object> result = new HashMap<>();
+            result.put("status", "success");
+            result.put("message", (Boolean) job.get("existing") ? "博客生成任务已在处理中" : "博客生成任务已提交");
+            Map<String, Object> data = new HashMap<>();
+            data.put("job_id", jobId);
+            data.put("job_status", job.get("status"));
+            data.put("paper_id", paperId);
+            data.put("user_id", userId);
+            data.put("status_url", "/api/papers/blog-jobs/" + jobId);
+            data.put("result_url", "/api/papers/blog-jobs/" + jobId + "/result");
+            result.put("data", data);
+
+            out.print(objectMapper.writeValueAsString(result));
+        } catch (RejectedExecutionException e) {
+            response.setHeader("Retry-After", "30");
+            sendError(response, out, 503, e.getMessage());
+        }
+        out.flush();
+    }
+
+    /**
+     * 处理流式生成博客
+     * 请求线程只做校验并开启异步上下文，生成在BlogStreamService的线程池中进行，
+     * 内容片段以SSE事件实时推送，完成后完整博客写入推荐表
+     */
+    @Operation(
+        summary = "流式生成博客",
+        description = "以Server-Sent Events返回生成中的博客：首先发送start事件，delta事件携带内容片段，done事件携带推荐记录ID，error事件携带失败原因（包括并发流已达上限）",
+        parameters = {
+            @Parameter(name = "paperId", description = "论文ID", required = true, schema = @Schema(type = "integer")),
+            @Parameter(name = "userId", description = "用户ID", required = true, schema = @Schema(type = "integer"))
+        },
+        responses = {
+            @ApiResponse(responseCode = "200", description = "事件流"),
+            @ApiResponse(responseCode = "400", description = "请求参数错误"),
+            @ApiResponse(responseCode = "404", description = "用户或论文不存在")
+        }
+    )
+    private void handleStreamBlog(int paperId, HttpServletRequest request, HttpServletResponse response,
+                                  PrintWriter out) throws IOException, SQLException {
+        String userIdParam = request.getParameter("userId");
+        if (userIdParam == null) {
+            sendError(response, out, 400, "User ID is required");
+            return;
+        }
+
+        int userId;
+        try {
+            userId = Integer.parseInt(userIdParam);
+        } catch (NumberFormatException e) {
+            sendError(response, out, 400, "Invalid user ID format");
+            return;
+        }
+
+        if (dbManager.getUserById(userId) == null) {
+            sendError(response, out, 404, "User not found");
+            return;
+        }
+
+        Map<String, Object> paper = dbManager.getPaperById(paperId);
+        if (paper == null) {
+            sendError(response, out, 404, "Paper not found");
+            return;
+        }
+
+        response.setContentType("text/event-stream");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("X-Accel-Buffering", "no");
+
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(blogStreamService.getTimeoutMillis());
+        BlogEventStream eventStream = new BlogEventStream(asyncContext, out, objectMapper);
+        asyncContext.addListener(eventStream);
+
+        // 提交生成前发送首个事件：命中缓存时生成线程会立即推送内容，start必须是第一个事件
+        eventStream.send("start", Map.of("paper_id", paperId, "user_id", userId));
+
+        try {
+            blogStreamService.stream(userId, paper, eventStream);
+        } catch (RejectedExecutionException e) {
+            // 响应已开始，改用error事件告知客户端稍后重试
+            eventStream.onError(new IOException("Too many blog streams in progress, please retry later"));
+        }
+    }
+
+    /**
+     * 单个SSE连接
+     * 生成线程写入事件，容器线程处理超时和断开；客户端断开后生成继续进行，完成后仍写入推荐表
+     */
+    private static class BlogEventStream implements BlogStreamService.StreamListener, AsyncListener {
+        private final AsyncContext asyncContext;
+        private final PrintWriter out;
+        private final ObjectMapper objectMapper;
+        private boolean closed;
+        private boolean completed;
+
+        BlogEventStream(AsyncContext asyncContext, PrintWriter out, ObjectMapper objectMapper) {
+            this.asyncContext = asyncContext;
+            this.out = out;
+            this.objectMapper = objectMapper;
+        }
+
+        /**
+         * 发送一个SSE事件，连接已关闭时忽略
+         */
+        synchronized void send(String event, Map<String, Object> data) {
+            if (closed) {
+                return;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.err.println("Error generating blog: " + e.getMessage());
-            String errorMessage = e.getMessage();
-            if (errorMessage != null) {
-                // 根据错误信息判断HTTP状态码
-                int httpStatus = 500;
-                if (errorMessage.contains("API key") || errorMessage.contains("not configured") || 
-                    errorMessage.contains("认证失败")) {
-                    httpStatus = 400;
-                } else if (errorMessage.contains("余额不足") || errorMessage.contains("访问被拒绝") || 
-                          errorMessage.contains("HTTP 402") || errorMessage.contains("HTTP 403")) {
-                    httpStatus = 402; // 使用402表示支付问题
-                } else if (errorMessage.contains("HTTP 401")) {
-                    httpStatus = 401;
-                } else if (errorMessage.contains("HTTP 429")) {
-                    httpStatus = 429;
-                } else if (errorMessage.contains("HTTP 400")) {
-                    httpStatus = 400;
+            try {
+                out.write("event: " + event + "\n");
+                out.write("data: " + objectMapper.writeValueAsString(data) + "\n\n");
+                out.flush();
+            } catch (IOException e) {
+                closed = true;
+                return;
+            }
+            if (out.checkError()) {
+                // 客户端已断开
+                closed = true;
+            }
+        }
+
+        private synchronized void finish() {
+            closed = true;
+            if (!completed) {
+                completed = true;
+                try {
+                    asyncContext.complete();
+                } catch (IllegalStateException e) {
+                    // 容器已结束该请求
                 }
-                sendError(response, out, httpStatus, errorMessage);
-            } else {
-                sendError(response, out, 500, "Failed to generate blog: Unknown error");
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            System.err.println("Database error in handleGenerateBlog: " + e.getMessage());
-            sendError(response, out, 500, "Database error: " + e.getMessage());
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.err.println("Unexpected error in handleGenerateBlog: " + e.getMessage());
-            sendError(response, out, 500, "Internal server error: " + e.getMessage());
         }
+
+        @Override
+        public void onDelta(String text) {
+            send("delta", Map.of("text", text));
+        }
+
+        @Override
+        public void onComplete(RecommendationWriter.RecommendationResult result) {
+            send("done", Map.of("recommendation_id", result.getRecommendationId(),
+                    "length", result.getBlog().length()));
+            finish();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            send("error", Map.of("message", e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+            finish();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            synchronized (this) {
+                closed = true;
+                completed = true;
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            send("error", Map.of("message", "Stream timed out; the blog will still be saved when generation finishes"));
+            finish();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            finish();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+    /**
+     * 处理查询博客生成任务状态
+     */
+    @Operation(
+        summary = "查询博客生成任务状态",
+        description = "返回任务状态（queued、running、succeeded、failed）、尝试次数、推荐记录ID和失败原因",
+        parameters = {
+            @Parameter(name = "jobId", description = "任务ID", required = true, schema = @Schema(type = "integer"))
+        },
+        responses = {
+            @ApiResponse(responseCode = "200", description = "获取成功"),
+            @ApiResponse(responseCode = "404", description = "任务不存在")
+        }
+    )
+    private void handleGetBlogJob(long jobId, HttpServletResponse response, PrintWriter out)
+            throws IOException, SQLException {
+        Map<String, Object> job = blogJobService.getJob(jobId);
+        if (job == null) {
+            sendError(response, out, 404, "Blog job not found");
+            return;
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", "success");
+        result.put("data", job);
+        out.print(objectMapper.writeValueAsString(result));
         out.flush();
     }
-    
+
+    /**
+     * 处理获取博客生成任务结果
+     */
+    @Operation(
+        summary = "获取博客生成任务结果",
+        description = "任务成功时返回生成的博客；任务未结束时返回202，失败时返回409及失败原因",
+        parameters = {
+            @Parameter(name = "jobId", description = "任务ID", required = true, schema = @Schema(type = "integer"))
+        },
+        responses = {
+            @ApiResponse(responseCode = "200", description = "获取成功"),
+            @ApiResponse(responseCode = "202", description = "任务尚未完成"),
+            @ApiResponse(responseCode = "404", description = "任务不存在"),
+            @ApiResponse(responseCode = "409", description = "任务失败")
+        }
+    )
+    private void handleGetBlogJobResult(long jobId, HttpServletResponse response, PrintWriter out)
+            throws IOException, SQLException {
+        Map<String, Object> job = blogJobService.getJob(jobId);
+        if (job == null) {
+            sendError(response, out, 404, "Blog job not found");
+            return;
+        }
+
+        String jobStatus = (String) job.get("status");
+        if ("failed".equals(jobStatus)) {
+            sendError(response, out, 409, "Blog job failed: " + job.get("error_message"));
+            return;
+        }
+
+        Map<String, Object> recommendation = blogJobService.getResult(job);
+        Map<String, Object> result = new HashMap<>();
+        Map<String, Object> data = new HashMap<>();
+        data.put("job_id", jobId);
+        data.put("job_status", jobStatus);
+        if (recommendation == null) {
+            response.setStatus(202);
+            result.put("status", "success");
+            result.put("message", "博客生成任务尚未完成");
+        } else {
+            result.put("status", "success");
+            result.put("message", "博客生成成功");
+            data.put("recommendation_id", recommendation.get("id"));
+            data.put("paper_id", recommendation.get("paper_id"));
+            data.put("user_id", recommendation.get("user_id"));
+            data.put("blog", recommendation.get("blog"));
+        }
+        result.put("data", data);
+        out.print(objectMapper.writeValueAsString(result));
+        out.flush();
+    }
+
     /**
      * 发送错误响应
      */
@@ -450,6 +690,9 @@ public class PapersApi extends HttpServlet {
     @Override
     public void destroy() {
         super.destroy();
+        if (blogStreamService != null) {
+            blogStreamService.shutdown();
+        }
         if (dbManager != null) {
             dbManager.closeConnection();
         }
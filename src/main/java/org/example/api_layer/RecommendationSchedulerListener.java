@@ -0,0 +1,28 @@
+package org.example.api_layer;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+import org.example.orchestrator_layer.RecommendationScheduler;
+
+/**
+ * 随Web应用启动和停止推荐调度器
+ */
+@WebListener
+public class RecommendationSchedulerListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        try {
+            RecommendationScheduler.start();
+        } catch (Exception e) {
+            System.err.println("❌ Failed to start RecommendationScheduler: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        RecommendationScheduler.stop();
+    }
+}
@@ -0,0 +1,28 @@
+package org.example.api_layer;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+import org.example.orchestrator_layer.ShardedRecommendationRunner;
+
+/**
+ * 随Web应用启动和停止本节点的分片推荐工作线程
+ */
+@WebListener
+public class ShardedRecommendationListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        try {
+            ShardedRecommendationRunner.start();
+        } catch (Exception e) {
+            System.err.println("❌ Failed to start ShardedRecommendationRunner: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        ShardedRecommendationRunner.stop();
+    }
+}
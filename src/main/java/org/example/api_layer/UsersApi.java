@@ -2,7 +2,9 @@ package org.example.api_layer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.example.data_access_layer.Dbmanager;
+import org.example.orchestrator_layer.RecommendationScheduler;
 import org.example.service.IndexService;
+import org.example.service.InterestEmbeddingService;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -28,6 +30,10 @@ import java.util.Map;
 @WebServlet(name = "usersApi", value = "/api/users/*")
 @Tag(name = "用户管理", description = "用户相关的 API 操作")
 public class UsersApi extends HttpServlet {
+    // GET /api/users/{id}/candidates 的默认和最大返回数量（候选集最多保存recommend.candidate_heap_size篇）
+    private static final int DEFAULT_CANDIDATES = 10;
+    private static final int MAX_CANDIDATES = 50;
+
     private Dbmanager dbManager;
     private ObjectMapper objectMapper;
     private IndexService indexService;
@@ -87,6 +93,14 @@ public class UsersApi extends HttpServlet {
                     } catch (NumberFormatException e) {
                         sendError(response, out, 400, "Invalid user ID format");
                     }
+                } else if (pathParts.length == 2 && pathParts[1].equals("candidates")) {
+                    // GET /api/users/{userId}/candidates - 获取用户当前的候选论文排名
+                    try {
+                        int userId = Integer.parseInt(pathParts[0]);
+                        handleGetUserCandidates(userId, request, response, out);
+                    } catch (NumberFormatException e) {
+                        sendError(response, out, 400, "Invalid user ID format");
+                    }
                 } else if (pathParts.length == 3 && pathParts[1].equals("interest") && pathParts[2].equals("history")) {
                     // GET /api/users/{userId}/interest/history - 获取用户兴趣变迁数据
                     try {
@@ -416,6 +430,58 @@ public class UsersApi extends HttpServlet {
         out.flush();
     }
 
+    /**
+     * 处理获取用户候选论文
+     */
+    @Operation(
+        summary = "获取用户候选论文",
+        description = "返回用户当前得分最高的未推荐论文。候选集由推荐运行、新论文的反向匹配和兴趣更新后的刷新任务增量维护，请求时不做评分",
+        parameters = {
+            @Parameter(name = "userId", description = "用户 ID", required = true, schema = @Schema(type = "integer")),
+            @Parameter(name = "limit", description = "返回数量（1-" + MAX_CANDIDATES + "）", schema = @Schema(type = "integer", defaultValue = "10"))
+        },
+        responses = {
+            @ApiResponse(responseCode = "200", description = "成功获取用户候选论文"),
+            @ApiResponse(responseCode = "400", description = "limit参数无效"),
+            @ApiResponse(responseCode = "404", description = "用户不存在")
+        }
+    )
+    private void handleGetUserCandidates(int userId, HttpServletRequest request, HttpServletResponse response,
+                                         PrintWriter out) throws SQLException, IOException {
+        int limit = DEFAULT_CANDIDATES;
+        String limitParam = request.getParameter("limit");
+        if (limitParam != null) {
+            try {
+                limit = Integer.parseInt(limitParam);
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit < 1 || limit > MAX_CANDIDATES) {
+                sendError(response, out, 400, "limit must be between 1 and " + MAX_CANDIDATES);
+                return;
+            }
+        }
+
+        if (dbManager.getUserById(userId) == null) {
+            sendError(response, out, 404, "User not found");
+            return;
+        }
+
+        List<Map<String, Object>> candidates = dbManager.getTopUserCandidates(userId, limit);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", "success");
+        result.put("message", "获取用户候选论文成功");
+        Map<String, Object> data = new HashMap<>();
+        data.put("user_id", userId);
+        data.put("count", candidates.size());
+        data.put("candidates", candidates);
+        result.put("data", data);
+
+        out.print(objectMapper.writeValueAsString(result));
+        out.flush();
+    }
+
     /**
      * 处理获取用户兴趣变迁数据
      */
@@ -567,8 +633,8 @@ public class UsersApi extends HttpServlet {
         boolean updated = dbManager.updateUserInterest(userId, interest);
 
         if (updated) {
-            // 异步生成用户兴趣的向量嵌入（插入历史记录）
-            generateUserInterestEmbeddingAsync(userId, interest);
+            // 提交兴趣向量生成任务，由任务队列的工作线程生成并插入历史记录
+            submitInterestEmbeddingJob(userId, interest);
 
             Map<String, Object> result = new HashMap<>();
             result.put("status", "success");
@@ -692,6 +758,12 @@ public class UsersApi extends HttpServlet {
             Map<String, Object> data = new HashMap<>();
             data.put("user_id", userId);
             data.put("frequency", frequency);
+
+            // 通知调度器按新频率安排下一次推荐
+            RecommendationScheduler scheduler = RecommendationScheduler.getInstance();
+            if (scheduler != null) {
+                data.put("next_due_at", scheduler.reschedule(userId, frequency));
+            }
             result.put("data", data);
 
             out.print(objectMapper.writeValueAsString(result));
@@ -702,39 +774,16 @@ public class UsersApi extends HttpServlet {
     }
 
     /**
-     * 异步生成用户兴趣向量嵌入
+     * 提交用户兴趣向量生成任务
      * @param userId 用户ID
      * @param interest 用户兴趣文本
      */
-    private void generateUserInterestEmbeddingAsync(int userId, String interest) {
-        // 启动异步线程生成向量嵌入
-        Thread embeddingThread = new Thread(() -> {
-            try {
-                System.out.println("🔄 Starting async embedding generation for user " + userId);
-
-                // 使用IndexService生成向量
-                List<Double> embedding = indexService.generateEmbedding(interest);
-
-                // 将向量转换为JSON字符串
-                String embeddingJson = objectMapper.writeValueAsString(embedding);
-
-                // 存储到interest_embeddings表（作为历史记录）
-                boolean success = dbManager.insertInterestEmbedding(userId, embeddingJson, embedding.size());
-
-                if (success) {
-                    System.out.println("✅ Successfully generated and stored interest embedding for user " + userId);
-                } else {
-                    System.err.println("❌ Failed to store interest embedding for user " + userId);
-                }
-
-            } catch (Exception e) {
-                System.err.println("❌ Error generating interest embedding for user " + userId + ": " + e.getMessage());
-                e.printStackTrace();
-            }
-        });
-
-        embeddingThread.setDaemon(true); // 设置为守护线程
-        embeddingThread.start();
+    private void submitInterestEmbeddingJob(int userId, String interest) {
+        try {
+            InterestEmbeddingService.getInstance().submit(userId, interest);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to submit interest embedding job for user " + userId + ": " + e.getMessage());
+        }
     }
 
     /**
@@ -2,11 +2,16 @@ package org.example.data_access_layer;
 
 import java.io.InputStream;
 import java.sql.*;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * 数据库管理类
@@ -103,6 +108,201 @@ public class Dbmanager {
         return -1;
     }
 
+    /**
+     * 按arXiv ID插入或更新论文
+     * 已存在时仅在新版本号更大时更新元数据，返回已有的paper_id
+     * @param arxivId arXiv ID（不含版本号）
+     * @param arxivVersion arXiv版本号
+     * @return 论文ID
+     */
+    public int upsertPaper(String arxivId, int arxivVersion, String title, String author,
+                           String abstractText, String pdfUrl) throws SQLException {
+        // 赋值按从左到右执行，arxiv_version必须最后更新
+        String sql = "INSERT INTO papers (arxiv_id, arxiv_version, title, author, abstract, pdf_url) " +
+                     "VALUES (?, ?, ?, ?, ?, ?) " +
+                     "ON DUPLICATE KEY UPDATE paper_id = LAST_INSERT_ID(paper_id), " +
+                     "title = IF(VALUES(arxiv_version) > COALESCE(arxiv_version, 0), VALUES(title), title), " +
+                     "author = IF(VALUES(arxiv_version) > COALESCE(arxiv_version, 0), VALUES(author), author), " +
+                     "abstract = IF(VALUES(arxiv_version) > COALESCE(arxiv_version, 0), VALUES(abstract), abstract), " +
+                     "pdf_url = IF(VALUES(arxiv_version) > COALESCE(arxiv_version, 0), VALUES(pdf_url), pdf_url), " +
+                     "arxiv_version = GREATEST(COALESCE(arxiv_version, 0), VALUES(arxiv_version))";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, arxivId);
+            stmt.setInt(2, arxivVersion);
+            stmt.setString(3, title);
+            stmt.setString(4, author);
+            stmt.setString(5, abstractText);
+            stmt.setString(6, pdfUrl);
+            stmt.executeUpdate();
+
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 批量按arXiv ID插入或更新论文，每条多行INSERT最多包含500篇论文，整批在一个事务中提交
+     * 与upsertPaper相同，已存在的论文只在版本号更大时更新
+     * @param papers 论文列表，每项包含arxiv_id、arxiv_version、title、author、abstract、pdf_url
+     * @return 受影响的行数（新插入计1，更新计2）
+     * @throws SQLException 如果数据库操作失败
+     */
+    public int upsertPapers(List<Map<String, Object>> papers) throws SQLException {
+        Connection conn = getConnection();
+        boolean autoCommit = conn.getAutoCommit();
+        int rowsAffected = 0;
+        int chunkSize = 500;
+
+        try {
+            conn.setAutoCommit(false);
+            for (int from = 0; from < papers.size(); from += chunkSize) {
+                List<Map<String, Object>> chunk = papers.subList(from, Math.min(from + chunkSize, papers.size()));
+                String values = String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?, ?, ?, ?)"));
+                // 赋值按从左到右执行，arxiv_version必须最后更新
+                String sql = "INSERT INTO papers (arxiv_id, arxiv_version, title, author, abstract, pdf_url) " +
+                             "VALUES " + values + " " +
+                             "ON DUPLICATE KEY UPDATE " +
+                             "title = IF(VALUES(arxiv_version) > COALESCE(arxiv_version, 0), VALUES(title), title), " +
+                             "author = IF(VALUES(arxiv_version) > COALESCE(arxiv_version, 0), VALUES(author), author), " +
+                             "abstract = IF(VALUES(arxiv_version) > COALESCE(arxiv_version, 0), VALUES(abstract), abstract), " +
+                             "pdf_url = IF(VALUES(arxiv_version) > COALESCE(arxiv_version, 0), VALUES(pdf_url), pdf_url), " +
+                             "arxiv_version = GREATEST(COALESCE(arxiv_version, 0), VALUES(arxiv_version))";
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    int index = 1;
+                    for (Map<String, Object> paper : chunk) {
+                        stmt.setString(index++, (String) paper.get("arxiv_id"));
+                        stmt.setInt(index++, (Integer) paper.get("arxiv_version"));
+                        stmt.setString(index++, (String) paper.get("title"));
+                        stmt.setString(index++, (String) paper.get("author"));
+                        stmt.setString(index++, (String) paper.get("abstract"));
+                        stmt.setString(index++, (String) paper.get("pdf_url"));
+                    }
+                    rowsAffected += stmt.executeUpdate();
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return rowsAffected;
+    }
+
+    /**
+     * 批量查询已入库的arXiv ID及其版本号
+     * @param arxivIds arXiv ID列表（不含版本号）
+     * @return 已存在的arXiv ID到版本号的映射（版本未知时为0）
+     */
+    public Map<String, Integer> getKnownArxivVersions(Collection<String> arxivIds) throws SQLException {
+        Map<String, Integer> known = new HashMap<>();
+        List<String> ids = new ArrayList<>(arxivIds);
+        int chunkSize = 500;
+
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<String> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            String sql = "SELECT arxiv_id, arxiv_version FROM papers WHERE arxiv_id IN (" + placeholders + ")";
+            try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        known.put(rs.getString("arxiv_id"), rs.getInt("arxiv_version"));
+                    }
+                }
+            }
+        }
+        return known;
+    }
+
+    /**
+     * 批量查询已入库且已建立向量索引的arXiv ID及其版本号
+     * 入库后未能建立索引的论文不会出现在结果中，再次抓取到时会重新建立索引
+     * @param arxivIds arXiv ID列表（不含版本号）
+     * @return 已建立索引的arXiv ID到版本号的映射（版本未知时为0）
+     */
+    public Map<String, Integer> getIndexedArxivVersions(Collection<String> arxivIds) throws SQLException {
+        Map<String, Integer> indexed = new HashMap<>();
+        List<String> ids = new ArrayList<>(arxivIds);
+        int chunkSize = 500;
+
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<String> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            String sql = "SELECT p.arxiv_id, p.arxiv_version FROM papers p " +
+                         "JOIN paper_embeddings pe ON pe.paper_id = p.paper_id " +
+                         "WHERE p.arxiv_id IN (" + placeholders + ")";
+            try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        indexed.put(rs.getString("arxiv_id"), rs.getInt("arxiv_version"));
+                    }
+                }
+            }
+        }
+        return indexed;
+    }
+
+    /**
+     * 批量查询arXiv ID对应的论文ID
+     * @param arxivIds arXiv ID列表（不含版本号）
+     * @return 已存在的arXiv ID到paper_id的映射
+     */
+    public Map<String, Integer> getPaperIdsByArxivIds(Collection<String> arxivIds) throws SQLException {
+        Map<String, Integer> paperIds = new HashMap<>();
+        List<String> ids = new ArrayList<>(arxivIds);
+        int chunkSize = 500;
+
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<String> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            String sql = "SELECT arxiv_id, paper_id FROM papers WHERE arxiv_id IN (" + placeholders + ")";
+            try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        paperIds.put(rs.getString("arxiv_id"), rs.getInt("paper_id"));
+                    }
+                }
+            }
+        }
+        return paperIds;
+    }
+
+    /**
+     * 根据arXiv ID获取论文
+     */
+    public Map<String, Object> getPaperByArxivId(String arxivId) throws SQLException {
+        String sql = "SELECT paper_id, title, author, abstract, pdf_url FROM papers WHERE arxiv_id = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setString(1, arxivId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    Map<String, Object> paper = new HashMap<>();
+                    paper.put("paper_id", rs.getInt("paper_id"));
+                    paper.put("title", rs.getString("title"));
+                    paper.put("author", rs.getString("author"));
+                    paper.put("abstract", rs.getString("abstract"));
+                    paper.put("pdf_url", rs.getString("pdf_url"));
+                    return paper;
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * 根据ID获取论文
      */
@@ -277,6 +477,78 @@ public class Dbmanager {
         return users;
     }
 
+    // 推荐评分游标的字段：用户、最新兴趣向量（与getUserInterestEmbedding的排序一致）和评分水位
+    private static final String SCORING_USER_SELECT =
+            "SELECT u.user_id, u.username, u.interest, u.frequency, " +
+            "ie.id AS interest_embedding_id, ie.embedding AS interest_embedding, " +
+            "s.user_id AS state_user_id, s.last_index_seq, s.interest_embedding_id AS scored_embedding_id " +
+            "FROM users u " +
+            "LEFT JOIN interest_embeddings ie ON ie.id = (SELECT id FROM interest_embeddings " +
+            "WHERE user_id = u.user_id ORDER BY created_at DESC, id DESC LIMIT 1) " +
+            "LEFT JOIN user_scoring_state s ON s.user_id = u.user_id ";
+
+    /**
+     * 按user_id键集分页读取推荐评分所需的用户字段（不含密码），同时带出最新兴趣向量和评分水位，
+     * 每页只需一次查询
+     * @param afterUserId 上一页最后一个用户ID，第一页传0
+     * @param limit 每页数量
+     * @return 用户列表，按user_id升序；每项包含user_id、username、interest、frequency，
+     *         interest_embedding（包含id和embedding的Map，没有时为null）和
+     *         scoring_state（与getScoringState相同的Map，没有时为null）
+     * @throws SQLException 如果数据库查询失败
+     */
+    public List<Map<String, Object>> getScoringUsersAfter(int afterUserId, int limit) throws SQLException {
+        String sql = SCORING_USER_SELECT + "WHERE u.user_id > ? ORDER BY u.user_id LIMIT ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, afterUserId);
+            stmt.setInt(2, limit);
+            return readScoringUsers(stmt);
+        }
+    }
+
+    /**
+     * 统计用户数量
+     */
+    public int countUsers() throws SQLException {
+        String sql = "SELECT COUNT(*) FROM users";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private List<Map<String, Object>> readScoringUsers(PreparedStatement stmt) throws SQLException {
+        List<Map<String, Object>> users = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                Map<String, Object> user = new HashMap<>();
+                user.put("user_id", rs.getInt("user_id"));
+                user.put("username", rs.getString("username"));
+                user.put("interest", rs.getString("interest"));
+                user.put("frequency", rs.getInt("frequency"));
+
+                Map<String, Object> embedding = null;
+                Integer embeddingId = (Integer) rs.getObject("interest_embedding_id");
+                if (embeddingId != null) {
+                    embedding = new HashMap<>();
+                    embedding.put("id", embeddingId);
+                    embedding.put("embedding", rs.getString("interest_embedding"));
+                }
+                user.put("interest_embedding", embedding);
+
+                Map<String, Object> state = null;
+                if (rs.getObject("state_user_id") != null) {
+                    state = new HashMap<>();
+                    state.put("last_index_seq", rs.getInt("last_index_seq"));
+                    state.put("interest_embedding_id", (Integer) rs.getObject("scored_embedding_id"));
+                }
+                user.put("scoring_state", state);
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
     /**
      * 更新用户兴趣
      */
@@ -301,6 +573,82 @@ public class Dbmanager {
         }
     }
 
+    /**
+     * 获取所有用户的推荐调度信息
+     * @return 每项包含user_id、frequency、next_due_at（可能为null）
+     */
+    public List<Map<String, Object>> getUserSchedules() throws SQLException {
+        List<Map<String, Object>> schedules = new ArrayList<>();
+        String sql = "SELECT user_id, frequency, next_due_at FROM users";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                Map<String, Object> schedule = new HashMap<>();
+                schedule.put("user_id", rs.getInt("user_id"));
+                schedule.put("frequency", rs.getInt("frequency"));
+                schedule.put("next_due_at", rs.getTimestamp("next_due_at"));
+                schedules.add(schedule);
+            }
+        }
+        return schedules;
+    }
+
+    /**
+     * 获取用户下一次生成推荐的时间
+     * @return 下一次推荐时间，用户不存在或尚未安排时返回null
+     */
+    public Timestamp getUserNextDueAt(int userId) throws SQLException {
+        String sql = "SELECT next_due_at FROM users WHERE user_id = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getTimestamp("next_due_at") : null;
+            }
+        }
+    }
+
+    /**
+     * 提前用户下一次生成推荐的时间：只在新时间早于已安排的时间（或尚未安排）时更新，多个节点并发修改时保留最早的时间
+     * @param userId 用户ID
+     * @param nextDueAt 新的下一次推荐时间
+     * @param notScheduledSince 不为null时，只在用户此后未被调度领取过时更新
+     * @return 是否更新
+     */
+    public boolean advanceUserNextDueAt(int userId, Timestamp nextDueAt, Timestamp notScheduledSince) throws SQLException {
+        String sql = "UPDATE users SET next_due_at = ? WHERE user_id = ? AND (next_due_at IS NULL OR next_due_at > ?)";
+        if (notScheduledSince != null) {
+            sql += " AND (last_scheduled_at IS NULL OR last_scheduled_at < ?)";
+        }
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setTimestamp(1, nextDueAt);
+            stmt.setInt(2, userId);
+            stmt.setTimestamp(3, nextDueAt);
+            if (notScheduledSince != null) {
+                stmt.setTimestamp(4, notScheduledSince);
+            }
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * 领取已到期的用户：next_due_at不晚于now时改为nextDueAt并记录领取时间
+     * 条件更新是原子的，多个节点同时领取同一用户时只有一个成功
+     * @param userId 用户ID
+     * @param now 当前时间
+     * @param nextDueAt 领取后的下一次推荐时间
+     * @return 是否领取成功
+     */
+    public boolean claimDueUser(int userId, Timestamp now, Timestamp nextDueAt) throws SQLException {
+        String sql = "UPDATE users SET next_due_at = ?, last_scheduled_at = ? WHERE user_id = ? AND next_due_at <= ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setTimestamp(1, nextDueAt);
+            stmt.setTimestamp(2, now);
+            stmt.setInt(3, userId);
+            stmt.setTimestamp(4, now);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
     /**
      * 删除用户
      */
@@ -315,16 +663,17 @@ public class Dbmanager {
     // ========== Recommendations 表操作 ==========
 
     /**
-     * 插入推荐记录
+     * 插入推荐记录，博客内容引用paper_blogs中的共享博客
+     * @param blogId paper_blogs.blog_id
+     * @return 推荐记录ID（已存在时为原记录ID）
      */
-    public int insertRecommendation(int userId, int paperId, String blog) throws SQLException {
-        String sql = "INSERT INTO recommendations (user_id, paper_id, blog) VALUES (?, ?, ?) " +
-                     "ON DUPLICATE KEY UPDATE blog = ?";
+    public int insertRecommendation(int userId, int paperId, int blogId) throws SQLException {
+        String sql = "INSERT INTO recommendations (user_id, paper_id, blog_id) VALUES (?, ?, ?) " +
+                     "ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id), blog_id = VALUES(blog_id), blog = NULL";
         try (PreparedStatement stmt = getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setInt(1, userId);
             stmt.setInt(2, paperId);
-            stmt.setString(3, blog);
-            stmt.setString(4, blog);
+            stmt.setInt(3, blogId);
             stmt.executeUpdate();
 
             try (ResultSet rs = stmt.getGeneratedKeys()) {
@@ -342,9 +691,10 @@ public class Dbmanager {
     public List<Map<String, Object>> getRecommendationsByUserId(int userId, String interests) throws SQLException {
         List<Map<String, Object>> recommendations = new ArrayList<>();
 
-        String sql = "SELECT r.id, r.user_id, r.paper_id, r.blog, r.created_at, p.title, p.author " +
+        String sql = "SELECT r.id, r.user_id, r.paper_id, COALESCE(pb.blog, r.blog) AS blog, r.created_at, p.title, p.author " +
                      "FROM recommendations r " +
                      "JOIN papers p ON r.paper_id = p.paper_id " +
+                     "LEFT JOIN paper_blogs pb ON r.blog_id = pb.blog_id " +
                      "WHERE r.user_id = ? " +
                      "ORDER BY r.created_at DESC";
 
@@ -369,27 +719,54 @@ public class Dbmanager {
     }
 
     /**
-     * 插入论文向量嵌入
+     * 插入或更新论文向量嵌入，每次写入都分配新的index_seq
+     * 序号行在事务提交前保持锁定，序号因此按提交顺序递增：增量评分按index_seq扫描时不会越过尚未提交的向量，
+     * 重新索引的论文也会因为新的序号被重新评分
      * @param paperId 论文ID
      * @param embeddingJson 向量JSON字符串
      * @param dimension 向量维度
      * @return 是否成功
-     * @throws SQLException 如果数据库操作失败
+     * @throws SQLException 如果数据库操作失败（事务会回滚）
      */
     public boolean insertPaperEmbedding(int paperId, String embeddingJson, int dimension) throws SQLException {
-        String sql = "INSERT INTO paper_embeddings (paper_id, embedding, dimension, created_at) " +
-                     "VALUES (?, ?, ?, NOW()) " +
-                     "ON DUPLICATE KEY UPDATE embedding = ?, dimension = ?, updated_at = NOW()";
+        Connection conn = getConnection();
+        boolean autoCommit = conn.getAutoCommit();
+        try {
+            conn.setAutoCommit(false);
 
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setInt(1, paperId);
-            stmt.setString(2, embeddingJson);
-            stmt.setInt(3, dimension);
-            stmt.setString(4, embeddingJson);
-            stmt.setInt(5, dimension);
+            int indexSeq;
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT value FROM paper_embedding_seq WHERE id = 1 FOR UPDATE");
+                 ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("paper_embedding_seq is not initialized");
+                }
+                indexSeq = rs.getInt(1) + 1;
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("UPDATE paper_embedding_seq SET value = ? WHERE id = 1")) {
+                stmt.setInt(1, indexSeq);
+                stmt.executeUpdate();
+            }
 
-            int rowsAffected = stmt.executeUpdate();
+            String sql = "INSERT INTO paper_embeddings (paper_id, embedding, dimension, index_seq, created_at) " +
+                         "VALUES (?, ?, ?, ?, NOW()) " +
+                         "ON DUPLICATE KEY UPDATE embedding = VALUES(embedding), dimension = VALUES(dimension), " +
+                         "index_seq = VALUES(index_seq), updated_at = NOW()";
+            int rowsAffected;
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, paperId);
+                stmt.setString(2, embeddingJson);
+                stmt.setInt(3, dimension);
+                stmt.setInt(4, indexSeq);
+                rowsAffected = stmt.executeUpdate();
+            }
+
+            conn.commit();
             return rowsAffected > 0;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
         }
     }
 
@@ -435,6 +812,32 @@ public class Dbmanager {
         return null;
     }
 
+    /**
+     * 按index_seq顺序分块读取向量（keyset分页）
+     * @param afterSeq 只返回index_seq大于该值的记录
+     * @param limit 最多返回的记录数
+     * @return 每项包含index_seq、paper_id、embedding（JSON字符串）
+     * @throws SQLException 如果数据库查询失败
+     */
+    public List<Map<String, Object>> getPaperEmbeddingsAfter(int afterSeq, int limit) throws SQLException {
+        List<Map<String, Object>> embeddings = new ArrayList<>();
+        String sql = "SELECT index_seq, paper_id, embedding FROM paper_embeddings WHERE index_seq > ? ORDER BY index_seq LIMIT ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, afterSeq);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> embedding = new HashMap<>();
+                    embedding.put("index_seq", rs.getInt("index_seq"));
+                    embedding.put("paper_id", rs.getInt("paper_id"));
+                    embedding.put("embedding", rs.getString("embedding"));
+                    embeddings.add(embedding);
+                }
+            }
+        }
+        return embeddings;
+    }
+
     // ========== Interest Embeddings 表操作 ==========
 
     /**
@@ -481,16 +884,17 @@ public class Dbmanager {
     /**
      * 获取用户最新的兴趣向量嵌入
      * @param userId 用户ID
-     * @return 向量数据Map，包含embedding和dimension
+     * @return 向量数据Map，包含id、embedding和dimension
      * @throws SQLException 如果数据库查询失败
      */
     public Map<String, Object> getUserInterestEmbedding(int userId) throws SQLException {
-        String sql = "SELECT embedding, dimension, created_at FROM interest_embeddings WHERE user_id = ? ORDER BY created_at DESC LIMIT 1";
+        String sql = "SELECT id, embedding, dimension, created_at FROM interest_embeddings WHERE user_id = ? ORDER BY created_at DESC, id DESC LIMIT 1";
         try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
             stmt.setInt(1, userId);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     Map<String, Object> embedding = new HashMap<>();
+                    embedding.put("id", rs.getInt("id"));
                     embedding.put("embedding", rs.getString("embedding"));
                     embedding.put("dimension", rs.getInt("dimension"));
                     embedding.put("created_at", rs.getTimestamp("created_at"));
@@ -501,6 +905,25 @@ public class Dbmanager {
         return null;
     }
 
+    /**
+     * 获取每个用户最新的兴趣向量
+     * @return 用户ID到向量JSON字符串的映射
+     * @throws SQLException 如果数据库查询失败
+     */
+    public Map<Integer, String> getLatestInterestEmbeddings() throws SQLException {
+        Map<Integer, String> embeddings = new HashMap<>();
+        String sql = "SELECT ie.user_id, ie.embedding FROM interest_embeddings ie " +
+                     "JOIN (SELECT user_id, MAX(id) AS id FROM interest_embeddings GROUP BY user_id) latest " +
+                     "ON ie.id = latest.id";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                embeddings.put(rs.getInt("user_id"), rs.getString("embedding"));
+            }
+        }
+        return embeddings;
+    }
+
     /**
      * 获取用户所有的兴趣历史记录
      * @param userId 用户ID
@@ -547,6 +970,55 @@ public class Dbmanager {
         return false;
     }
 
+    /**
+     * 获取已推荐给用户的全部论文ID
+     * @param userId 用户ID
+     * @return 论文ID集合
+     * @throws SQLException 如果数据库查询失败
+     */
+    public Set<Integer> getRecommendedPaperIds(int userId) throws SQLException {
+        Set<Integer> paperIds = new HashSet<>();
+        String sql = "SELECT paper_id FROM recommendations WHERE user_id = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    paperIds.add(rs.getInt("paper_id"));
+                }
+            }
+        }
+        return paperIds;
+    }
+
+    /**
+     * 批量获取多个用户已推荐过的论文ID
+     * @param userIds 用户ID列表
+     * @return 用户ID到论文ID集合的映射，没有推荐的用户不在结果中
+     * @throws SQLException 如果数据库查询失败
+     */
+    public Map<Integer, Set<Integer>> getRecommendedPaperIdsForUsers(Collection<Integer> userIds) throws SQLException {
+        Map<Integer, Set<Integer>> paperIds = new HashMap<>();
+        List<Integer> ids = new ArrayList<>(userIds);
+        int chunkSize = 500;
+
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            String sql = "SELECT user_id, paper_id FROM recommendations WHERE user_id IN (" + placeholders + ")";
+            try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setInt(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        paperIds.computeIfAbsent(rs.getInt("user_id"), k -> new HashSet<>()).add(rs.getInt("paper_id"));
+                    }
+                }
+            }
+        }
+        return paperIds;
+    }
+
     /**
      * 删除用户兴趣向量嵌入
      * @param userId 用户ID
@@ -560,4 +1032,858 @@ public class Dbmanager {
             return stmt.executeUpdate() > 0;
         }
     }
+
+    // ========== Harvest State 表操作 ==========
+
+    /**
+     * 获取分类的抓取检查点
+     * @param category arXiv分类查询，如 cs.*
+     * @return 检查点Map（window_start、window_end、page_offset、last_submitted_at、completed），不存在时返回null
+     * @throws SQLException 如果数据库查询失败
+     */
+    public Map<String, Object> getHarvestState(String category) throws SQLException {
+        String sql = "SELECT category, window_start, window_end, page_offset, last_submitted_at, completed " +
+                     "FROM harvest_state WHERE category = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setString(1, category);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    Map<String, Object> state = new HashMap<>();
+                    state.put("category", rs.getString("category"));
+                    state.put("window_start", rs.getObject("window_start", LocalDateTime.class));
+                    state.put("window_end", rs.getObject("window_end", LocalDateTime.class));
+                    state.put("page_offset", rs.getInt("page_offset"));
+                    state.put("last_submitted_at", rs.getObject("last_submitted_at", LocalDateTime.class));
+                    state.put("completed", rs.getBoolean("completed"));
+                    return state;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 保存分类的抓取检查点
+     * @param category arXiv分类查询
+     * @param windowStart 窗口起点（UTC）
+     * @param windowEnd 窗口终点（UTC）
+     * @param pageOffset 窗口内已入库的结果偏移量
+     * @param lastSubmittedAt 已入库论文的最新提交时间（UTC），可为null
+     * @param completed 窗口是否已完成
+     * @throws SQLException 如果数据库操作失败
+     */
+    public void saveHarvestState(String category, LocalDateTime windowStart, LocalDateTime windowEnd,
+                                 int pageOffset, LocalDateTime lastSubmittedAt, boolean completed) throws SQLException {
+        String sql = "INSERT INTO harvest_state (category, window_start, window_end, page_offset, last_submitted_at, completed) " +
+                     "VALUES (?, ?, ?, ?, ?, ?) " +
+                     "ON DUPLICATE KEY UPDATE window_start = VALUES(window_start), window_end = VALUES(window_end), " +
+                     "page_offset = VALUES(page_offset), " +
+                     "last_submitted_at = GREATEST(COALESCE(last_submitted_at, VALUES(last_submitted_at)), COALESCE(VALUES(last_submitted_at), last_submitted_at)), " +
+                     "completed = VALUES(completed)";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setString(1, category);
+            stmt.setObject(2, windowStart);
+            stmt.setObject(3, windowEnd);
+            stmt.setInt(4, pageOffset);
+            stmt.setObject(5, lastSubmittedAt);
+            stmt.setBoolean(6, completed);
+            stmt.executeUpdate();
+        }
+    }
+
+    // ========== Jobs 表操作 ==========
+
+    /**
+     * 插入排队任务
+     * @param jobType 任务类型
+     * @param payload 任务参数（JSON）
+     * @param priority 优先级，越大越先执行
+     * @param dedupeKey 去重键，可以为null
+     * @param dedupeWhileRunning 为false时只在排队期间去重，任务被领取后即可提交相同去重键的新任务
+     * @param maxAttempts 最多尝试次数
+     * @return 任务ID
+     * @throws SQLIntegrityConstraintViolationException 如果已有相同类型和去重键的未结束任务（由唯一键保证，跨节点有效）
+     * @throws SQLException 如果数据库操作失败
+     */
+    public long insertJob(String jobType, String payload, int priority, String dedupeKey, boolean dedupeWhileRunning,
+                          int maxAttempts) throws SQLException {
+        String sql = "INSERT INTO jobs (job_type, payload, priority, dedupe_key, active_key, dedupe_while_running, " +
+                     "max_attempts, status, available_at) VALUES (?, ?, ?, ?, ?, ?, ?, 'queued', NOW())";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, jobType);
+            stmt.setString(2, payload);
+            stmt.setInt(3, priority);
+            stmt.setString(4, dedupeKey);
+            stmt.setString(5, dedupeKey);
+            stmt.setBoolean(6, dedupeWhileRunning);
+            stmt.setInt(7, maxAttempts);
+            stmt.executeUpdate();
+
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 获取任务
+     * @return 任务Map，不存在时返回null
+     */
+    public Map<String, Object> getJob(long jobId) throws SQLException {
+        String sql = "SELECT * FROM jobs WHERE job_id = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setLong(1, jobId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapJob(rs);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取去重键相同且尚未结束（queued或running）的任务
+     * @return 任务Map，不存在时返回null
+     */
+    public Map<String, Object> getActiveJob(String jobType, String dedupeKey) throws SQLException {
+        String sql = "SELECT * FROM jobs WHERE job_type = ? AND active_key = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setString(1, jobType);
+            stmt.setString(2, dedupeKey);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapJob(rs);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 统计某类型排队中的任务数量
+     */
+    public int countQueuedJobs(String jobType) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM jobs WHERE job_type = ? AND status = 'queued'";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setString(1, jobType);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * 领取一个可执行的任务并标记为running
+     * 可执行指排队中且到达available_at，或运行中但可见性超时已过（领取它的工作线程已崩溃）；
+     * 使用 FOR UPDATE SKIP LOCKED，多个节点的工作线程并发领取时互不等待，也不会领到同一个任务。
+     * 领取后available_at设为可见性超时的截止时间，超时未完成的任务会再次被领取，
+     * 尝试次数用尽的超时任务直接标记为失败
+     * @param jobTypes 可处理的任务类型
+     * @param owner 工作线程标识
+     * @param visibilitySeconds 可见性超时（秒）
+     * @return 领取到的任务Map，没有可执行的任务时返回null
+     */
+    public Map<String, Object> claimNextJob(Collection<String> jobTypes, String owner, int visibilitySeconds) throws SQLException {
+        if (jobTypes.isEmpty()) {
+            return null;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(jobTypes.size(), "?"));
+        String selectSql = "SELECT job_id, status, attempts, max_attempts FROM jobs " +
+                           "WHERE job_type IN (" + placeholders + ") AND status IN ('queued', 'running') AND available_at <= NOW() " +
+                           "ORDER BY priority DESC, available_at, job_id LIMIT 1 FOR UPDATE SKIP LOCKED";
+        // 只在排队期间去重的任务被领取时清除active_key
+        String claimSql = "UPDATE jobs SET status = 'running', attempts = attempts + 1, locked_by = ?, " +
+                          "active_key = IF(dedupe_while_running, active_key, NULL), " +
+                          "available_at = NOW() + INTERVAL ? SECOND, started_at = NOW() WHERE job_id = ?";
+        String exhaustedSql = "UPDATE jobs SET status = 'failed', locked_by = NULL, active_key = NULL, finished_at = NOW(), " +
+                              "error_message = CONCAT('Visibility timeout expired after ', attempts, ' attempts') WHERE job_id = ?";
+
+        Connection conn = getConnection();
+        boolean autoCommit = conn.getAutoCommit();
+        try {
+            conn.setAutoCommit(false);
+            while (true) {
+                long jobId;
+                boolean exhausted;
+                try (PreparedStatement stmt = conn.prepareStatement(selectSql)) {
+                    int index = 1;
+                    for (String jobType : jobTypes) {
+                        stmt.setString(index++, jobType);
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (!rs.next()) {
+                            conn.commit();
+                            return null;
+                        }
+                        jobId = rs.getLong("job_id");
+                        exhausted = "running".equals(rs.getString("status"))
+                                && rs.getInt("attempts") >= rs.getInt("max_attempts");
+                    }
+                }
+
+                if (exhausted) {
+                    try (PreparedStatement stmt = conn.prepareStatement(exhaustedSql)) {
+                        stmt.setLong(1, jobId);
+                        stmt.executeUpdate();
+                    }
+                    conn.commit();
+                    continue;
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement(claimSql)) {
+                    stmt.setString(1, owner);
+                    stmt.setInt(2, visibilitySeconds);
+                    stmt.setLong(3, jobId);
+                    stmt.executeUpdate();
+                }
+                conn.commit();
+                return getJob(jobId);
+            }
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * 将任务标记为成功
+     * @return 任务是否仍由owner持有（可见性超时后被其他工作线程领取时返回false）
+     */
+    public boolean completeJob(long jobId, String owner, String result) throws SQLException {
+        String sql = "UPDATE jobs SET status = 'succeeded', result = ?, error_message = NULL, locked_by = NULL, " +
+                     "active_key = NULL, finished_at = NOW() WHERE job_id = ? AND locked_by = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setString(1, result);
+            stmt.setLong(2, jobId);
+            stmt.setString(3, owner);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * 任务失败后重新排队，delaySeconds秒后才能再次被领取
+     * @return 任务是否仍由owner持有
+     */
+    public boolean retryJob(long jobId, String owner, String errorMessage, int delaySeconds) throws SQLException {
+        String sql = "UPDATE jobs SET status = 'queued', error_message = ?, locked_by = NULL, " +
+                     "available_at = NOW() + INTERVAL ? SECOND WHERE job_id = ? AND locked_by = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setString(1, errorMessage);
+            stmt.setInt(2, delaySeconds);
+            stmt.setLong(3, jobId);
+            stmt.setString(4, owner);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * 将任务标记为失败，不再重试
+     * @return 任务是否仍由owner持有
+     */
+    public boolean failJob(long jobId, String owner, String errorMessage) throws SQLException {
+        String sql = "UPDATE jobs SET status = 'failed', error_message = ?, locked_by = NULL, active_key = NULL, " +
+                     "finished_at = NOW() WHERE job_id = ? AND locked_by = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setString(1, errorMessage);
+            stmt.setLong(2, jobId);
+            stmt.setString(3, owner);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * 获取推荐记录
+     * @return 推荐Map（id、user_id、paper_id、blog、created_at），不存在时返回null
+     */
+    public Map<String, Object> getRecommendationById(int recommendationId) throws SQLException {
+        String sql = "SELECT r.id, r.user_id, r.paper_id, COALESCE(pb.blog, r.blog) AS blog, r.created_at " +
+                     "FROM recommendations r LEFT JOIN paper_blogs pb ON r.blog_id = pb.blog_id WHERE r.id = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, recommendationId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    Map<String, Object> rec = new HashMap<>();
+                    rec.put("id", rs.getInt("id"));
+                    rec.put("user_id", rs.getInt("user_id"));
+                    rec.put("paper_id", rs.getInt("paper_id"));
+                    rec.put("blog", rs.getString("blog"));
+                    rec.put("created_at", rs.getTimestamp("created_at"));
+                    return rec;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Map<String, Object> mapJob(ResultSet rs) throws SQLException {
+        Map<String, Object> job = new HashMap<>();
+        job.put("job_id", rs.getLong("job_id"));
+        job.put("job_type", rs.getString("job_type"));
+        job.put("payload", rs.getString("payload"));
+        job.put("priority", rs.getInt("priority"));
+        job.put("dedupe_key", rs.getString("dedupe_key"));
+        job.put("status", rs.getString("status"));
+        job.put("attempts", rs.getInt("attempts"));
+        job.put("max_attempts", rs.getInt("max_attempts"));
+        job.put("result", rs.getString("result"));
+        job.put("error_message", rs.getString("error_message"));
+        job.put("available_at", rs.getTimestamp("available_at"));
+        job.put("created_at", rs.getTimestamp("created_at"));
+        job.put("started_at", rs.getTimestamp("started_at"));
+        job.put("finished_at", rs.getTimestamp("finished_at"));
+        return job;
+    }
+
+    // ========== Paper Blogs 表操作 ==========
+
+    /**
+     * 按内容地址查找已生成的论文博客
+     * @param paperId 论文ID
+     * @param contentHash 提示词版本与论文内容的SHA-256
+     * @return 博客Map（blog_id、paper_id、prompt_version、blog），不存在时返回null
+     */
+    public Map<String, Object> getPaperBlog(int paperId, String contentHash) throws SQLException {
+        String sql = "SELECT blog_id, paper_id, prompt_version, blog FROM paper_blogs WHERE paper_id = ? AND content_hash = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, paperId);
+            stmt.setString(2, contentHash);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    Map<String, Object> blog = new HashMap<>();
+                    blog.put("blog_id", rs.getInt("blog_id"));
+                    blog.put("paper_id", rs.getInt("paper_id"));
+                    blog.put("prompt_version", rs.getString("prompt_version"));
+                    blog.put("blog", rs.getString("blog"));
+                    return blog;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 保存论文博客；相同内容地址的博客已存在时保留先写入的版本
+     * @return 博客ID（已存在时为原博客ID）
+     */
+    public int insertPaperBlog(int paperId, String promptVersion, String contentHash, String blog) throws SQLException {
+        String sql = "INSERT INTO paper_blogs (paper_id, prompt_version, content_hash, blog) VALUES (?, ?, ?, ?) " +
+                     "ON DUPLICATE KEY UPDATE blog_id = LAST_INSERT_ID(blog_id)";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, paperId);
+            stmt.setString(2, promptVersion);
+            stmt.setString(3, contentHash);
+            stmt.setString(4, blog);
+            stmt.executeUpdate();
+
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        }
+        return -1;
+    }
+
+    // ========== User Candidates 表操作 ==========
+
+    /**
+     * 获取用户的评分水位
+     * @param userId 用户ID
+     * @return 水位Map（last_index_seq、interest_embedding_id，后者可能为null），不存在时返回null
+     * @throws SQLException 如果数据库查询失败
+     */
+    public Map<String, Object> getScoringState(int userId) throws SQLException {
+        String sql = "SELECT last_index_seq, interest_embedding_id FROM user_scoring_state WHERE user_id = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    Map<String, Object> state = new HashMap<>();
+                    state.put("last_index_seq", rs.getInt("last_index_seq"));
+                    state.put("interest_embedding_id", (Integer) rs.getObject("interest_embedding_id"));
+                    return state;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取用户的候选论文，按得分降序
+     * @param userId 用户ID
+     * @return 每项包含paper_id和score
+     * @throws SQLException 如果数据库查询失败
+     */
+    public List<Map<String, Object>> getUserCandidates(int userId) throws SQLException {
+        List<Map<String, Object>> candidates = new ArrayList<>();
+        String sql = "SELECT paper_id, score FROM user_candidates WHERE user_id = ? ORDER BY score DESC";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> candidate = new HashMap<>();
+                    candidate.put("paper_id", rs.getInt("paper_id"));
+                    candidate.put("score", rs.getDouble("score"));
+                    candidates.add(candidate);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * 批量获取多个用户的候选论文
+     * @param userIds 用户ID列表
+     * @return 用户ID到候选论文列表（每项包含paper_id和score）的映射，没有候选的用户不在结果中
+     * @throws SQLException 如果数据库查询失败
+     */
+    public Map<Integer, List<Map<String, Object>>> getUserCandidatesForUsers(Collection<Integer> userIds) throws SQLException {
+        Map<Integer, List<Map<String, Object>>> candidates = new HashMap<>();
+        List<Integer> ids = new ArrayList<>(userIds);
+        int chunkSize = 500;
+
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            String sql = "SELECT user_id, paper_id, score FROM user_candidates WHERE user_id IN (" + placeholders + ")";
+            try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setInt(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Map<String, Object> candidate = new HashMap<>();
+                        candidate.put("paper_id", rs.getInt("paper_id"));
+                        candidate.put("score", rs.getDouble("score"));
+                        candidates.computeIfAbsent(rs.getInt("user_id"), k -> new ArrayList<>()).add(candidate);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * 获取用户得分最高的候选论文及论文信息，按得分降序
+     * @param userId 用户ID
+     * @param limit 最多返回的数量
+     * @return 每项包含paper_id、score、title、author、pdf_url和created_at（进入候选集的时间）
+     * @throws SQLException 如果数据库查询失败
+     */
+    public List<Map<String, Object>> getTopUserCandidates(int userId, int limit) throws SQLException {
+        List<Map<String, Object>> candidates = new ArrayList<>();
+        String sql = "SELECT c.paper_id, c.score, c.created_at, p.title, p.author, p.pdf_url " +
+                     "FROM user_candidates c JOIN papers p ON p.paper_id = c.paper_id " +
+                     "WHERE c.user_id = ? ORDER BY c.score DESC LIMIT ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> candidate = new HashMap<>();
+                    candidate.put("paper_id", rs.getInt("paper_id"));
+                    candidate.put("score", rs.getDouble("score"));
+                    candidate.put("title", rs.getString("title"));
+                    candidate.put("author", rs.getString("author"));
+                    candidate.put("pdf_url", rs.getString("pdf_url"));
+                    candidate.put("created_at", rs.getTimestamp("created_at"));
+                    candidates.add(candidate);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * 在一个事务中更新用户的候选论文并推进评分水位
+     * 只写入给定的候选并删除指定的论文，评分期间由反向匹配推送的其他候选保持不变
+     * @param userId 用户ID
+     * @param candidates 候选论文，每项包含paper_id和score，已存在时更新得分
+     * @param removedPaperIds 需要从候选集中删除的论文ID
+     * @param lastIndexSeq 已评分的最大paper_embeddings.index_seq
+     * @param interestEmbeddingId 评分使用的interest_embeddings.id
+     * @throws SQLException 如果数据库操作失败（事务会回滚）
+     */
+    public void saveUserCandidates(int userId, List<Map<String, Object>> candidates, Collection<Integer> removedPaperIds,
+                                   int lastIndexSeq, int interestEmbeddingId) throws SQLException {
+        Connection conn = getConnection();
+        boolean autoCommit = conn.getAutoCommit();
+        try {
+            conn.setAutoCommit(false);
+
+            if (!removedPaperIds.isEmpty()) {
+                String placeholders = String.join(", ", Collections.nCopies(removedPaperIds.size(), "?"));
+                String sql = "DELETE FROM user_candidates WHERE user_id = ? AND paper_id IN (" + placeholders + ")";
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    int index = 1;
+                    stmt.setInt(index++, userId);
+                    for (int paperId : removedPaperIds) {
+                        stmt.setInt(index++, paperId);
+                    }
+                    stmt.executeUpdate();
+                }
+            }
+
+            if (!candidates.isEmpty()) {
+                StringBuilder sql = new StringBuilder("INSERT INTO user_candidates (user_id, paper_id, score) VALUES ");
+                for (int i = 0; i < candidates.size(); i++) {
+                    sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+                }
+                sql.append(" ON DUPLICATE KEY UPDATE score = VALUES(score)");
+                try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                    int index = 1;
+                    for (Map<String, Object> candidate : candidates) {
+                        stmt.setInt(index++, userId);
+                        stmt.setInt(index++, (Integer) candidate.get("paper_id"));
+                        stmt.setDouble(index++, (Double) candidate.get("score"));
+                    }
+                    stmt.executeUpdate();
+                }
+            }
+
+            String stateSql = "INSERT INTO user_scoring_state (user_id, last_index_seq, interest_embedding_id) VALUES (?, ?, ?) " +
+                              "ON DUPLICATE KEY UPDATE last_index_seq = VALUES(last_index_seq), " +
+                              "interest_embedding_id = VALUES(interest_embedding_id)";
+            try (PreparedStatement stmt = conn.prepareStatement(stateSql)) {
+                stmt.setInt(1, userId);
+                stmt.setInt(2, lastIndexSeq);
+                stmt.setInt(3, interestEmbeddingId);
+                stmt.executeUpdate();
+            }
+
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * 把一篇新论文加入匹配用户的候选集，已推荐过该论文的用户会被跳过
+     * @param paperId 论文ID
+     * @param scoresByUser 用户ID到相似度的映射
+     * @return 新加入或更新的候选数
+     * @throws SQLException 如果数据库操作失败
+     */
+    public int pushUserCandidates(int paperId, Map<Integer, Double> scoresByUser) throws SQLException {
+        String sql = "INSERT INTO user_candidates (user_id, paper_id, score) " +
+                     "SELECT ?, ?, ? FROM DUAL " +
+                     "WHERE NOT EXISTS (SELECT 1 FROM recommendations WHERE user_id = ? AND paper_id = ?) " +
+                     "ON DUPLICATE KEY UPDATE score = ?";
+        int pushed = 0;
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            for (Map.Entry<Integer, Double> entry : scoresByUser.entrySet()) {
+                stmt.setInt(1, entry.getKey());
+                stmt.setInt(2, paperId);
+                stmt.setDouble(3, entry.getValue());
+                stmt.setInt(4, entry.getKey());
+                stmt.setInt(5, paperId);
+                stmt.setDouble(6, entry.getValue());
+                stmt.addBatch();
+            }
+            for (int count : stmt.executeBatch()) {
+                if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+                    pushed++;
+                }
+            }
+        }
+        return pushed;
+    }
+
+    /**
+     * 删除用户的一篇候选论文（已生成推荐后调用）
+     */
+    public boolean deleteUserCandidate(int userId, int paperId) throws SQLException {
+        String sql = "DELETE FROM user_candidates WHERE user_id = ? AND paper_id = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            stmt.setInt(2, paperId);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * 启动一次分片推荐运行：补齐分片行，所有分片都已完成时把运行编号加1
+     * 仍有分片未完成时不启动新运行，返回正在进行的运行
+     * @param shardCount 分片数
+     * @return run_epoch（运行编号）和 started（是否启动了新运行）
+     */
+    public Map<String, Object> startRecommendationRun(int shardCount) throws SQLException {
+        Connection conn = getConnection();
+        boolean autoCommit = conn.getAutoCommit();
+        try {
+            conn.setAutoCommit(false);
+
+            StringBuilder insertSql = new StringBuilder("INSERT IGNORE INTO recommendation_shards (shard_id) VALUES ");
+            for (int i = 0; i < shardCount; i++) {
+                insertSql.append(i == 0 ? "(?)" : ", (?)");
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(insertSql.toString())) {
+                for (int i = 0; i < shardCount; i++) {
+                    stmt.setInt(i + 1, i);
+                }
+                stmt.executeUpdate();
+            }
+
+            int epoch = 0;
+            int pending = 0;
+            String lockSql = "SELECT run_epoch, completed_epoch FROM recommendation_shards WHERE shard_id < ? FOR UPDATE";
+            try (PreparedStatement stmt = conn.prepareStatement(lockSql)) {
+                stmt.setInt(1, shardCount);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        epoch = Math.max(epoch, rs.getInt("run_epoch"));
+                        if (rs.getInt("completed_epoch") < rs.getInt("run_epoch")) {
+                            pending++;
+                        }
+                    }
+                }
+            }
+
+            boolean started = pending == 0;
+            if (started) {
+                epoch++;
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "UPDATE recommendation_shards SET run_epoch = ? WHERE shard_id < ?")) {
+                    stmt.setInt(1, epoch);
+                    stmt.setInt(2, shardCount);
+                    stmt.executeUpdate();
+                }
+            }
+
+            conn.commit();
+            Map<String, Object> run = new HashMap<>();
+            run.put("run_epoch", epoch);
+            run.put("started", started);
+            return run;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * 获取当前运行中待处理且租约空闲或已过期的分片
+     */
+    public List<Integer> getClaimableShards(int shardCount) throws SQLException {
+        List<Integer> shardIds = new ArrayList<>();
+        String sql = "SELECT shard_id FROM recommendation_shards WHERE shard_id < ? AND completed_epoch < run_epoch " +
+                     "AND (lease_owner IS NULL OR lease_expires_at < NOW()) ORDER BY shard_id";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, shardCount);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    shardIds.add(rs.getInt(1));
+                }
+            }
+        }
+        return shardIds;
+    }
+
+    /**
+     * 统计当前运行中尚未完成的分片数（包括被其他工作线程持有的）
+     */
+    public int countPendingShards(int shardCount) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM recommendation_shards WHERE shard_id < ? AND completed_epoch < run_epoch";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, shardCount);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * 领取分片租约，只有分片待处理且租约空闲或已过期时才能成功
+     * @param shardId 分片ID
+     * @param owner 工作线程标识
+     * @param leaseSeconds 租约时长（秒）
+     * @return 领取到的运行编号，未领取到时返回null
+     */
+    public Integer claimShard(int shardId, String owner, int leaseSeconds) throws SQLException {
+        String claimSql = "UPDATE recommendation_shards SET lease_owner = ?, " +
+                          "lease_expires_at = NOW() + INTERVAL ? SECOND, heartbeat_at = NOW() " +
+                          "WHERE shard_id = ? AND completed_epoch < run_epoch " +
+                          "AND (lease_owner IS NULL OR lease_expires_at < NOW())";
+        try (PreparedStatement stmt = getConnection().prepareStatement(claimSql)) {
+            stmt.setString(1, owner);
+            stmt.setInt(2, leaseSeconds);
+            stmt.setInt(3, shardId);
+            if (stmt.executeUpdate() != 1) {
+                return null;
+            }
+        }
+        String epochSql = "SELECT run_epoch FROM recommendation_shards WHERE shard_id = ? AND lease_owner = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(epochSql)) {
+            stmt.setInt(1, shardId);
+            stmt.setString(2, owner);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    /**
+     * 续约分片租约（心跳）
+     * @return 租约是否仍由owner持有且分片未完成（运行被取消后返回false）
+     */
+    public boolean renewShardLease(int shardId, String owner, int leaseSeconds) throws SQLException {
+        String sql = "UPDATE recommendation_shards SET lease_expires_at = NOW() + INTERVAL ? SECOND, heartbeat_at = NOW() " +
+                     "WHERE shard_id = ? AND lease_owner = ? AND completed_epoch < run_epoch";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, leaseSeconds);
+            stmt.setInt(2, shardId);
+            stmt.setString(3, owner);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * 标记分片在指定运行中已完成并释放租约
+     * @return 租约是否仍由owner持有（租约已被接管时返回false）
+     */
+    public boolean completeShard(int shardId, String owner, int runEpoch) throws SQLException {
+        String sql = "UPDATE recommendation_shards SET completed_epoch = GREATEST(completed_epoch, ?), " +
+                     "lease_owner = NULL, lease_expires_at = NULL WHERE shard_id = ? AND lease_owner = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, runEpoch);
+            stmt.setInt(2, shardId);
+            stmt.setString(3, owner);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * 取消当前运行：所有未完成的分片直接标记为完成，持有租约的工作线程在下一次心跳后停止
+     * @return 被取消的分片数
+     */
+    public int cancelRecommendationRun(int shardCount) throws SQLException {
+        String sql = "UPDATE recommendation_shards SET completed_epoch = run_epoch " +
+                     "WHERE shard_id < ? AND completed_epoch < run_epoch";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, shardCount);
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 释放分片租约但不标记完成，分片可立即被其他工作线程领取
+     */
+    public void releaseShard(int shardId, String owner) throws SQLException {
+        String sql = "UPDATE recommendation_shards SET lease_owner = NULL, lease_expires_at = NULL " +
+                     "WHERE shard_id = ? AND lease_owner = ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, shardId);
+            stmt.setString(2, owner);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 获取各分片的运行状态
+     */
+    public List<Map<String, Object>> getRecommendationShards(int shardCount) throws SQLException {
+        List<Map<String, Object>> shards = new ArrayList<>();
+        String sql = "SELECT shard_id, run_epoch, completed_epoch, lease_owner, lease_expires_at, heartbeat_at " +
+                     "FROM recommendation_shards WHERE shard_id < ? ORDER BY shard_id";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, shardCount);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> shard = new HashMap<>();
+                    shard.put("shard_id", rs.getInt("shard_id"));
+                    shard.put("run_epoch", rs.getInt("run_epoch"));
+                    shard.put("completed_epoch", rs.getInt("completed_epoch"));
+                    shard.put("lease_owner", rs.getString("lease_owner"));
+                    shard.put("lease_expires_at", rs.getTimestamp("lease_expires_at"));
+                    shard.put("heartbeat_at", rs.getTimestamp("heartbeat_at"));
+                    shards.add(shard);
+                }
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * 按user_id键集分页读取属于某个分片的用户（user_id % shardCount = shardId），
+     * 字段与getScoringUsersAfter相同（含最新兴趣向量和评分水位）
+     * @param afterUserId 上一页最后一个用户ID，第一页传0
+     * @param limit 每页数量
+     */
+    public List<Map<String, Object>> getUsersInShard(int shardId, int shardCount, int afterUserId, int limit) throws SQLException {
+        String sql = SCORING_USER_SELECT + "WHERE MOD(u.user_id, ?) = ? AND u.user_id > ? ORDER BY u.user_id LIMIT ?";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setInt(1, shardCount);
+            stmt.setInt(2, shardId);
+            stmt.setInt(3, afterUserId);
+            stmt.setInt(4, limit);
+            return readScoringUsers(stmt);
+        }
+    }
+
+    // ========== 命名锁（MySQL GET_LOCK） ==========
+
+    /**
+     * 获取命名锁，锁名加上当前数据库名前缀；锁属于当前连接，连接关闭时自动释放
+     * @param name 锁名
+     * @param timeoutSeconds 等待秒数，0表示不等待
+     * @return 是否获得锁
+     */
+    public boolean acquireNamedLock(String name, int timeoutSeconds) throws SQLException {
+        String sql = "SELECT GET_LOCK(CONCAT(DATABASE(), ':', ?), ?)";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setString(1, name);
+            stmt.setInt(2, timeoutSeconds);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    /**
+     * 释放当前连接持有的命名锁
+     */
+    public void releaseNamedLock(String name) throws SQLException {
+        String sql = "SELECT RELEASE_LOCK(CONCAT(DATABASE(), ':', ?))";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setString(1, name);
+            stmt.executeQuery().close();
+        }
+    }
+
+    /**
+     * 命名锁当前是否由本连接持有（连接断开重连后返回false）
+     */
+    public boolean holdsNamedLock(String name) throws SQLException {
+        String sql = "SELECT IS_USED_LOCK(CONCAT(DATABASE(), ':', ?)) = CONNECTION_ID()";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    /**
+     * 命名锁当前是否空闲
+     */
+    public boolean isNamedLockFree(String name) throws SQLException {
+        String sql = "SELECT IS_FREE_LOCK(CONCAT(DATABASE(), ':', ?))";
+        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
 }
@@ -0,0 +1,361 @@
+package org.example.orchestrator_layer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.example.data_access_layer.Dbmanager;
+import org.example.service.ArxivEntry;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * arXiv元数据快照离线导入器
+ * 流式读取arXiv元数据快照（每行一个JSON对象，可为gzip压缩），按分类和提交日期过滤后，
+ * 分批交给多个写入线程批量入库，无需请求arXiv API
+ * 读取线程与写入线程之间是有界队列，堆内存占用与快照大小无关
+ * 导入的论文不会建立向量索引，需要时通过 /api/index 接口批量建立
+ */
+public class ArxivSnapshotImporter {
+    private static final String CONFIG_FILE = "orchestrator.properties";
+    private static final DateTimeFormatter UPDATE_DATE_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    private final String category;
+    private final LocalDate fromDate;
+    private final LocalDate toDate;
+    private int threads;
+    private int batchSize;
+
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private long scanned;
+    private long matched;
+    private volatile Exception writerFailure;
+
+    /**
+     * @param category arXiv分类，支持通配（如：cs.*），多个分类用逗号分隔，为null时不过滤
+     * @param fromDate 首个版本提交日期下限（UTC，含），为null时不限
+     * @param toDate 首个版本提交日期上限（UTC，含），为null时不限
+     */
+    public ArxivSnapshotImporter(String category, LocalDate fromDate, LocalDate toDate) {
+        this.category = category;
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+        loadConfiguration();
+    }
+
+    /**
+     * 加载导入配置，文件不存在时使用默认值
+     */
+    private void loadConfiguration() {
+        Properties props = new Properties();
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (input != null) {
+                props.load(input);
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not load " + CONFIG_FILE + ": " + e.getMessage());
+        }
+
+        this.threads = Integer.parseInt(props.getProperty("import.threads", "4"));
+        this.batchSize = Integer.parseInt(props.getProperty("import.batch_size", "1000"));
+    }
+
+    /**
+     * 导入快照文件
+     * @param snapshotPath 快照文件路径，以.gz结尾时按gzip解压
+     * @return 写入的论文数量
+     * @throws IOException 如果读取或解析快照失败
+     * @throws InterruptedException 如果等待写入线程时被中断
+     */
+    public long importSnapshot(String snapshotPath) throws IOException, InterruptedException {
+        // 每个写入线程最多积压两个批次
+        BlockingQueue<List<ArxivEntry>> batchQueue = new ArrayBlockingQueue<>(threads * 2);
+        ExecutorService writers = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            writers.execute(() -> runWriter(batchQueue));
+        }
+
+        long startedAt = System.currentTimeMillis();
+        try (InputStream input = openSnapshot(snapshotPath)) {
+            JsonParser parser = new JsonFactory().createParser(input);
+            List<ArxivEntry> batch = new ArrayList<>(batchSize);
+
+            // JSON Lines是一串顶层对象，逐个读取
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                if (++scanned % 100000 == 0) {
+                    printProgress(startedAt);
+                }
+                ArxivEntry entry = readRecord(parser);
+                if (entry == null || !matches(entry)) {
+                    continue;
+                }
+                matched++;
+                batch.add(entry);
+                if (batch.size() >= batchSize) {
+                    submitBatch(batchQueue, batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                submitBatch(batchQueue, batch);
+            }
+        } finally {
+            // 每个写入线程收到一个空批次后退出
+            for (int i = 0; i < threads; i++) {
+                batchQueue.put(new ArrayList<>());
+            }
+            writers.shutdown();
+            writers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+
+        printProgress(startedAt);
+        if (writerFailure != null) {
+            throw new IOException("Snapshot import failed: " + writerFailure.getMessage(), writerFailure);
+        }
+        return imported.get();
+    }
+
+    /**
+     * 打开快照文件，.gz结尾时按gzip解压
+     */
+    private InputStream openSnapshot(String snapshotPath) throws IOException {
+        InputStream input = new BufferedInputStream(new FileInputStream(snapshotPath), 1 << 16);
+        if (snapshotPath.endsWith(".gz")) {
+            return new GZIPInputStream(input, 1 << 16);
+        }
+        return input;
+    }
+
+    /**
+     * 读取一条快照记录，只保留入库需要的字段，其余字段直接跳过
+     * @return 论文条目；缺少id时返回null
+     */
+    private ArxivEntry readRecord(JsonParser parser) throws IOException {
+        ArxivEntry entry = new ArxivEntry();
+        String id = null;
+        String categories = null;
+        String updateDate = null;
+        int version = 0;
+        Instant firstCreated = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = parser.getValueAsString();
+                    break;
+                case "title":
+                    entry.setTitle(normalize(parser.getValueAsString()));
+                    break;
+                case "authors": {
+                    String authors = normalize(parser.getValueAsString());
+                    if (authors != null && !authors.isEmpty()) {
+                        entry.getAuthors().add(authors);
+                    }
+                    break;
+                }
+                case "abstract":
+                    entry.setSummary(normalize(parser.getValueAsString()));
+                    break;
+                case "categories":
+                    categories = parser.getValueAsString();
+                    break;
+                case "update_date":
+                    updateDate = parser.getValueAsString();
+                    break;
+                case "versions":
+                    // [{"version": "v1", "created": "Mon, 2 Apr 2007 19:18:42 GMT"}, ...]
+                    if (token == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            version++;
+                            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                String versionField = parser.getCurrentName();
+                                parser.nextToken();
+                                if (version == 1 && "created".equals(versionField)) {
+                                    firstCreated = parseRfc1123(parser.getValueAsString());
+                                } else {
+                                    parser.skipChildren();
+                                }
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+
+        if (id == null || id.isEmpty()) {
+            return null;
+        }
+        entry.setArxivId(id.trim());
+        entry.setVersion(version);
+        if (categories != null) {
+            for (String term : categories.trim().split("\\s+")) {
+                entry.getCategories().add(term);
+            }
+        }
+        if (firstCreated == null && updateDate != null) {
+            try {
+                firstCreated = LocalDate.parse(updateDate, UPDATE_DATE_FORMAT).atStartOfDay(ZoneOffset.UTC).toInstant();
+            } catch (DateTimeParseException e) {
+                // 保持为null
+            }
+        }
+        entry.setPublished(firstCreated);
+        return entry;
+    }
+
+    /**
+     * 按分类和首个版本的提交日期过滤
+     */
+    private boolean matches(ArxivEntry entry) {
+        if (category != null && !matchesCategory(entry.getCategories())) {
+            return false;
+        }
+        if (fromDate != null || toDate != null) {
+            if (entry.getPublished() == null) {
+                return false;
+            }
+            LocalDate submitted = LocalDate.ofInstant(entry.getPublished(), ZoneOffset.UTC);
+            if (fromDate != null && submitted.isBefore(fromDate)) {
+                return false;
+            }
+            if (toDate != null && submitted.isAfter(toDate)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 论文的任一分类（含交叉分类）匹配即可，与arXiv API的cat:查询一致
+     */
+    private boolean matchesCategory(List<String> entryCategories) {
+        for (String pattern : category.split(",")) {
+            pattern = pattern.trim();
+            for (String term : entryCategories) {
+                if (pattern.endsWith("*")
+                        ? term.startsWith(pattern.substring(0, pattern.length() - 1))
+                        : term.equals(pattern)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 放入写入队列，队列满时阻塞（背压）；写入线程已失败时停止读取
+     */
+    private void submitBatch(BlockingQueue<List<ArxivEntry>> queue, List<ArxivEntry> batch)
+            throws IOException, InterruptedException {
+        if (writerFailure != null) {
+            throw new IOException("Snapshot import failed: " + writerFailure.getMessage(), writerFailure);
+        }
+        queue.put(batch);
+    }
+
+    /**
+     * 写入线程：使用自己的数据库连接批量写入，直到收到空批次
+     */
+    private void runWriter(BlockingQueue<List<ArxivEntry>> queue) {
+        Dbmanager dbManager = new Dbmanager();
+        try {
+            while (true) {
+                List<ArxivEntry> batch = queue.take();
+                if (batch.isEmpty()) {
+                    return;
+                }
+                try {
+                    List<Map<String, Object>> papers = new ArrayList<>(batch.size());
+                    for (ArxivEntry entry : batch) {
+                        papers.add(entry.toPaperRow());
+                    }
+                    dbManager.upsertPapers(papers);
+                    imported.addAndGet(batch.size());
+                } catch (Exception e) {
+                    System.err.println("❌ Failed to write batch of " + batch.size() + " papers: " + e.getMessage());
+                    failed.addAndGet(batch.size());
+                    if (writerFailure == null) {
+                        writerFailure = e;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+
+    private void printProgress(long startedAt) {
+        double seconds = Math.max(1, System.currentTimeMillis() - startedAt) / 1000.0;
+        System.out.println(String.format("📊 Scanned %d, matched %d, imported %d, failed %d (%.0f records/s)",
+                scanned, matched, imported.get(), failed.get(), scanned / seconds));
+    }
+
+    private Instant parseRfc1123(String text) {
+        try {
+            return ZonedDateTime.parse(text.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private String normalize(String text) {
+        return text == null ? null : text.replaceAll("\\s+", " ").trim();
+    }
+
+    /**
+     * 主方法 - 导入arXiv元数据快照
+     * 用法：ArxivSnapshotImporter <snapshot.json[.gz]> [category] [fromDate] [toDate]
+     * 日期格式为yyyy-MM-dd，传 - 表示不限
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: ArxivSnapshotImporter <snapshot.json[.gz]> [category, default cs.*] [fromDate|-] [toDate|-]");
+            System.exit(1);
+        }
+
+        String category = args.length > 1 ? args[1] : "cs.*";
+        LocalDate fromDate = args.length > 2 && !"-".equals(args[2]) ? LocalDate.parse(args[2]) : null;
+        LocalDate toDate = args.length > 3 && !"-".equals(args[3]) ? LocalDate.parse(args[3]) : null;
+
+        System.out.println("🚀 Importing arXiv snapshot " + args[0]);
+        System.out.println("📂 Category: " + category + ", submitted from " + (fromDate != null ? fromDate : "-")
+                + " to " + (toDate != null ? toDate : "-"));
+
+        try {
+            ArxivSnapshotImporter importer = new ArxivSnapshotImporter(category, fromDate, toDate);
+            long imported = importer.importSnapshot(args[0]);
+            System.out.println("✨ Snapshot import completed: " + imported + " papers written");
+        } catch (Exception e) {
+            System.err.println("❌ Snapshot import failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
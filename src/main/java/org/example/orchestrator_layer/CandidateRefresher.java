@@ -0,0 +1,56 @@
+package org.example.orchestrator_layer;
+
+import org.example.data_access_layer.Dbmanager;
+import org.example.service.InterestEmbeddingService;
+import org.example.service.JobQueueService;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 候选集刷新任务
+ * 用户兴趣向量更新后由任务队列执行，按新的兴趣向量重新评分并替换user_candidates中的候选论文，
+ * 使 GET /api/users/{id}/candidates 不必等到下一次推荐运行就反映新的兴趣
+ */
+public class CandidateRefresher implements JobQueueService.JobHandler {
+    // 由InterestEmbeddingService在兴趣向量更新后提交
+    public static final String JOB_TYPE = InterestEmbeddingService.CANDIDATE_REFRESH_JOB_TYPE;
+
+    private static CandidateRefresher instance;
+
+    private RecommendationOrchestrator orchestrator;
+
+    /**
+     * 获取全局任务处理器
+     */
+    public static synchronized CandidateRefresher getInstance() {
+        if (instance == null) {
+            instance = new CandidateRefresher();
+        }
+        return instance;
+    }
+
+    private CandidateRefresher() {
+    }
+
+    /**
+     * 重新评分用户的候选集；编排器的数据库连接不能并发使用，多个工作线程依次执行
+     */
+    @Override
+    public synchronized Map<String, Object> handle(Map<String, Object> payload, Dbmanager workerDb) throws Exception {
+        int userId = (Integer) payload.get("user_id");
+        if (orchestrator == null) {
+            orchestrator = new RecommendationOrchestrator();
+        }
+
+        int candidates = orchestrator.refreshCandidates(userId);
+        Map<String, Object> result = new HashMap<>();
+        if (candidates < 0) {
+            result.put("skipped", "User not found or has no interest");
+            return result;
+        }
+        System.out.println("🎯 Refreshed " + candidates + " candidates for user " + userId);
+        result.put("candidates", candidates);
+        return result;
+    }
+}
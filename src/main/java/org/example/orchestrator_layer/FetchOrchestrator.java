@@ -1,45 +1,58 @@
 package org.example.orchestrator_layer;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import okhttp3.*;
+import okhttp3.OkHttpClient;
 import org.example.data_access_layer.Dbmanager;
+import org.example.service.ArxivHarvester;
+import org.example.service.HttpClientRegistry;
 import org.example.service.IndexService;
+import org.example.service.PaperFetchService;
+import org.example.service.PaperIngestService;
 
 import java.io.IOException;
-import java.time.LocalDate;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Fetch Orchestrator
- * 负责从arXiv获取论文信息并调用后端API进行处理
+ * 负责从arXiv获取论文信息，在进程内完成入库和向量索引
  */
 public class FetchOrchestrator {
-    private static final String ARXIV_API_BASE = "http://export.arxiv.org/api/query";
-    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
-    private static final String PAPERS_API_URL = "http://localhost:8080/api/papers/fetch";
+    private static final String CONFIG_FILE = "orchestrator.properties";
+    // 抓取的arXiv分类，同时作为harvest_state的主键
+    private static final String CATEGORY = "cs.*";
+    private static final DateTimeFormatter ARXIV_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmm");
 
     private final OkHttpClient httpClient;
-    private final ObjectMapper objectMapper;
     private final Dbmanager dbManager;
+    private final PaperIngestService paperIngestService;
     private final IndexService indexService;
 
+    private final Properties config = new Properties();
+    private int pageSize;
+    private long pageDelayMillis;
+    private int lagDays;
+    private int initialWindowDays;
+
     public FetchOrchestrator() {
-        // 配置HTTP客户端
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(60, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
-                .build();
-        this.objectMapper = new ObjectMapper();
+        // 使用共享的arXiv客户端
+        this.httpClient = HttpClientRegistry.client(HttpClientRegistry.Upstream.ARXIV);
         this.dbManager = new Dbmanager();
+        this.paperIngestService = new PaperIngestService(new PaperFetchService(), dbManager);
+        loadConfiguration();
 
         // 初始化向量索引服务
         try {
             this.indexService = new IndexService();
             System.out.println("✅ IndexService initialized successfully");
+            if (Boolean.parseBoolean(config.getProperty("reverse.enabled", "true"))) {
+                // 新论文建立索引后立即推送给兴趣匹配的用户
+                indexService.setIndexListener(new ReverseMatcher(config));
+            }
         } catch (Exception e) {
             System.err.println("❌ Failed to initialize IndexService: " + e.getMessage());
             throw new RuntimeException("Failed to initialize IndexService", e);
@@ -47,38 +60,30 @@ public class FetchOrchestrator {
     }
 
     /**
-     * 初始化文档集 - 获取昨天到今天的所有arXiv论文
+     * 加载编排器配置，文件不存在时使用默认值
      */
-    public void initDocset() {
-        try {
-            // 获取昨天到今天的时间范围
-            LocalDate today = LocalDate.now();
-            LocalDate Days4Ago = today.minusDays(4);
-            LocalDate Days5Ago = today.minusDays(5);
-
-            String startTime = Days5Ago.format(DateTimeFormatter.ofPattern("yyyyMMdd")) + "0000";
-            String endTime = Days4Ago.format(DateTimeFormatter.ofPattern("yyyyMMdd")) + "0000";
-
-            System.out.println("Fetching arXiv papers from " + Days5Ago + " to " + Days4Ago);
-
-            // 获取arXiv论文ID列表
-            List<String> arxivIds = fetchArxivIds(startTime, endTime);
-
-            System.out.println("Found " + arxivIds.size() + " papers to process");
-
-            // 逐个处理论文
-            for (String arxivId : arxivIds) {
-                try {
-                    processPaper(arxivId);
-                    // 添加延迟避免API限流
-                    Thread.sleep(1000);
-                } catch (Exception e) {
-                    System.err.println("Failed to process paper " + arxivId + ": " + e.getMessage());
-                }
+    private void loadConfiguration() {
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (input != null) {
+                config.load(input);
             }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not load " + CONFIG_FILE + ": " + e.getMessage());
+        }
 
-            System.out.println("Fetch orchestrator completed successfully!");
+        this.pageSize = Integer.parseInt(config.getProperty("arxiv.page_size", "1000"));
+        this.pageDelayMillis = Long.parseLong(config.getProperty("arxiv.page_delay_ms", "3000"));
+        this.lagDays = Integer.parseInt(config.getProperty("harvest.lag_days", "4"));
+        this.initialWindowDays = Integer.parseInt(config.getProperty("harvest.initial_window_days", "1"));
+    }
 
+    /**
+     * 初始化文档集 - 从上次的检查点继续增量抓取arXiv论文
+     * 未完成的窗口从记录的偏移量处续抓；已完成时从上个窗口的终点抓取到当前可抓取的时间点
+     */
+    public void initDocset() {
+        try {
+            initDocset(null);
         } catch (Exception e) {
             System.err.println("Error in initDocset: " + e.getMessage());
             e.printStackTrace();
@@ -86,127 +91,113 @@ public class FetchOrchestrator {
     }
 
     /**
-     * 从arXiv API获取论文ID列表
-     * @param startTime 开始时间 (yyyyMMddHHmm格式)
-     * @param endTime 结束时间 (yyyyMMddHHmm格式)
-     * @return arXiv ID列表
+     * 增量抓取arXiv论文，并向运行登记入库流水线各阶段的进度
+     * 运行被取消时流水线中止，已保存的检查点之前的论文不会重复抓取
+     * @param run 登记的运行，可以为null
+     * @throws Exception 如果抓取或入库失败
      */
-    private List<String> fetchArxivIds(String startTime, String endTime) throws IOException {
-        List<String> arxivIds = new ArrayList<>();
-
-        // arXiv搜索查询：计算机科学类别，指定时间范围
-        String query = "cat:cs.*";
-        String dateQuery = "submittedDate:[" + startTime + " TO " + endTime + "]";
-
-        // 构建完整查询
-        String fullQuery = query + " AND " + dateQuery;
+    public void initDocset(OrchestratorRun run) throws Exception {
+        Map<String, Object> state = dbManager.getHarvestState(CATEGORY);
+        // arXiv API中的论文有公布延迟，只抓取lagDays天之前提交的论文
+        LocalDateTime harvestableUntil = LocalDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).minusDays(lagDays);
+
+        LocalDateTime windowStart;
+        LocalDateTime windowEnd;
+        int startOffset = 0;
+
+        if (state != null && !(Boolean) state.get("completed")) {
+            // 上次运行中断，续抓未完成的窗口
+            windowStart = (LocalDateTime) state.get("window_start");
+            windowEnd = (LocalDateTime) state.get("window_end");
+            startOffset = (Integer) state.get("page_offset");
+            System.out.println("Resuming interrupted harvest at offset " + startOffset);
+        } else {
+            windowStart = state != null
+                    ? (LocalDateTime) state.get("window_end")
+                    : harvestableUntil.minusDays(initialWindowDays);
+            windowEnd = harvestableUntil;
+        }
 
-        // arXiv API URL
-        String url = ARXIV_API_BASE + "?search_query=" + java.net.URLEncoder.encode(fullQuery, "UTF-8")
-                   + "&start=0&max_results=5&sortBy=submittedDate&sortOrder=descending";
+        if (!windowStart.isBefore(windowEnd)) {
+            System.out.println("Harvest is up to date (last window ended at " + windowStart + " UTC)");
+            return;
+        }
 
-        System.out.println("Fetching from arXiv API: " + url);
+        while (true) {
+            System.out.println("Fetching arXiv papers submitted from " + windowStart + " to " + windowEnd + " UTC");
+            dbManager.saveHarvestState(CATEGORY, windowStart, windowEnd, startOffset, null, false);
 
-        Request request = new Request.Builder()
-                .url(url)
-                .get()
-                .build();
+            // 分页抓取，每页入库并建立索引后保存检查点
+            AtomicReference<LocalDateTime> watermark = new AtomicReference<>();
+            ArxivHarvester.HarvestResult result = fetchAndIngest(windowStart, windowEnd, startOffset, watermark, run);
+            int totalResults = result.getTotalResults();
 
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("arXiv API error: " + response.code());
+            if (result.isComplete()) {
+                dbManager.saveHarvestState(CATEGORY, windowStart, windowEnd, Math.max(startOffset, totalResults), null, true);
+                System.out.println("Processed " + Math.max(0, totalResults - startOffset) + " papers");
+                break;
             }
 
-            String responseBody = response.body().string();
-            arxivIds = parseArxivResponse(responseBody);
+            if (result.isTruncated() && watermark.get() != null && watermark.get().isAfter(windowStart)) {
+                // 结果超过API上限：从已处理论文的最大提交时间处拆分窗口，继续抓取剩余部分
+                // （该时刻的论文会被重新抓取，入库是幂等的）
+                windowStart = watermark.get().truncatedTo(ChronoUnit.MINUTES);
+                startOffset = 0;
+                System.out.println("Window exceeded the arXiv result limit, continuing from " + windowStart + " UTC");
+                continue;
+            }
 
-            System.out.println("Successfully fetched " + arxivIds.size() + " paper IDs from arXiv");
+            // 重试后仍遇到空页：窗口保持未完成，下次运行从最后的检查点续抓
+            throw new IOException("arXiv harvest stopped at offset " + result.getEndOffset() + " of " + totalResults
+                    + "; the window will resume from its last checkpoint");
         }
 
-        return arxivIds;
+        System.out.println("Fetch orchestrator completed successfully!");
     }
 
     /**
-     * 解析arXiv XML响应获取论文ID
-     * @param xmlResponse arXiv API响应XML
-     * @return arXiv ID列表
+     * 通过入库流水线抓取时间窗口内的arXiv论文
+     * 抓取、解析、入库、向量化并行进行；每页的论文都入库并建立索引后保存检查点
+     * @param windowStart 窗口起点（UTC）
+     * @param windowEnd 窗口终点（UTC）
+     * @param startOffset 窗口内的起始偏移量
+     * @param watermark 记录最后一个检查点时已处理论文的最大提交时间
+     * @param run 登记的运行，可以为null
+     * @return 抓取结果
      */
-    private List<String> parseArxivResponse(String xmlResponse) {
-        List<String> arxivIds = new ArrayList<>();
-
-        // 简单的XML解析，提取id标签中的arXiv ID
-        String[] entries = xmlResponse.split("<entry>");
-        for (String entry : entries) {
-            if (entry.contains("<id>") && entry.contains("arxiv.org/abs/")) {
-                int idStart = entry.indexOf("<id>") + 4;
-                int idEnd = entry.indexOf("</id>", idStart);
-                if (idStart > 0 && idEnd > idStart) {
-                    String fullUrl = entry.substring(idStart, idEnd);
-                    // 提取arXiv ID (URL最后一部分)
-                    String arxivId = fullUrl.substring(fullUrl.lastIndexOf("/") + 1);
-                    if (!arxivId.isEmpty()) {
-                        arxivIds.add(arxivId);
-                    }
-                }
-            }
-        }
+    private ArxivHarvester.HarvestResult fetchAndIngest(LocalDateTime windowStart, LocalDateTime windowEnd, int startOffset,
+                                                        AtomicReference<LocalDateTime> watermark, OrchestratorRun run)
+            throws IOException, InterruptedException {
+        // arXiv搜索查询：计算机科学类别，指定时间范围
+        String query = "cat:" + CATEGORY;
+        String dateQuery = "submittedDate:[" + windowStart.format(ARXIV_DATE_FORMAT)
+                + " TO " + windowEnd.format(ARXIV_DATE_FORMAT) + "]";
 
-        return arxivIds;
-    }
+        // 构建完整查询
+        String fullQuery = query + " AND " + dateQuery;
 
-    /**
-     * 处理单个论文 - 调用后端API
-     * @param arxivId arXiv论文ID
-     */
-    private void processPaper(String arxivId) throws IOException {
-        System.out.println("Processing paper: " + arxivId);
-
-        // 构建请求体
-        Map<String, String> requestBody = new HashMap<>();
-        requestBody.put("arxiv_id", arxivId);
-
-        String jsonBody = objectMapper.writeValueAsString(requestBody);
-
-        // 调用Papers API
-        Request request = new Request.Builder()
-                .url(PAPERS_API_URL)
-                .post(RequestBody.create(jsonBody, JSON))
-                .addHeader("Content-Type", "application/json")
-                .build();
-
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (response.isSuccessful()) {
-                String responseBody = response.body().string();
-                System.out.println("✅ Successfully processed paper: " + arxivId);
-
-                // 解析响应获取paper_id
-                JsonNode responseJson = objectMapper.readTree(responseBody);
-                if (responseJson.has("data") && responseJson.get("data").has("paper_id")) {
-                    int paperId = responseJson.get("data").get("paper_id").asInt();
-                    System.out.println("   → Created paper with ID: " + paperId);
-
-                    // 为论文创建向量索引
-                    try {
-                        System.out.println("   🔄 Creating vector embedding for paper ID: " + paperId);
-                        boolean embeddingSuccess = indexService.indexPaper(paperId);
-                        if (embeddingSuccess) {
-                            System.out.println("   ✅ Vector embedding created successfully for paper ID: " + paperId);
-                        } else {
-                            System.err.println("   ❌ Failed to create vector embedding for paper ID: " + paperId);
-                        }
-                    } catch (Exception e) {
-                        System.err.println("   ❌ Error creating embedding for paper ID " + paperId + ": " + e.getMessage());
-                        e.printStackTrace();
-                    }
-                } else {
-                    System.err.println("   ❌ Invalid response format: missing paper_id");
+        System.out.println("Harvesting from arXiv API: " + fullQuery);
+
+        ArxivHarvester harvester = new ArxivHarvester(httpClient, pageSize, pageDelayMillis);
+        IngestPipeline pipeline = new IngestPipeline(harvester, paperIngestService, indexService, config);
+        if (run != null) {
+            run.addStageSource(() -> pipeline.getStageStats().values());
+        }
+        // 检查点在向量化阶段的线程中保存，入库阶段的事务占用dbManager的连接，检查点使用独立的连接
+        Dbmanager checkpointDb = new Dbmanager();
+        ArxivHarvester.HarvestResult result;
+        try {
+            result = pipeline.run(fullQuery, startOffset, (nextOffset, checkpointWatermark) -> {
+                checkpointDb.saveHarvestState(CATEGORY, windowStart, windowEnd, nextOffset, checkpointWatermark, false);
+                if (checkpointWatermark != null) {
+                    watermark.set(checkpointWatermark);
                 }
-            } else {
-                String errorBody = response.body() != null ? response.body().string() : "Unknown error";
-                System.err.println("❌ Failed to process paper " + arxivId + ": HTTP " + response.code());
-                System.err.println("   Error: " + errorBody);
-            }
+            });
+        } finally {
+            checkpointDb.closeConnection();
         }
+        System.out.println("Successfully fetched " + result.getEndOffset() + "/" + result.getTotalResults() + " papers from arXiv");
+        return result;
     }
 
     /**
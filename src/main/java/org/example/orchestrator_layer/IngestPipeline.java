@@ -0,0 +1,408 @@
+package org.example.orchestrator_layer;
+
+import org.example.service.ArxivAtomParser;
+import org.example.service.ArxivEntry;
+import org.example.service.ArxivHarvester;
+import org.example.service.IndexService;
+import org.example.service.PaperIngestService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 论文入库流水线
+ * 抓取、解析、入库、向量化四个阶段各自运行在独立的线程池中，阶段之间通过有界队列连接，
+ * 下游处理不过来时上游在队列上阻塞（背压），内存占用由队列容量决定
+ * 检查点随数据一起流经各阶段，只有在此之前的论文都已入库并建立索引后才会保存
+ * 每个实例只运行一次
+ */
+public class IngestPipeline {
+    private final ArxivHarvester harvester;
+    private final ArxivAtomParser atomParser;
+    private final PaperIngestService paperIngestService;
+    private final IndexService indexService;
+
+    private final int pageQueueCapacity;
+    private final int entryQueueCapacity;
+    private final int embedQueueCapacity;
+    private final int persistBatchSize;
+    private final int embedBatchSize;
+    private final long statsIntervalSeconds;
+
+    private final Map<String, StageStats> stageStats = new LinkedHashMap<>();
+    private final List<ExecutorService> executors = new ArrayList<>();
+    private volatile Throwable failure;
+
+    /**
+     * @param harvester arXiv分页抓取器
+     * @param paperIngestService 入库服务（仅由入库阶段的线程使用）
+     * @param indexService 向量索引服务（仅由向量化阶段的线程使用）
+     * @param config 编排器配置，读取pipeline.*配置项
+     */
+    public IngestPipeline(ArxivHarvester harvester, PaperIngestService paperIngestService,
+                          IndexService indexService, Properties config) {
+        this.harvester = harvester;
+        this.atomParser = new ArxivAtomParser();
+        this.paperIngestService = paperIngestService;
+        this.indexService = indexService;
+
+        this.pageQueueCapacity = Integer.parseInt(config.getProperty("pipeline.page_queue_capacity", "2"));
+        this.entryQueueCapacity = Integer.parseInt(config.getProperty("pipeline.entry_queue_capacity", "2000"));
+        this.embedQueueCapacity = Integer.parseInt(config.getProperty("pipeline.embed_queue_capacity", "1000"));
+        this.persistBatchSize = Integer.parseInt(config.getProperty("pipeline.persist_batch_size", "100"));
+        // Gemini batchEmbedContents单次最多100条
+        this.embedBatchSize = Math.min(100, Integer.parseInt(config.getProperty("pipeline.embed_batch_size", "100")));
+        this.statsIntervalSeconds = Long.parseLong(config.getProperty("pipeline.stats_interval_seconds", "30"));
+    }
+
+    /**
+     * 运行流水线，直到查询的全部结果都已入库并建立索引
+     * @param searchQuery arXiv search_query
+     * @param startOffset 起始偏移量
+     * @param checkpointListener 检查点回调，在向量化阶段的线程中调用
+     * @return 抓取结果（查询结果总数、停止时的偏移量、是否抓取完整）
+     * @throws IOException 如果任一阶段失败
+     * @throws InterruptedException 如果等待流水线结束时被中断
+     */
+    public ArxivHarvester.HarvestResult run(String searchQuery, int startOffset, CheckpointListener checkpointListener)
+            throws IOException, InterruptedException {
+        BlockingQueue<Item<byte[]>> pageQueue = new ArrayBlockingQueue<>(pageQueueCapacity);
+        BlockingQueue<Item<ArxivEntry>> entryQueue = new ArrayBlockingQueue<>(entryQueueCapacity);
+        BlockingQueue<Item<Map<String, Object>>> embedQueue = new ArrayBlockingQueue<>(embedQueueCapacity);
+
+        StageStats fetchStats = addStage("fetch", null);
+        StageStats parseStats = addStage("parse", pageQueue);
+        StageStats persistStats = addStage("persist", entryQueue);
+        StageStats embedStats = addStage("embed", embedQueue);
+        AtomicReference<ArxivHarvester.HarvestResult> harvestResult = new AtomicReference<>();
+
+        startStage("fetch", () -> {
+            try {
+                harvestResult.set(harvester.fetchPages(searchQuery, startOffset, (offset, nextOffset, total, body) -> {
+                    if (fetchStats.total < 0) {
+                        // 第一页返回查询结果总数后，抓取、解析和入库阶段的总量即可确定；向量化只处理新增或变更的论文，总量未知
+                        long expectedEntries = Math.max(0, total - startOffset);
+                        fetchStats.total = (expectedEntries + harvester.getPageSize() - 1) / harvester.getPageSize();
+                        parseStats.total = expectedEntries;
+                        persistStats.total = expectedEntries;
+                    }
+                    fetchStats.processed.incrementAndGet();
+                    pageQueue.put(Item.of(body));
+                    pageQueue.put(Item.checkpoint(nextOffset, null));
+                }));
+            } finally {
+                pageQueue.put(Item.end());
+            }
+        });
+        startStage("parse", () -> runParseStage(pageQueue, entryQueue, parseStats));
+        startStage("persist", () -> runPersistStage(entryQueue, embedQueue, persistStats));
+        startStage("embed", () -> runEmbedStage(embedQueue, checkpointListener, embedStats));
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "ingest-stats"));
+        reporter.scheduleAtFixedRate(this::printStats, statsIntervalSeconds, statsIntervalSeconds, TimeUnit.SECONDS);
+
+        try {
+            for (ExecutorService executor : executors) {
+                executor.shutdown();
+            }
+            for (ExecutorService executor : executors) {
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    // 等待各阶段处理完剩余数据
+                }
+            }
+        } catch (InterruptedException e) {
+            abort(e);
+            throw e;
+        } finally {
+            reporter.shutdownNow();
+        }
+
+        printStats();
+        if (failure != null) {
+            throw new IOException("Ingest pipeline failed: " + failure.getMessage(), failure);
+        }
+        return harvestResult.get();
+    }
+
+    /**
+     * 获取各阶段的统计信息（队列深度、处理数量、总量、吞吐量），可在流水线运行期间从其他线程调用
+     */
+    public synchronized Map<String, StageStats> getStageStats() {
+        return new LinkedHashMap<>(stageStats);
+    }
+
+    /**
+     * 解析阶段：把每页的响应体解析为论文条目，检查点原样向下游传递
+     */
+    private void runParseStage(BlockingQueue<Item<byte[]>> in, BlockingQueue<Item<ArxivEntry>> out,
+                               StageStats stats) throws IOException, InterruptedException {
+        while (true) {
+            Item<byte[]> item = in.take();
+            if (item.endOfStream) {
+                out.put(Item.end());
+                return;
+            }
+            if (item.value == null) {
+                out.put(Item.checkpoint(item.checkpointOffset, null));
+                continue;
+            }
+            List<ArxivEntry> entries = new ArrayList<>();
+            atomParser.parse(new ByteArrayInputStream(item.value), entries::add);
+            for (ArxivEntry entry : entries) {
+                out.put(Item.of(entry));
+            }
+            stats.processed.addAndGet(entries.size());
+        }
+    }
+
+    /**
+     * 入库阶段：按批幂等写入papers表，把需要建立索引的论文交给向量化阶段；
+     * 检查点到达时先写入之前的条目，再附上submittedDate水位向下游传递
+     */
+    private void runPersistStage(BlockingQueue<Item<ArxivEntry>> in, BlockingQueue<Item<Map<String, Object>>> out,
+                                 StageStats stats) throws Exception {
+        List<ArxivEntry> batch = new ArrayList<>(persistBatchSize);
+        LocalDateTime watermark = null;
+
+        while (true) {
+            Item<ArxivEntry> item = batch.isEmpty() ? in.take() : in.poll();
+
+            if (item != null && item.value != null) {
+                batch.add(item.value);
+                if (item.value.getPublished() != null) {
+                    LocalDateTime submittedAt = LocalDateTime.ofInstant(item.value.getPublished(), ZoneOffset.UTC);
+                    if (watermark == null || submittedAt.isAfter(watermark)) {
+                        watermark = submittedAt;
+                    }
+                }
+                if (batch.size() < persistBatchSize) {
+                    continue;
+                }
+            }
+
+            // 批次已满、队列暂时为空或遇到标记时，写入当前批次
+            if (!batch.isEmpty()) {
+                List<Map<String, Object>> changedPapers = paperIngestService.ingestEntries(batch);
+                System.out.println("✅ Ingested batch: " + changedPapers.size() + " new or updated, "
+                        + (batch.size() - changedPapers.size()) + " already indexed");
+                for (Map<String, Object> paper : changedPapers) {
+                    out.put(Item.of(paper));
+                }
+                stats.processed.addAndGet(batch.size());
+                batch = new ArrayList<>(persistBatchSize);
+            }
+
+            if (item == null) {
+                continue;
+            }
+            if (item.endOfStream) {
+                out.put(Item.end());
+                return;
+            }
+            if (item.checkpointOffset >= 0) {
+                out.put(Item.checkpoint(item.checkpointOffset, watermark));
+            }
+        }
+    }
+
+    /**
+     * 向量化阶段：按批调用batchEmbedContents生成向量并存储；
+     * 检查点到达时先处理之前的论文，再回调保存检查点
+     */
+    private void runEmbedStage(BlockingQueue<Item<Map<String, Object>>> in, CheckpointListener checkpointListener,
+                               StageStats stats) throws Exception {
+        List<Map<String, Object>> batch = new ArrayList<>(embedBatchSize);
+
+        while (true) {
+            Item<Map<String, Object>> item = batch.isEmpty() ? in.take() : in.poll();
+
+            if (item != null && item.value != null) {
+                batch.add(item.value);
+                if (batch.size() < embedBatchSize) {
+                    continue;
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                int indexed = indexService.indexPapers(batch);
+                System.out.println("   ✅ Created vector embeddings for " + indexed + "/" + batch.size() + " papers");
+                stats.processed.addAndGet(batch.size());
+                batch = new ArrayList<>(embedBatchSize);
+            }
+
+            if (item == null) {
+                continue;
+            }
+            if (item.endOfStream) {
+                return;
+            }
+            if (item.checkpointOffset >= 0) {
+                try {
+                    checkpointListener.onCheckpoint(item.checkpointOffset, item.watermark);
+                } catch (Exception e) {
+                    System.err.println("⚠️ Failed to save harvest checkpoint: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private synchronized StageStats addStage(String name, BlockingQueue<?> inputQueue) {
+        StageStats stats = new StageStats(name, inputQueue);
+        stageStats.put(name, stats);
+        return stats;
+    }
+
+    /**
+     * 在阶段自己的单线程池中运行，任一阶段失败时中止整条流水线
+     */
+    private synchronized void startStage(String name, StageTask task) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> daemon(r, "ingest-" + name));
+        executors.add(executor);
+        if (failure != null) {
+            executor.shutdownNow();
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (InterruptedException e) {
+                // 流水线已中止
+            } catch (Exception e) {
+                System.err.println("❌ Ingest stage '" + name + "' failed: " + e.getMessage());
+                abort(e);
+            }
+        });
+    }
+
+    /**
+     * 中止流水线：记录第一个失败原因并中断所有阶段（包括阻塞在队列上的阶段）
+     */
+    private synchronized void abort(Throwable cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+        for (ExecutorService executor : executors) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void printStats() {
+        StringBuilder line = new StringBuilder("📊 Pipeline");
+        for (StageStats stats : stageStats.values()) {
+            line.append(" | ").append(stats.getName())
+                .append(": queue=").append(stats.getQueueDepth())
+                .append(", processed=").append(stats.getProcessed())
+                .append(String.format(", %.1f/s", stats.getThroughputPerSecond()));
+        }
+        System.out.println(line);
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * 检查点回调
+     */
+    public interface CheckpointListener {
+        /**
+         * @param nextOffset 已完成处理的下一页偏移量
+         * @param watermark 目前已处理论文的最大提交时间（UTC），未知时为null
+         */
+        void onCheckpoint(int nextOffset, LocalDateTime watermark) throws Exception;
+    }
+
+    private interface StageTask {
+        void run() throws Exception;
+    }
+
+    /**
+     * 单个阶段的统计信息
+     * 队列深度指该阶段输入队列中等待处理的元素数（抓取阶段没有输入队列）；
+     * 处理数量对抓取阶段是页数，对其余阶段是论文条目数；总量在抓取到第一页后确定，未知时为-1
+     */
+    public static class StageStats implements OrchestratorRun.StageProgress {
+        private final String name;
+        private final BlockingQueue<?> inputQueue;
+        private final AtomicLong processed = new AtomicLong();
+        private final long startedAt = System.nanoTime();
+        private volatile long total = -1;
+
+        StageStats(String name, BlockingQueue<?> inputQueue) {
+            this.name = name;
+            this.inputQueue = inputQueue;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getQueueDepth() {
+            return inputQueue != null ? inputQueue.size() : 0;
+        }
+
+        @Override
+        public long getProcessed() {
+            return processed.get();
+        }
+
+        @Override
+        public long getTotal() {
+            return total;
+        }
+
+        @Override
+        public double getThroughputPerSecond() {
+            double seconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+            return seconds > 0 ? processed.get() / seconds : 0;
+        }
+    }
+
+    /**
+     * 队列中的元素：数据、检查点或结束标记
+     */
+    private static class Item<T> {
+        final T value;
+        final int checkpointOffset;
+        final LocalDateTime watermark;
+        final boolean endOfStream;
+
+        private Item(T value, int checkpointOffset, LocalDateTime watermark, boolean endOfStream) {
+            this.value = value;
+            this.checkpointOffset = checkpointOffset;
+            this.watermark = watermark;
+            this.endOfStream = endOfStream;
+        }
+
+        static <T> Item<T> of(T value) {
+            return new Item<>(value, -1, null, false);
+        }
+
+        static <T> Item<T> checkpoint(int nextOffset, LocalDateTime watermark) {
+            return new Item<>(null, nextOffset, watermark, false);
+        }
+
+        static <T> Item<T> end() {
+            return new Item<>(null, -1, null, true);
+        }
+    }
+}
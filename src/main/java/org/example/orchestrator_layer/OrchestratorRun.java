@@ -0,0 +1,280 @@
+package org.example.orchestrator_layer;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 一次编排器运行
+ * 记录运行的状态、时间和各阶段进度（处理数量、总量、吞吐量、预计剩余时间），支持取消。
+ * 编排器在运行中向其注册阶段并更新计数，在检查点调用isCancelled()响应取消
+ */
+public class OrchestratorRun {
+
+    /**
+     * 运行状态
+     */
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    /**
+     * 阶段进度
+     */
+    public interface StageProgress {
+        String getName();
+
+        long getProcessed();
+
+        /**
+         * @return 总量，未知时返回-1
+         */
+        long getTotal();
+
+        /**
+         * @return 输入队列中等待处理的数量，没有队列时返回0
+         */
+        int getQueueDepth();
+
+        double getThroughputPerSecond();
+    }
+
+    private final long runId;
+    private final String type;
+    private final Timestamp createdAt = new Timestamp(System.currentTimeMillis());
+    // 阶段来源，流水线等运行中才创建阶段的组件以Supplier注册
+    private final List<Supplier<? extends Collection<? extends StageProgress>>> stageSources = new CopyOnWriteArrayList<>();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Timestamp startedAt;
+    private volatile Timestamp finishedAt;
+    private volatile String error;
+    private volatile boolean cancelRequested;
+    private volatile String note;
+    private final AtomicLong triggers = new AtomicLong(1);
+    private Future<?> future;
+
+    OrchestratorRun(long runId, String type) {
+        this.runId = runId;
+        this.type = type;
+    }
+
+    public long getRunId() {
+        return runId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * 是否已请求取消，编排器应在检查点尽快结束
+     */
+    public boolean isCancelled() {
+        return cancelRequested || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * 注册阶段，按注册顺序展示
+     */
+    public void addStage(StageProgress stage) {
+        stageSources.add(() -> List.of(stage));
+    }
+
+    /**
+     * 注册一组在查询时才读取的阶段（如入库流水线的各阶段）
+     */
+    public void addStageSource(Supplier<? extends Collection<? extends StageProgress>> source) {
+        stageSources.add(source);
+    }
+
+    /**
+     * 注册并返回一个计数阶段
+     * @param name 阶段名
+     * @param total 总量，未知时为-1
+     */
+    public Counter addCounter(String name, long total) {
+        Counter counter = new Counter(name, total);
+        addStage(counter);
+        return counter;
+    }
+
+    /**
+     * 记录运行的补充说明（如加入了其他节点的运行）
+     */
+    void setNote(String note) {
+        this.note = note;
+    }
+
+    /**
+     * 又一次触发加入了本运行
+     */
+    void attachTrigger() {
+        triggers.incrementAndGet();
+    }
+
+    synchronized void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    synchronized boolean markRunning() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        status = Status.RUNNING;
+        startedAt = new Timestamp(System.currentTimeMillis());
+        return true;
+    }
+
+    synchronized void markFinished(Throwable failure) {
+        if (status == Status.CANCELLED) {
+            return;
+        }
+        if (cancelRequested) {
+            status = Status.CANCELLED;
+        } else if (failure != null) {
+            status = Status.FAILED;
+            error = failure.getMessage() != null ? failure.getMessage() : failure.getClass().getSimpleName();
+        } else {
+            status = Status.SUCCEEDED;
+        }
+        finishedAt = new Timestamp(System.currentTimeMillis());
+    }
+
+    /**
+     * 请求取消：排队中的运行直接结束，运行中的运行被中断并在下一个检查点结束
+     * @return 运行是否仍未结束（结束后无法取消）
+     */
+    synchronized boolean cancel() {
+        if (isFinished()) {
+            return false;
+        }
+        cancelRequested = true;
+        if (status == Status.QUEUED) {
+            status = Status.CANCELLED;
+            finishedAt = new Timestamp(System.currentTimeMillis());
+        }
+        if (future != null) {
+            future.cancel(true);
+        }
+        return true;
+    }
+
+    boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED || status == Status.CANCELLED;
+    }
+
+    /**
+     * 运行状态和各阶段进度，用于API响应
+     * 有总量和吞吐量的阶段给出预计剩余秒数，运行的预计剩余时间取各阶段的最大值
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("run_id", runId);
+        map.put("type", type);
+        map.put("status", status.name().toLowerCase());
+        map.put("cancel_requested", cancelRequested);
+        map.put("created_at", createdAt);
+        map.put("started_at", startedAt);
+        map.put("finished_at", finishedAt);
+        if (startedAt != null) {
+            long end = finishedAt != null ? finishedAt.getTime() : System.currentTimeMillis();
+            map.put("elapsed_seconds", (end - startedAt.getTime()) / 1000);
+        }
+        map.put("error", error);
+        map.put("note", note);
+        map.put("triggers", triggers.get());
+
+        List<Map<String, Object>> stageList = new ArrayList<>();
+        Long runEta = null;
+        List<StageProgress> stages = new ArrayList<>();
+        for (Supplier<? extends Collection<? extends StageProgress>> source : stageSources) {
+            stages.addAll(source.get());
+        }
+        for (StageProgress stage : stages) {
+            Map<String, Object> stageMap = new LinkedHashMap<>();
+            long processed = stage.getProcessed();
+            long total = stage.getTotal();
+            double rate = stage.getThroughputPerSecond();
+            stageMap.put("name", stage.getName());
+            stageMap.put("processed", processed);
+            stageMap.put("total", total >= 0 ? total : null);
+            stageMap.put("queue_depth", stage.getQueueDepth());
+            stageMap.put("rate_per_second", Math.round(rate * 100) / 100.0);
+            Long eta = null;
+            if (status == Status.RUNNING && total >= 0 && rate > 0) {
+                eta = (long) Math.ceil(Math.max(0, total - processed) / rate);
+                runEta = runEta == null ? eta : Math.max(runEta, eta);
+            }
+            stageMap.put("eta_seconds", eta);
+            stageList.add(stageMap);
+        }
+        map.put("eta_seconds", runEta);
+        map.put("stages", stageList);
+        return map;
+    }
+
+    /**
+     * 由编排器递增的计数阶段，吞吐量从注册时开始计算
+     */
+    public static class Counter implements StageProgress {
+        private final String name;
+        private final AtomicLong processed = new AtomicLong();
+        private final long startedAt = System.nanoTime();
+        private volatile long total;
+
+        Counter(String name, long total) {
+            this.name = name;
+            this.total = total;
+        }
+
+        public void add(long count) {
+            processed.addAndGet(count);
+        }
+
+        public void set(long count) {
+            processed.set(count);
+        }
+
+        public void setTotal(long total) {
+            this.total = total;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getProcessed() {
+            return processed.get();
+        }
+
+        @Override
+        public long getTotal() {
+            return total;
+        }
+
+        @Override
+        public int getQueueDepth() {
+            return 0;
+        }
+
+        @Override
+        public double getThroughputPerSecond() {
+            double seconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+            return seconds > 0 ? processed.get() / seconds : 0;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.example.orchestrator_layer;
+
+import org.example.data_access_layer.Dbmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 编排器运行管理
+ * 每次触发的运行分配一个ID并登记，在专用的有界线程池中执行（不占用公共ForkJoinPool），
+ * 运行中和最近结束的运行可以按ID查询进度或取消。
+ * 同一类型的运行互斥：进程内同类型已有未结束的运行时，新的触发直接加入该运行；
+ * 跨节点由MySQL命名锁保证，未获得锁的运行不执行，等待持有锁的节点完成后结束
+ */
+public class OrchestratorRunManager {
+    private static final String CONFIG_FILE = "orchestrator.properties";
+
+    private static OrchestratorRunManager instance;
+
+    /**
+     * 运行任务
+     */
+    @FunctionalInterface
+    public interface RunTask {
+        void run(OrchestratorRun run) throws Exception;
+    }
+
+    /**
+     * 提交结果
+     */
+    public static class Submission {
+        private final OrchestratorRun run;
+        private final boolean attached;
+
+        Submission(OrchestratorRun run, boolean attached) {
+            this.run = run;
+            this.attached = attached;
+        }
+
+        public OrchestratorRun getRun() {
+            return run;
+        }
+
+        /**
+         * @return 是否加入了已在进行的运行
+         */
+        public boolean isAttached() {
+            return attached;
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong nextRunId = new AtomicLong(1);
+    // 按登记顺序保存，超过historySize时移除最早结束的运行
+    private final Map<Long, OrchestratorRun> runs = new LinkedHashMap<>();
+    // 每种类型当前未结束的运行（进程内互斥）
+    private final Map<String, OrchestratorRun> activeRuns = new HashMap<>();
+    private final int historySize;
+    private final long lockPollMillis;
+
+    /**
+     * 获取全局运行管理器
+     */
+    public static synchronized OrchestratorRunManager getInstance() {
+        if (instance == null) {
+            instance = new OrchestratorRunManager();
+        }
+        return instance;
+    }
+
+    private OrchestratorRunManager() {
+        Properties config = new Properties();
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (input != null) {
+                config.load(input);
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not load " + CONFIG_FILE + ": " + e.getMessage());
+        }
+
+        int maxConcurrent = Integer.parseInt(config.getProperty("runs.max_concurrent", "2"));
+        int maxQueued = Integer.parseInt(config.getProperty("runs.max_queued", "4"));
+        this.historySize = Integer.parseInt(config.getProperty("runs.history_size", "50"));
+        this.lockPollMillis = Long.parseLong(config.getProperty("runs.lock_poll_seconds", "5")) * 1000;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueued), r -> {
+                    Thread thread = new Thread(r, "orchestrator-run-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * 登记并提交一次运行；同类型已有未结束的运行时不再提交，加入该运行
+     * @param type 运行类型（fetch、recommend），同时作为互斥的锁名
+     * @param task 运行任务
+     * @return 登记或加入的运行
+     * @throws RejectedExecutionException 如果运行中和排队的运行已达上限
+     */
+    public synchronized Submission submit(String type, RunTask task) {
+        OrchestratorRun active = activeRuns.get(type);
+        if (active != null && !active.isFinished()) {
+            active.attachTrigger();
+            System.out.println("🔗 " + type + " run " + active.getRunId() + " already in progress, trigger attached");
+            return new Submission(active, true);
+        }
+
+        OrchestratorRun run = new OrchestratorRun(nextRunId.getAndIncrement(), type);
+        Future<?> future = executor.submit(() -> execute(run, task));
+        run.setFuture(future);
+        runs.put(run.getRunId(), run);
+        activeRuns.put(type, run);
+        trimHistory();
+        return new Submission(run, false);
+    }
+
+    /**
+     * 获取运行
+     * @return 运行，不存在或已从历史中移除时返回null
+     */
+    public synchronized OrchestratorRun get(long runId) {
+        return runs.get(runId);
+    }
+
+    /**
+     * 获取全部登记的运行，按登记顺序
+     */
+    public synchronized List<OrchestratorRun> list() {
+        return new ArrayList<>(runs.values());
+    }
+
+    /**
+     * 取消运行
+     * @return 是否已请求取消，运行已结束时返回false
+     */
+    public boolean cancel(OrchestratorRun run) {
+        boolean cancelled = run.cancel();
+        if (cancelled) {
+            System.out.println("🛑 Cancellation requested for " + run.getType() + " run " + run.getRunId());
+        }
+        return cancelled;
+    }
+
+    /**
+     * 停止线程池，中断正在执行的运行
+     */
+    public void shutdown() {
+        synchronized (OrchestratorRunManager.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    private void execute(OrchestratorRun run, RunTask task) {
+        if (!run.markRunning()) {
+            // 排队期间已被取消
+            return;
+        }
+        System.out.println("▶️ Starting " + run.getType() + " run " + run.getRunId());
+        Throwable failure = null;
+        try {
+            runLocked(run, task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } catch (Exception | Error e) {
+            failure = e;
+            System.err.println("❌ " + run.getType() + " run " + run.getRunId() + " failed: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            synchronized (this) {
+                activeRuns.remove(run.getType(), run);
+            }
+            run.markFinished(failure);
+            System.out.println("⏹️ " + run.getType() + " run " + run.getRunId() + " finished: "
+                    + run.getStatus().name().toLowerCase());
+        }
+    }
+
+    /**
+     * 持有跨节点的命名锁执行运行；锁被其他节点持有时不执行，等待对方结束后以加入的方式完成
+     * 锁属于专用的数据库连接，节点崩溃时连接断开，锁随之释放
+     */
+    private void runLocked(OrchestratorRun run, RunTask task) throws Exception {
+        String lockName = "orchestrator_run:" + run.getType();
+        Dbmanager lockDb = new Dbmanager();
+        try {
+            if (!lockDb.acquireNamedLock(lockName, 0)) {
+                run.setNote("Another node is running a " + run.getType() + " run; attached until it finishes");
+                System.out.println("🔗 " + run.getType() + " run " + run.getRunId() + " attached to a run on another node");
+                while (!lockDb.isNamedLockFree(lockName)) {
+                    if (run.isCancelled()) {
+                        throw new InterruptedException("Run cancelled");
+                    }
+                    Thread.sleep(lockPollMillis);
+                }
+                return;
+            }
+            try {
+                task.run(run);
+            } finally {
+                lockDb.releaseNamedLock(lockName);
+            }
+        } finally {
+            lockDb.closeConnection();
+        }
+    }
+
+    private void trimHistory() {
+        Iterator<OrchestratorRun> iterator = runs.values().iterator();
+        int excess = runs.size() - historySize;
+        while (excess > 0 && iterator.hasNext()) {
+            if (iterator.next().isFinished()) {
+                iterator.remove();
+                excess--;
+            }
+        }
+    }
+}
@@ -2,36 +2,41 @@ package org.example.orchestrator_layer;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import okhttp3.*;
 import org.example.data_access_layer.Dbmanager;
+import org.example.service.BlogGeneratorService;
 import org.example.service.IndexService;
+import org.example.service.RecommendationWriter;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Recommendation Orchestrator
  * 基于用户兴趣和论文向量计算相似度，生成个性化推荐博客
+ * 评分是增量的：每个用户记录已评分的最大paper_embeddings.index_seq，每次只对之后新建立或重新建立索引的论文评分，
+ * 并与持久化在user_candidates中的候选论文合并，运行成本与新增论文数成正比而不是与论文总数成正比
  */
 public class RecommendationOrchestrator {
-    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
-    private static final String GENERATE_BLOG_API_URL = "http://localhost:8080/api/papers";
+    private static final String CONFIG_FILE = "orchestrator.properties";
+    // 每个用户每次生成的推荐博客数
+    private static final int TOP_N = 3;
 
-    private final OkHttpClient httpClient;
     private final ObjectMapper objectMapper;
     private final Dbmanager dbManager;
     private final IndexService indexService;
+    private final RecommendationWriter recommendationWriter;
+
+    private int candidateHeapSize;
+    private int scanChunkSize;
+    private int userChunkSize;
 
     public RecommendationOrchestrator() {
-        // 配置HTTP客户端
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(120, TimeUnit.SECONDS)  // 生成博客需要较长时间
-                .writeTimeout(30, TimeUnit.SECONDS)
-                .build();
         this.objectMapper = new ObjectMapper();
         this.dbManager = new Dbmanager();
+        this.recommendationWriter = new RecommendationWriter(new BlogGeneratorService(), dbManager);
+        loadConfiguration();
 
         // 初始化向量索引服务
         try {
@@ -43,89 +48,362 @@ public class RecommendationOrchestrator {
         }
     }
 
+    /**
+     * 从配置文件加载候选集大小和扫描分块大小
+     */
+    private void loadConfiguration() {
+        Properties config = new Properties();
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (input != null) {
+                config.load(input);
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not load " + CONFIG_FILE + ": " + e.getMessage());
+        }
+
+        this.candidateHeapSize = Math.max(TOP_N, Integer.parseInt(config.getProperty("recommend.candidate_heap_size", "50")));
+        this.scanChunkSize = Integer.parseInt(config.getProperty("recommend.scan_chunk_size", "1000"));
+        this.userChunkSize = Integer.parseInt(config.getProperty("recommend.user_chunk_size", "500"));
+    }
+
     /**
      * 生成所有用户的个性化推荐
      */
     public void generateRecommendations() {
+        generateRecommendations((OrchestratorRun) null);
+    }
+
+    /**
+     * 生成所有用户的个性化推荐，并向运行登记各阶段的进度
+     * 用户按user_id键集分页，每次只读取一块（recommend.user_chunk_size）评分所需的字段并处理完再读下一块，
+     * 内存占用与用户总数无关
+     * @param run 登记的运行，可以为null
+     */
+    public void generateRecommendations(OrchestratorRun run) {
         try {
+            OrchestratorRun.Counter prepared = run != null ? run.addCounter("prepare", dbManager.countUsers()) : null;
+            OrchestratorRun.Counter scored = run != null ? run.addCounter("score", -1) : null;
+            OrchestratorRun.Counter processed = run != null ? run.addCounter("recommend", -1) : null;
             System.out.println("🎯 Starting Recommendation Orchestrator...");
 
-            // 获取所有用户
-            List<Map<String, Object>> users = dbManager.getAllUsers(1, 1000); // 获取所有用户
-            System.out.println("📊 Found " + users.size() + " users to process");
+            int afterUserId = 0;
+            int total = 0;
+            while (run == null || !run.isCancelled()) {
+                List<Map<String, Object>> users = dbManager.getScoringUsersAfter(afterUserId, userChunkSize);
+                if (users.isEmpty()) {
+                    break;
+                }
+                total += users.size();
+                System.out.println("📊 Processing users " + (total - users.size() + 1) + "-" + total);
+                processUsers(users, run, prepared, scored, processed);
 
-            // 获取所有已建立索引的论文
-            List<Map<String, Object>> indexedPapers = getIndexedPapers();
-            System.out.println("📄 Found " + indexedPapers.size() + " indexed papers");
+                afterUserId = (Integer) users.get(users.size() - 1).get("user_id");
+                if (users.size() < userChunkSize) {
+                    break;
+                }
+            }
 
-            if (indexedPapers.isEmpty()) {
-                System.out.println("⚠️ No indexed papers found. Please run Fetch Orchestrator first.");
-                return;
+            if (run == null || !run.isCancelled()) {
+                System.out.println("🎉 Recommendation Orchestrator completed successfully for " + total + " users!");
             }
+        } catch (Exception e) {
+            System.err.println("❌ Error in generateRecommendations: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-            // 为每个用户生成推荐
+    /**
+     * 为指定用户生成个性化推荐
+     * @param users 用户列表（至少包含user_id、username、interest）
+     */
+    public void generateRecommendations(List<Map<String, Object>> users) {
+        generateRecommendations(users, null);
+    }
+
+    /**
+     * 为指定用户生成个性化推荐，并向运行登记各阶段的进度；运行被取消时在下一个用户或论文块之前结束
+     * @param users 用户列表（至少包含user_id、username、interest）
+     * @param run 登记的运行，可以为null
+     */
+    public void generateRecommendations(List<Map<String, Object>> users, OrchestratorRun run) {
+        OrchestratorRun.Counter prepared = run != null ? run.addCounter("prepare", users.size()) : null;
+        OrchestratorRun.Counter scored = run != null ? run.addCounter("score", -1) : null;
+        OrchestratorRun.Counter processed = run != null ? run.addCounter("recommend", -1) : null;
+        System.out.println("🎯 Starting Recommendation Orchestrator...");
+        System.out.println("📊 Found " + users.size() + " users to process");
+        if (processUsers(users, run, prepared, scored, processed)) {
+            System.out.println("🎉 Recommendation Orchestrator completed successfully!");
+        }
+    }
+
+    /**
+     * 准备一组用户、对新论文评分并生成推荐，进度累加到给定的计数阶段（可以为null）
+     * @return 是否处理完全部用户（被取消或失败时返回false）
+     */
+    private boolean processUsers(List<Map<String, Object>> users, OrchestratorRun run, OrchestratorRun.Counter prepared,
+                                 OrchestratorRun.Counter scored, OrchestratorRun.Counter processed) {
+        try {
+            // 准备每个用户的兴趣向量、评分水位和候选集；已推荐论文和候选集整块批量读取
+            List<Integer> userIds = new ArrayList<>(users.size());
             for (Map<String, Object> user : users) {
-                try {
-                    int userId = (Integer) user.get("user_id");
-                    String username = (String) user.get("username");
-                    String interest = (String) user.get("interest");
+                userIds.add((Integer) user.get("user_id"));
+            }
+            Map<Integer, Set<Integer>> recommendedByUser = dbManager.getRecommendedPaperIdsForUsers(userIds);
+            Map<Integer, List<Map<String, Object>>> candidatesByUser = dbManager.getUserCandidatesForUsers(userIds);
+
+            List<UserScoring> scorings = new ArrayList<>();
+            for (Map<String, Object> user : users) {
+                if (run != null && run.isCancelled()) {
+                    return false;
+                }
+                int userId = (Integer) user.get("user_id");
+                UserScoring scoring = prepareUser(user, recommendedByUser.getOrDefault(userId, new HashSet<>()),
+                        candidatesByUser.getOrDefault(userId, List.of()));
+                if (scoring != null) {
+                    scorings.add(scoring);
+                }
+                if (prepared != null) {
+                    prepared.add(1);
+                }
+            }
+            if (scorings.isEmpty()) {
+                System.out.println("⚠️ No users with interests to process.");
+                return true;
+            }
+
+            // 从最低水位开始分块读取新论文向量，每个向量只解析一次，对水位之前的用户评分
+            int scanned = scoreNewPapers(scorings, run, scored);
+            System.out.println("📄 Scored " + scanned + " newly indexed papers");
+
+            // 保存候选集和水位，然后为得分最高的论文生成推荐博客
+            if (processed != null) {
+                processed.setTotal(Math.max(processed.getTotal(), 0) + scorings.size());
+            }
+            for (UserScoring scoring : scorings) {
+                if (run != null && run.isCancelled()) {
+                    return false;
+                }
+                processUser(scoring);
+                if (processed != null) {
+                    processed.add(1);
+                }
+            }
+            return true;
+
+        } catch (Exception e) {
+            System.err.println("❌ Error in generateRecommendations: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * 只刷新单个用户的候选集和水位，不生成推荐博客（用于兴趣变化后立即更新候选集）
+     * 兴趣向量已变化时从头评分，否则只对水位之后的新论文评分
+     * @param userId 用户ID
+     * @return 候选论文数量，用户不存在或没有兴趣时返回-1
+     * @throws Exception 如果评分或保存失败
+     */
+    public int refreshCandidates(int userId) throws Exception {
+        Map<String, Object> user = dbManager.getUserById(userId);
+        if (user == null) {
+            return -1;
+        }
+        UserScoring scoring = prepareUser(user, dbManager.getRecommendedPaperIds(userId), dbManager.getUserCandidates(userId));
+        if (scoring == null) {
+            return -1;
+        }
+
+        scoreNewPapers(List.of(scoring), null, null);
+        return saveCandidates(scoring).size();
+    }
+
+    /**
+     * 准备用户的评分状态：兴趣向量、水位和已持久化的候选论文
+     * 用户Map中带有游标查询投影的interest_embedding和scoring_state时直接使用，否则逐个查询
+     * @param recommended 用户已推荐过的论文ID
+     * @param persistedCandidates 用户已持久化的候选论文（每项包含paper_id和score）
+     * @return 评分状态，用户没有兴趣或加载失败时返回null
+     */
+    @SuppressWarnings("unchecked")
+    private UserScoring prepareUser(Map<String, Object> user, Set<Integer> recommended,
+                                    List<Map<String, Object>> persistedCandidates) {
+        int userId = (Integer) user.get("user_id");
+        String username = (String) user.get("username");
+        String interest = (String) user.get("interest");
+
+        if (interest == null || interest.trim().isEmpty()) {
+            System.out.println("   ⚠️ User " + username + " has no interest specified, skipping...");
+            return null;
+        }
+
+        try {
+            // 游标已带出最新的兴趣向量时直接使用，否则从缓存获取或实时生成
+            Map<String, Object> interestEmbedding = (Map<String, Object>) user.get("interest_embedding");
+            if (interestEmbedding == null) {
+                interestEmbedding = generateInterestVector(userId, interest);
+            }
+            int interestEmbeddingId = (Integer) interestEmbedding.get("id");
+
+            UserScoring scoring = new UserScoring(user, parseEmbedding((String) interestEmbedding.get("embedding")),
+                    interestEmbeddingId, candidateHeapSize);
+            scoring.recommended = recommended;
+
+            Map<String, Object> state = user.containsKey("scoring_state")
+                    ? (Map<String, Object>) user.get("scoring_state") : dbManager.getScoringState(userId);
+            boolean incremental = state != null && Objects.equals(state.get("interest_embedding_id"), interestEmbeddingId);
+            if (incremental) {
+                scoring.watermark = (Integer) state.get("last_index_seq");
+            } else {
+                // 首次评分或兴趣向量已变化，旧候选集的得分不再有效，从头评分
+                System.out.println("   🔄 Full scoring for user " + userId + " (new or changed interest)");
+            }
+            for (Map<String, Object> candidate : persistedCandidates) {
+                int paperId = (Integer) candidate.get("paper_id");
+                scoring.persistedPaperIds.add(paperId);
+                // 已推荐或得分已失效的候选不进入候选集，保存时删除
+                if (incremental && !scoring.recommended.contains(paperId)) {
+                    scoring.candidates.offer(paperId, (Double) candidate.get("score"));
+                }
+            }
+            return scoring;
+        } catch (Exception e) {
+            System.err.println("   ❌ Error preparing user " + username + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 对所有用户水位之后的论文向量评分，合并进各自的候选集
+     * 运行被取消时停止扫描，各用户的水位只推进到已扫描的位置
+     * @param run 登记的运行，可以为null
+     * @param scored 已评分论文数的计数阶段，可以为null
+     * @return 读取的论文向量数
+     */
+    private int scoreNewPapers(List<UserScoring> scorings, OrchestratorRun run, OrchestratorRun.Counter scored) throws Exception {
+        int afterSeq = Integer.MAX_VALUE;
+        for (UserScoring scoring : scorings) {
+            afterSeq = Math.min(afterSeq, scoring.watermark);
+        }
 
-                    System.out.println("👤 Processing user: " + username + " (ID: " + userId + ")");
+        int scanned = 0;
+        while (run == null || !run.isCancelled()) {
+            List<Map<String, Object>> chunk = dbManager.getPaperEmbeddingsAfter(afterSeq, scanChunkSize);
+            if (chunk.isEmpty()) {
+                break;
+            }
 
-                    if (interest == null || interest.trim().isEmpty()) {
-                        System.out.println("   ⚠️ User " + username + " has no interest specified, skipping...");
+            for (Map<String, Object> row : chunk) {
+                int indexSeq = (Integer) row.get("index_seq");
+                int paperId = (Integer) row.get("paper_id");
+                double[] paperVector;
+                try {
+                    paperVector = parseEmbedding((String) row.get("embedding"));
+                } catch (IOException e) {
+                    System.err.println("   ⚠️ Error parsing embedding for paper " + paperId + ": " + e.getMessage());
+                    continue;
+                }
+                double paperNorm = norm(paperVector);
+
+                for (UserScoring scoring : scorings) {
+                    if (indexSeq <= scoring.watermark || scoring.recommended.contains(paperId)
+                            || paperVector.length != scoring.vector.length) {
                         continue;
                     }
+                    scoring.candidates.offer(paperId, cosineSimilarity(scoring.vector, scoring.norm, paperVector, paperNorm));
+                }
+            }
 
-                    // 生成用户兴趣的向量（优先从缓存获取）
-                    List<Double> userInterestVector = generateInterestVector(userId, interest);
-
-                    // 计算与所有论文的相似度，获取top3（排除已推荐过的论文）
-                    List<PaperSimilarity> topSimilarPapers = findTopSimilarPapers(userId, userInterestVector, indexedPapers, 3);
-
-                    // 为top3论文生成推荐博客
-                    for (PaperSimilarity paperSim : topSimilarPapers) {
-                        try {
-                            generateRecommendationBlog(userId, paperSim.paperId, paperSim.similarity);
-                            // 添加延迟避免API限流
-                            Thread.sleep(2000);
-                        } catch (Exception e) {
-                            System.err.println("   ❌ Failed to generate blog for user " + userId + ", paper " + paperSim.paperId + ": " + e.getMessage());
-                        }
-                    }
+            afterSeq = (Integer) chunk.get(chunk.size() - 1).get("index_seq");
+            scanned += chunk.size();
+            if (scored != null) {
+                scored.add(chunk.size());
+            }
+            for (UserScoring scoring : scorings) {
+                scoring.scannedUpTo = Math.max(scoring.scannedUpTo, afterSeq);
+            }
+            if (chunk.size() < scanChunkSize) {
+                break;
+            }
+        }
+        return scanned;
+    }
+
+    /**
+     * 保存用户的候选集和水位，并为得分最高的论文生成推荐博客
+     */
+    private void processUser(UserScoring scoring) {
+        int userId = scoring.userId;
+        String username = (String) scoring.user.get("username");
+        try {
+            System.out.println("👤 Processing user: " + username + " (ID: " + userId + ")");
 
-                    System.out.println("   ✅ Completed recommendations for user: " + username);
+            List<PaperSimilarity> candidates = saveCandidates(scoring);
 
+            // 为top3论文生成推荐博客
+            int actualTopN = Math.min(TOP_N, candidates.size());
+            if (actualTopN < TOP_N) {
+                System.out.println("   ℹ️ Only found " + actualTopN + " unrecommended papers for user " + userId + " (requested " + TOP_N + ")");
+            }
+            for (PaperSimilarity paperSim : candidates.subList(0, actualTopN)) {
+                try {
+                    generateRecommendationBlog(userId, paperSim.paperId, paperSim.similarity);
+                    dbManager.deleteUserCandidate(userId, paperSim.paperId);
+                    // 添加延迟避免API限流
+                    Thread.sleep(2000);
                 } catch (Exception e) {
-                    System.err.println("   ❌ Error processing user " + user.get("username") + ": " + e.getMessage());
+                    System.err.println("   ❌ Failed to generate blog for user " + userId + ", paper " + paperSim.paperId + ": " + e.getMessage());
                 }
             }
 
-            System.out.println("🎉 Recommendation Orchestrator completed successfully!");
+            System.out.println("   ✅ Completed recommendations for user: " + username);
 
         } catch (Exception e) {
-            System.err.println("❌ Error in generateRecommendations: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("   ❌ Error processing user " + username + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 写入候选集中的论文，删除开始评分时已持久化但不在候选集中的论文（被挤出或已失效），然后推进水位；
+     * 评分期间反向匹配推送的候选不受影响
+     * @return 按相似度降序排列的候选论文
+     */
+    private List<PaperSimilarity> saveCandidates(UserScoring scoring) throws SQLException {
+        List<PaperSimilarity> candidates = scoring.candidates.toDescendingList();
+        Set<Integer> removed = new HashSet<>(scoring.persistedPaperIds);
+        for (PaperSimilarity candidate : candidates) {
+            removed.remove(candidate.paperId);
+        }
+        dbManager.saveUserCandidates(scoring.userId, toCandidateRows(candidates), removed,
+                Math.max(scoring.watermark, scoring.scannedUpTo), scoring.interestEmbeddingId);
+        return candidates;
+    }
+
+    private List<Map<String, Object>> toCandidateRows(List<PaperSimilarity> candidates) {
+        List<Map<String, Object>> rows = new ArrayList<>(candidates.size());
+        for (PaperSimilarity candidate : candidates) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("paper_id", candidate.paperId);
+            row.put("score", candidate.similarity);
+            rows.add(row);
         }
+        return rows;
     }
 
     /**
      * 生成用户兴趣的向量表示（优先从缓存获取）
      * @param userId 用户ID
      * @param interest 用户兴趣字符串
-     * @return 向量列表
+     * @return 兴趣向量记录，包含id和embedding（JSON字符串）
      */
-    private List<Double> generateInterestVector(int userId, String interest) throws Exception {
+    private Map<String, Object> generateInterestVector(int userId, String interest) throws Exception {
         System.out.println("   🔄 Getting vector for user " + userId + " interest: " + interest);
 
         // 首先尝试从interest_embeddings表获取已缓存的向量
-        if (dbManager.isUserInterestIndexed(userId)) {
+        Map<String, Object> embeddingData = dbManager.getUserInterestEmbedding(userId);
+        if (embeddingData != null) {
             System.out.println("   📋 Found cached interest embedding for user " + userId);
-            Map<String, Object> embeddingData = dbManager.getUserInterestEmbedding(userId);
-            if (embeddingData != null) {
-                String embeddingJson = (String) embeddingData.get("embedding");
-                return parseEmbeddingJson(embeddingJson);
-            }
+            return embeddingData;
         }
 
         // 如果没有缓存的向量，则实时生成并存储
@@ -142,177 +420,148 @@ public class RecommendationOrchestrator {
             System.err.println("   ⚠️ Failed to cache interest embedding for user " + userId);
         }
 
-        return embedding;
-    }
-
-    /**
-     * 获取所有已建立索引的论文及其向量
-     * @return 论文信息列表，包含向量数据
-     */
-    private List<Map<String, Object>> getIndexedPapers() throws Exception {
-        List<Map<String, Object>> indexedPapers = new ArrayList<>();
-
-        // 获取所有论文
-        List<Map<String, Object>> allPapers = dbManager.getAllPapers(1, 10000); // 获取所有论文
-
-        for (Map<String, Object> paper : allPapers) {
-            int paperId = (Integer) paper.get("paper_id");
-
-            // 检查是否已建立索引
-            if (dbManager.isPaperIndexed(paperId)) {
-                // 获取向量数据
-                Map<String, Object> embeddingData = dbManager.getPaperEmbedding(paperId);
-                if (embeddingData != null) {
-                    // 将向量数据添加到论文信息中
-                    paper.put("embedding", embeddingData);
-                    indexedPapers.add(paper);
-                }
-            }
+        embeddingData = dbManager.getUserInterestEmbedding(userId);
+        if (embeddingData == null) {
+            throw new IOException("Interest embedding for user " + userId + " could not be stored");
         }
-
-        return indexedPapers;
+        return embeddingData;
     }
 
     /**
      * 计算向量之间的余弦相似度
      * @param vec1 向量1
+     * @param norm1 向量1的模
      * @param vec2 向量2
+     * @param norm2 向量2的模
      * @return 相似度分数 (0-1之间，1表示完全相似)
      */
-    private double cosineSimilarity(List<Double> vec1, List<Double> vec2) {
-        if (vec1.size() != vec2.size()) {
-            throw new IllegalArgumentException("Vectors must have the same dimension");
+    private double cosineSimilarity(double[] vec1, double norm1, double[] vec2, double norm2) {
+        if (norm1 == 0.0 || norm2 == 0.0) {
+            return 0.0; // 避免除零错误
         }
 
         double dotProduct = 0.0;
-        double norm1 = 0.0;
-        double norm2 = 0.0;
-
-        for (int i = 0; i < vec1.size(); i++) {
-            dotProduct += vec1.get(i) * vec2.get(i);
-            norm1 += Math.pow(vec1.get(i), 2);
-            norm2 += Math.pow(vec2.get(i), 2);
+        for (int i = 0; i < vec1.length; i++) {
+            dotProduct += vec1[i] * vec2[i];
         }
+        return dotProduct / (norm1 * norm2);
+    }
 
-        if (norm1 == 0.0 || norm2 == 0.0) {
-            return 0.0; // 避免除零错误
+    private static double norm(double[] vector) {
+        double sum = 0.0;
+        for (double value : vector) {
+            sum += value * value;
         }
-
-        return dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2));
+        return Math.sqrt(sum);
     }
 
     /**
      * 解析存储的向量JSON字符串
      * @param embeddingJson JSON字符串
-     * @return 向量列表
+     * @return 向量数组
      */
-    private List<Double> parseEmbeddingJson(String embeddingJson) throws IOException {
-        List<Double> embedding = new ArrayList<>();
+    private double[] parseEmbedding(String embeddingJson) throws IOException {
         JsonNode jsonNode = objectMapper.readTree(embeddingJson);
-
-        if (jsonNode.isArray()) {
-            for (JsonNode value : jsonNode) {
-                embedding.add(value.asDouble());
-            }
+        if (!jsonNode.isArray()) {
+            throw new IOException("Embedding is not a JSON array");
         }
 
+        double[] embedding = new double[jsonNode.size()];
+        for (int i = 0; i < embedding.length; i++) {
+            embedding[i] = jsonNode.get(i).asDouble();
+        }
         return embedding;
     }
 
     /**
-     * 查找最相似的top N篇论文（排除已推荐过的论文）
-     * @param userId 用户ID，用于去重检查
-     * @param userVector 用户兴趣向量
-     * @param papers 论文列表
-     * @param topN 返回的top N数量
-     * @return 最相似论文列表，按相似度降序排列
+     * 为指定用户和论文生成推荐博客
+     * @param userId 用户ID
+     * @param paperId 论文ID
+     * @param similarity 相似度分数
      */
-    private List<PaperSimilarity> findTopSimilarPapers(int userId,
-                                                      List<Double> userVector,
-                                                      List<Map<String, Object>> papers,
-                                                      int topN) throws Exception {
-        List<PaperSimilarity> similarities = new ArrayList<>();
-
-        for (Map<String, Object> paper : papers) {
-            try {
-                int paperId = (Integer) paper.get("paper_id");
-
-                // 检查用户是否已经收到过此论文的推荐，如果是则跳过
-                if (dbManager.isPaperAlreadyRecommended(userId, paperId)) {
-                    System.out.println("   ⏭️ Skipping paper " + paperId + " - already recommended to user " + userId);
-                    continue;
-                }
-
-                @SuppressWarnings("unchecked")
-                Map<String, Object> embeddingData = (Map<String, Object>) paper.get("embedding");
-                String embeddingJson = (String) embeddingData.get("embedding");
-
-                List<Double> paperVector = parseEmbeddingJson(embeddingJson);
-                double similarity = cosineSimilarity(userVector, paperVector);
-
-                String title = (String) paper.get("title");
-
-                similarities.add(new PaperSimilarity(paperId, title, similarity));
+    private void generateRecommendationBlog(int userId, int paperId, double similarity) throws Exception {
+        System.out.println("   📝 Generating blog for user " + userId + ", paper " + paperId +
+                          " (similarity: " + String.format("%.3f", similarity) + ")");
 
-            } catch (Exception e) {
-                System.err.println("   ⚠️ Error calculating similarity for paper " + paper.get("paper_id") + ": " + e.getMessage());
-            }
+        Map<String, Object> paper = dbManager.getPaperById(paperId);
+        if (paper == null) {
+            throw new IOException("Paper " + paperId + " no longer exists");
         }
 
-        // 按相似度降序排序
-        similarities.sort((a, b) -> Double.compare(b.similarity, a.similarity));
+        RecommendationWriter.RecommendationResult recommendation =
+                recommendationWriter.writeRecommendation(userId, paper);
 
-        // 返回top N，如果不够则返回所有可用的
-        int actualTopN = Math.min(topN, similarities.size());
-        if (actualTopN < topN) {
-            System.out.println("   ℹ️ Only found " + actualTopN + " unrecommended papers for user " + userId + " (requested " + topN + ")");
-        }
+        System.out.println("   ✅ Blog " + (recommendation.isCached() ? "reused from paper cache" : "generated successfully")
+                + " for user " + userId + ", paper " + paperId);
+        System.out.println("   📋 Created recommendation with ID: " + recommendation.getRecommendationId());
+    }
 
-        return similarities.subList(0, actualTopN);
+    /**
+     * 单个用户在本次运行中的评分状态
+     */
+    private static class UserScoring {
+        final int userId;
+        final Map<String, Object> user;
+        final double[] vector;
+        final double norm;
+        final int interestEmbeddingId;
+        final CandidateHeap candidates;
+        Set<Integer> recommended = Collections.emptySet();
+        // 开始评分时user_candidates中已有的论文
+        final Set<Integer> persistedPaperIds = new HashSet<>();
+        // 已评分的最大paper_embeddings.index_seq
+        int watermark;
+        // 本次扫描到的最大paper_embeddings.index_seq
+        int scannedUpTo;
+
+        UserScoring(Map<String, Object> user, double[] vector, int interestEmbeddingId, int heapSize) {
+            this.userId = (Integer) user.get("user_id");
+            this.user = user;
+            this.vector = vector;
+            this.norm = norm(vector);
+            this.interestEmbeddingId = interestEmbeddingId;
+            this.candidates = new CandidateHeap(heapSize);
+        }
     }
 
     /**
-     * 为指定用户和论文生成推荐博客
-     * @param userId 用户ID
-     * @param paperId 论文ID
-     * @param similarity 相似度分数
+     * 容量固定的最小堆，保留得分最高的候选论文
      */
-    private void generateRecommendationBlog(int userId, int paperId, double similarity) throws IOException {
-        System.out.println("   📝 Generating blog for user " + userId + ", paper " + paperId +
-                          " (similarity: " + String.format("%.3f", similarity) + ")");
+    private static class CandidateHeap {
+        private final int capacity;
+        private final PriorityQueue<PaperSimilarity> heap =
+                new PriorityQueue<>(Comparator.comparingDouble((PaperSimilarity p) -> p.similarity));
+        private final Set<Integer> paperIds = new HashSet<>();
+
+        CandidateHeap(int capacity) {
+            this.capacity = capacity;
+        }
 
-        // 构建请求体
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("user_id", userId);
-
-        String jsonBody = objectMapper.writeValueAsString(requestBody);
-
-        // 调用generate-blog API
-        String url = GENERATE_BLOG_API_URL + "/" + paperId + "/generate-blog";
-        Request request = new Request.Builder()
-                .url(url)
-                .post(RequestBody.create(jsonBody, JSON))
-                .addHeader("Content-Type", "application/json")
-                .build();
-
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (response.isSuccessful()) {
-                String responseBody = response.body().string();
-                System.out.println("   ✅ Blog generated successfully for user " + userId + ", paper " + paperId);
-
-                // 解析响应获取recommendation_id
-                JsonNode responseJson = objectMapper.readTree(responseBody);
-                if (responseJson.has("data") && responseJson.get("data").has("recommendation_id")) {
-                    int recommendationId = responseJson.get("data").get("recommendation_id").asInt();
-                    System.out.println("   📋 Created recommendation with ID: " + recommendationId);
-                }
-            } else {
-                String errorBody = response.body() != null ? response.body().string() : "Unknown error";
-                System.err.println("   ❌ Failed to generate blog for user " + userId + ", paper " + paperId +
-                                 ": HTTP " + response.code());
-                System.err.println("   Error details: " + errorBody);
+        /**
+         * 加入候选论文；论文已在候选集中时（反向匹配推送或重新索引后再次扫描到）以新的得分替换
+         */
+        void offer(int paperId, double similarity) {
+            if (paperIds.remove(paperId)) {
+                heap.removeIf(candidate -> candidate.paperId == paperId);
+            }
+            if (heap.size() < capacity) {
+                heap.add(new PaperSimilarity(paperId, similarity));
+                paperIds.add(paperId);
+            } else if (similarity > heap.peek().similarity) {
+                paperIds.remove(heap.poll().paperId);
+                heap.add(new PaperSimilarity(paperId, similarity));
+                paperIds.add(paperId);
             }
         }
+
+        /**
+         * @return 按相似度降序排列的候选论文
+         */
+        List<PaperSimilarity> toDescendingList() {
+            List<PaperSimilarity> sorted = new ArrayList<>(heap);
+            sorted.sort((a, b) -> Double.compare(b.similarity, a.similarity));
+            return sorted;
+        }
     }
 
     /**
@@ -320,12 +569,10 @@ public class RecommendationOrchestrator {
      */
     private static class PaperSimilarity {
         int paperId;
-        String title;
         double similarity;
 
-        PaperSimilarity(int paperId, String title, double similarity) {
+        PaperSimilarity(int paperId, double similarity) {
             this.paperId = paperId;
-            this.title = title;
             this.similarity = similarity;
         }
     }
@@ -0,0 +1,494 @@
+package org.example.orchestrator_layer;
+
+import org.example.data_access_layer.Dbmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * 推荐调度器
+ * 按users.frequency（小时）为每个用户维护下一次推荐时间next_due_at，保存在优先队列中；
+ * 调度线程每个tick只处理已到期的用户，处理后按频率安排下一次。
+ * 没有next_due_at的用户按user_id散列到一个频率周期内，使推荐负载在一天中均匀分布。
+ * 多节点部署时数据库是调度的依据：只有持有命名锁的节点执行tick，到期用户通过条件更新next_due_at原子领取；
+ * 各节点对调度的修改只会提前next_due_at，并定期从数据库重新加载。
+ * tick与全量推荐运行通过推荐批次锁互斥
+ */
+public class RecommendationScheduler {
+    private static final String CONFIG_FILE = "orchestrator.properties";
+    private static final long HOUR_MILLIS = 3600_000L;
+    private static final int DEFAULT_FREQUENCY_HOURS = 24;
+    private static final String LEADER_LOCK = "recommendation_scheduler";
+    // tick处理用户期间和全量推荐运行期间持有
+    private static final String BATCH_LOCK = "recommendation_batch";
+    private static final int BATCH_LOCK_WAIT_SECONDS = 5;
+
+    private static RecommendationScheduler instance;
+
+    private final Dbmanager dbManager;
+    private final RecommendationOrchestrator orchestrator;
+    private final long tickMillis;
+    private final long refreshMillis;
+    private final int maxUsersPerTick;
+    // 分片推荐未启用时为0
+    private final int shardCount;
+
+    // 队列中可能有同一用户的过期条目，以dueAtByUser中的时间为准
+    private final PriorityQueue<DueEntry> queue = new PriorityQueue<>((a, b) -> Long.compare(a.dueAt, b.dueAt));
+    private final Map<Integer, Long> dueAtByUser = new HashMap<>();
+    // 频率变更或提前推荐后待写回数据库的下一次推荐时间，由调度线程写入
+    private final Map<Integer, PendingDue> pendingPersist = new HashMap<>();
+
+    private Thread tickThread;
+    private volatile boolean running;
+    // 以下字段只由调度线程访问
+    private boolean leader;
+    private boolean paused;
+
+    /**
+     * 启动全局调度器（scheduler.enabled=false时不启动）
+     * @return 调度器，未启用时返回null
+     */
+    public static synchronized RecommendationScheduler start() {
+        if (instance != null) {
+            return instance;
+        }
+        Properties config = loadConfiguration();
+        if (!Boolean.parseBoolean(config.getProperty("scheduler.enabled", "true"))) {
+            System.out.println("RecommendationScheduler: Disabled by configuration");
+            return null;
+        }
+        instance = new RecommendationScheduler(config);
+        instance.startThread();
+        return instance;
+    }
+
+    /**
+     * 停止全局调度器
+     */
+    public static synchronized void stop() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    /**
+     * 获取正在运行的调度器
+     * @return 调度器，未运行时返回null
+     */
+    public static synchronized RecommendationScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * 持有推荐批次锁执行全量推荐：先等待各节点正在进行的tick结束，运行期间所有节点的tick暂停，同一用户不会被重复处理
+     * @param run 全量推荐运行
+     * @param task 推荐任务
+     */
+    public static void runExclusive(OrchestratorRun run, OrchestratorRunManager.RunTask task) throws Exception {
+        Dbmanager lockDb = new Dbmanager();
+        try {
+            while (!lockDb.acquireNamedLock(BATCH_LOCK, BATCH_LOCK_WAIT_SECONDS)) {
+                run.setNote("Waiting for a recommendation scheduler tick to finish");
+                if (run.isCancelled()) {
+                    throw new InterruptedException("Run cancelled");
+                }
+            }
+            run.setNote(null);
+            try {
+                task.run(run);
+            } finally {
+                lockDb.releaseNamedLock(BATCH_LOCK);
+            }
+        } finally {
+            lockDb.closeConnection();
+        }
+    }
+
+    private static Properties loadConfiguration() {
+        Properties config = new Properties();
+        try (InputStream input = RecommendationScheduler.class.getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (input != null) {
+                config.load(input);
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not load " + CONFIG_FILE + ": " + e.getMessage());
+        }
+        return config;
+    }
+
+    private RecommendationScheduler(Properties config) {
+        this.dbManager = new Dbmanager();
+        this.orchestrator = new RecommendationOrchestrator();
+        this.tickMillis = Long.parseLong(config.getProperty("scheduler.tick_seconds", "60")) * 1000;
+        this.refreshMillis = Long.parseLong(config.getProperty("scheduler.refresh_minutes", "10")) * 60_000;
+        this.maxUsersPerTick = Integer.parseInt(config.getProperty("scheduler.max_users_per_tick", "50"));
+        this.shardCount = Boolean.parseBoolean(config.getProperty("recommend.shards.enabled", "true"))
+                ? Integer.parseInt(config.getProperty("recommend.shards.count", "16")) : 0;
+    }
+
+    private void startThread() {
+        running = true;
+        tickThread = new Thread(this::runLoop, "recommendation-scheduler");
+        tickThread.setDaemon(true);
+        tickThread.start();
+        System.out.println("⏰ RecommendationScheduler started (tick " + tickMillis / 1000 + "s, at most "
+                + maxUsersPerTick + " users per tick)");
+    }
+
+    private void shutdown() {
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        if (tickThread != null) {
+            tickThread.interrupt();
+        }
+    }
+
+    /**
+     * 用户修改推荐频率后重新安排：新频率更短时提前到 现在+新频率，否则保持已安排的时间
+     * @param userId 用户ID
+     * @param frequency 新频率（小时）
+     * @return 重新安排后的下一次推荐时间
+     */
+    public synchronized Timestamp reschedule(int userId, int frequency) {
+        long dueAt = System.currentTimeMillis() + frequencyMillis(frequency);
+        Long current = dueAtByUser.get(userId);
+        if (current != null && current < dueAt) {
+            dueAt = current;
+        }
+        enqueue(userId, dueAt);
+        pendingPersist.put(userId, new PendingDue(dueAt, null));
+        notifyAll();
+        return new Timestamp(dueAt);
+    }
+
+    /**
+     * 有新论文与用户兴趣高度匹配时提前该用户的下一次推荐
+     * 已安排的时间足够早时不做调整；距上次被调度领取不足minIntervalMillis时写回数据库时放弃
+     * @param userId 用户ID
+     * @param withinMillis 最迟在多少毫秒后处理
+     * @param minIntervalMillis 两次处理之间的最小间隔
+     * @return 是否提交了提前
+     */
+    public synchronized boolean expedite(int userId, long withinMillis, long minIntervalMillis) {
+        long now = System.currentTimeMillis();
+        Long current = dueAtByUser.get(userId);
+        long dueAt = now + withinMillis;
+        if (current == null || current <= dueAt) {
+            // 不在队列中（正在处理或尚未加载）或已经足够早
+            return false;
+        }
+        enqueue(userId, dueAt);
+        pendingPersist.put(userId, new PendingDue(dueAt, new Timestamp(now - minIntervalMillis)));
+        notifyAll();
+        return true;
+    }
+
+    private void runLoop() {
+        long nextRefreshAt = 0;
+        try {
+            while (running) {
+                long now = System.currentTimeMillis();
+                if (updateLeadership()) {
+                    // 刚成为执行tick的节点，内存中的调度可能已被其他节点修改
+                    nextRefreshAt = 0;
+                }
+                persistPending();
+                if (now >= nextRefreshAt) {
+                    refreshUsers(now);
+                    nextRefreshAt = now + refreshMillis;
+                }
+
+                int processed = leader ? runTick(now) : 0;
+
+                // 本轮达到上限说明还有到期用户，立即进入下一轮
+                if (processed < maxUsersPerTick) {
+                    synchronized (this) {
+                        if (pendingPersist.isEmpty()) {
+                            wait(tickMillis);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // 连接关闭时释放命名锁，其他节点接管调度
+            dbManager.closeConnection();
+            System.out.println("RecommendationScheduler stopped");
+        }
+    }
+
+    /**
+     * 竞争执行tick的命名锁；锁属于调度线程的连接，节点崩溃或连接断开时其他节点接管
+     * @return 是否刚成为执行tick的节点
+     */
+    private boolean updateLeadership() {
+        boolean wasLeader = leader;
+        try {
+            leader = dbManager.holdsNamedLock(LEADER_LOCK) || dbManager.acquireNamedLock(LEADER_LOCK, 0);
+        } catch (SQLException e) {
+            System.err.println("RecommendationScheduler: Failed to check scheduler lock: " + e.getMessage());
+            leader = false;
+        }
+        if (leader != wasLeader) {
+            System.out.println(leader ? "⏰ This node now runs recommendation ticks"
+                    : "⏰ Recommendation ticks handed over to another node");
+        }
+        return leader && !wasLeader;
+    }
+
+    /**
+     * 执行一次tick：全量推荐运行进行中（持有批次锁或还有未完成的分片）时跳过，到期用户留在队列中
+     * @return 本轮取出的到期用户数
+     */
+    private int runTick(long now) {
+        boolean locked = false;
+        try {
+            locked = (shardCount == 0 || dbManager.countPendingShards(shardCount) == 0)
+                    && dbManager.acquireNamedLock(BATCH_LOCK, 0);
+        } catch (SQLException e) {
+            System.err.println("RecommendationScheduler: Failed to check recommendation runs: " + e.getMessage());
+        }
+        if (!locked) {
+            if (!paused) {
+                System.out.println("⏸️ Recommendation ticks paused while a full recommendation run is active");
+                paused = true;
+            }
+            return 0;
+        }
+        if (paused) {
+            System.out.println("▶️ Recommendation ticks resumed");
+            paused = false;
+        }
+
+        try {
+            List<Integer> due = pollDue(now);
+            if (!due.isEmpty()) {
+                runDueUsers(due, now);
+            }
+            return due.size();
+        } finally {
+            try {
+                dbManager.releaseNamedLock(BATCH_LOCK);
+            } catch (SQLException e) {
+                System.err.println("RecommendationScheduler: Failed to release batch lock: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 从数据库加载用户：新用户加入队列（没有next_due_at时分散安排并写回），已删除的用户移出，
+     * 其他节点修改或领取过的用户以数据库中的时间为准
+     */
+    private void refreshUsers(long now) {
+        List<Map<String, Object>> schedules;
+        try {
+            schedules = dbManager.getUserSchedules();
+        } catch (SQLException e) {
+            System.err.println("RecommendationScheduler: Failed to load user schedules: " + e.getMessage());
+            return;
+        }
+
+        Set<Integer> present = new HashSet<>();
+        Map<Integer, Long> initialDue = new HashMap<>();
+        synchronized (this) {
+            for (Map<String, Object> schedule : schedules) {
+                int userId = (Integer) schedule.get("user_id");
+                present.add(userId);
+                if (pendingPersist.containsKey(userId)) {
+                    // 本节点尚未写回的修改优先
+                    continue;
+                }
+                Timestamp nextDueAt = (Timestamp) schedule.get("next_due_at");
+                Long current = dueAtByUser.get(userId);
+                if (nextDueAt != null) {
+                    // 数据库中的时间精确到秒
+                    if (current == null || Math.abs(current - nextDueAt.getTime()) >= 1000) {
+                        enqueue(userId, nextDueAt.getTime());
+                    }
+                } else if (current == null) {
+                    long dueAt = now + spreadOffset(userId, frequencyMillis((Integer) schedule.get("frequency")));
+                    initialDue.put(userId, dueAt);
+                    enqueue(userId, dueAt);
+                }
+            }
+            dueAtByUser.keySet().retainAll(present);
+        }
+
+        for (Map.Entry<Integer, Long> entry : initialDue.entrySet()) {
+            persistDueAt(entry.getKey(), new PendingDue(entry.getValue(), null));
+        }
+        if (!initialDue.isEmpty()) {
+            System.out.println("⏰ Scheduled first recommendations for " + initialDue.size() + " users");
+        }
+    }
+
+    /**
+     * 取出已到期的用户（最多maxUsersPerTick个）
+     */
+    private synchronized List<Integer> pollDue(long now) {
+        List<Integer> due = new ArrayList<>();
+        while (due.size() < maxUsersPerTick && !queue.isEmpty() && queue.peek().dueAt <= now) {
+            DueEntry entry = queue.poll();
+            int userId = entry.userId;
+            Long dueAt = dueAtByUser.get(userId);
+            if (dueAt != null && dueAt == entry.dueAt) {
+                dueAtByUser.remove(userId);
+                due.add(userId);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * 领取到期用户并生成推荐：领取时按各自频率把next_due_at写为下一次的时间，
+     * 其他节点已领取或推迟了的用户跳过并以数据库中的时间重新入队
+     */
+    private void runDueUsers(List<Integer> userIds, long tickStartedAt) {
+        Timestamp claimedAt = new Timestamp(tickStartedAt);
+        List<Map<String, Object>> users = new ArrayList<>();
+        Map<Integer, Long> nextDueAtByUser = new HashMap<>();
+        for (int userId : userIds) {
+            try {
+                Map<String, Object> user = dbManager.getUserById(userId);
+                if (user == null) {
+                    continue;
+                }
+                // 以本轮开始时间为基准，避免处理耗时让间隔逐渐漂移
+                long nextDueAt = tickStartedAt + frequencyMillis((Integer) user.get("frequency"));
+                if (!dbManager.claimDueUser(userId, claimedAt, new Timestamp(nextDueAt))) {
+                    resync(userId);
+                    continue;
+                }
+                users.add(user);
+                nextDueAtByUser.put(userId, nextDueAt);
+            } catch (SQLException e) {
+                System.err.println("RecommendationScheduler: Failed to claim user " + userId + ": " + e.getMessage());
+                resync(userId);
+            }
+        }
+        if (users.isEmpty()) {
+            return;
+        }
+
+        System.out.println("⏰ Recommendation tick: " + users.size() + " users due");
+        orchestrator.generateRecommendations(users);
+
+        synchronized (this) {
+            for (Map.Entry<Integer, Long> entry : nextDueAtByUser.entrySet()) {
+                // 处理期间频率被修改过时保留reschedule安排的时间
+                if (!dueAtByUser.containsKey(entry.getKey())) {
+                    enqueue(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    private void persistPending() {
+        Map<Integer, PendingDue> pending;
+        synchronized (this) {
+            if (pendingPersist.isEmpty()) {
+                return;
+            }
+            pending = new HashMap<>(pendingPersist);
+            pendingPersist.clear();
+        }
+        for (Map.Entry<Integer, PendingDue> entry : pending.entrySet()) {
+            persistDueAt(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 写回提前的推荐时间；数据库中的时间更早或用户刚被调度过时未更新，改用数据库中的时间
+     */
+    private void persistDueAt(int userId, PendingDue due) {
+        try {
+            if (!dbManager.advanceUserNextDueAt(userId, new Timestamp(due.dueAt), due.notScheduledSince)) {
+                resync(userId);
+            }
+        } catch (SQLException e) {
+            System.err.println("RecommendationScheduler: Failed to save next_due_at for user " + userId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 以数据库中的next_due_at重新安排用户；用户已删除或未安排时移出队列，等待下次加载
+     */
+    private void resync(int userId) {
+        Timestamp nextDueAt;
+        try {
+            nextDueAt = dbManager.getUserNextDueAt(userId);
+        } catch (SQLException e) {
+            System.err.println("RecommendationScheduler: Failed to load next_due_at for user " + userId + ": " + e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            if (pendingPersist.containsKey(userId)) {
+                return;
+            }
+            if (nextDueAt == null) {
+                dueAtByUser.remove(userId);
+            } else {
+                enqueue(userId, nextDueAt.getTime());
+            }
+        }
+    }
+
+    private void enqueue(int userId, long dueAt) {
+        dueAtByUser.put(userId, dueAt);
+        queue.add(new DueEntry(dueAt, userId));
+    }
+
+    private long frequencyMillis(Integer frequency) {
+        int hours = frequency != null && frequency > 0 ? frequency : DEFAULT_FREQUENCY_HOURS;
+        return hours * HOUR_MILLIS;
+    }
+
+    /**
+     * 按user_id散列到[0, 周期)内的偏移，相邻ID的用户分散到周期的不同位置
+     */
+    private long spreadOffset(int userId, long periodMillis) {
+        return Math.floorMod(userId * 0x9E3779B97F4A7C15L, periodMillis);
+    }
+
+    /**
+     * 队列条目
+     */
+    private static class DueEntry {
+        final long dueAt;
+        final int userId;
+
+        DueEntry(long dueAt, int userId) {
+            this.dueAt = dueAt;
+            this.userId = userId;
+        }
+    }
+
+    /**
+     * 待写回的提前推荐时间
+     */
+    private static class PendingDue {
+        final long dueAt;
+        // 不为null时，用户此后被调度领取过就不再提前
+        final Timestamp notScheduledSince;
+
+        PendingDue(long dueAt, Timestamp notScheduledSince) {
+            this.dueAt = dueAt;
+            this.notScheduledSince = notScheduledSince;
+        }
+    }
+}
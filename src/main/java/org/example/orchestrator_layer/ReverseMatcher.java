@@ -0,0 +1,85 @@
+package org.example.orchestrator_layer;
+
+import org.example.data_access_layer.Dbmanager;
+import org.example.service.IndexService;
+import org.example.service.InterestVectorIndex;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * 反向匹配
+ * 新论文建立索引后，在用户兴趣向量索引中查找相似度超过阈值的用户，
+ * 把论文直接加入这些用户的候选集（user_candidates），并提前他们的下一次推荐，
+ * 使新论文在几分钟内到达感兴趣的用户，而不必等待下一次全量推荐
+ */
+public class ReverseMatcher implements IndexService.IndexListener {
+    private final Dbmanager dbManager;
+    private final InterestVectorIndex interestIndex;
+    private final double threshold;
+    private final int maxUsersPerPaper;
+    private final long refreshMillis;
+    private final long expediteMillis;
+    private final long minPushIntervalMillis;
+
+    /**
+     * @param config 编排器配置（reverse.*）
+     */
+    public ReverseMatcher(Properties config) {
+        this.dbManager = new Dbmanager();
+        this.interestIndex = InterestVectorIndex.getInstance();
+        this.threshold = Double.parseDouble(config.getProperty("reverse.threshold", "0.75"));
+        this.maxUsersPerPaper = Integer.parseInt(config.getProperty("reverse.max_users_per_paper", "100"));
+        this.refreshMillis = Long.parseLong(config.getProperty("reverse.index_refresh_minutes", "10")) * 60_000;
+        this.expediteMillis = Long.parseLong(config.getProperty("reverse.expedite_minutes", "5")) * 60_000;
+        this.minPushIntervalMillis = Long.parseLong(config.getProperty("reverse.min_push_interval_minutes", "60")) * 60_000;
+    }
+
+    @Override
+    public synchronized void onPapersIndexed(List<Integer> paperIds, List<List<Double>> embeddings) {
+        try {
+            interestIndex.refreshIfStale(dbManager, refreshMillis);
+        } catch (SQLException e) {
+            System.err.println("ReverseMatcher: Failed to load interest vectors: " + e.getMessage());
+            return;
+        }
+
+        RecommendationScheduler scheduler = RecommendationScheduler.getInstance();
+        int pushed = 0;
+        int expedited = 0;
+        for (int i = 0; i < paperIds.size(); i++) {
+            int paperId = paperIds.get(i);
+            List<InterestVectorIndex.Match> matches = interestIndex.match(embeddings.get(i), threshold, maxUsersPerPaper);
+            if (matches.isEmpty()) {
+                continue;
+            }
+
+            Map<Integer, Double> scoresByUser = new HashMap<>();
+            for (InterestVectorIndex.Match match : matches) {
+                scoresByUser.put(match.getUserId(), match.getScore());
+            }
+            try {
+                pushed += dbManager.pushUserCandidates(paperId, scoresByUser);
+            } catch (SQLException e) {
+                System.err.println("ReverseMatcher: Failed to push paper " + paperId + " to matching users: " + e.getMessage());
+                continue;
+            }
+
+            if (scheduler != null && expediteMillis > 0) {
+                for (InterestVectorIndex.Match match : matches) {
+                    if (scheduler.expedite(match.getUserId(), expediteMillis, minPushIntervalMillis)) {
+                        expedited++;
+                    }
+                }
+            }
+        }
+
+        if (pushed > 0) {
+            System.out.println("🎯 Reverse match: pushed " + pushed + " candidates from " + paperIds.size()
+                    + " new papers, expedited " + expedited + " users");
+        }
+    }
+}
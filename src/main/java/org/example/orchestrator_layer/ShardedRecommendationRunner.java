@@ -0,0 +1,317 @@
+package org.example.orchestrator_layer;
+
+import org.example.data_access_layer.Dbmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分片推荐运行器
+ * 用户按 user_id % recommend.shards.count 划分为分片，全量推荐以运行编号（run_epoch）标识；
+ * 每个节点的工作线程从recommendation_shards表领取带过期时间的分片租约，处理期间由心跳线程续约，
+ * 处理完成后标记分片完成。多个节点并行处理互不相交的分片，节点崩溃后租约过期，分片由其他节点接管
+ */
+public class ShardedRecommendationRunner {
+    private static final String CONFIG_FILE = "orchestrator.properties";
+
+    private static ShardedRecommendationRunner instance;
+
+    // 供API线程启动运行和查询状态，调用方法均为synchronized
+    private final Dbmanager dbManager;
+    private final String nodeId;
+    private final int shardCount;
+    private final int leaseSeconds;
+    private final int workerCount;
+    private final int usersPerBatch;
+    private final long pollMillis;
+
+    // 本节点持有的租约：分片ID -> 工作线程标识
+    private final Map<Integer, String> heldLeases = new ConcurrentHashMap<>();
+    // 续约失败（已被其他节点接管）的分片，工作线程在下一批用户前放弃处理
+    private final Set<Integer> lostLeases = ConcurrentHashMap.newKeySet();
+
+    private final List<Thread> workers = new ArrayList<>();
+    private Dbmanager heartbeatDbManager;
+    private ScheduledExecutorService heartbeat;
+    private volatile boolean running;
+
+    /**
+     * 启动全局运行器和本节点的分片工作线程（recommend.shards.enabled=false时不启动）
+     * @return 运行器，未启用时返回null
+     */
+    public static synchronized ShardedRecommendationRunner start() {
+        if (instance != null) {
+            return instance;
+        }
+        Properties config = loadConfiguration();
+        if (!Boolean.parseBoolean(config.getProperty("recommend.shards.enabled", "true"))) {
+            System.out.println("ShardedRecommendationRunner: Disabled by configuration");
+            return null;
+        }
+        instance = new ShardedRecommendationRunner(config);
+        instance.startThreads();
+        return instance;
+    }
+
+    /**
+     * 停止全局运行器，正在处理的分片释放租约
+     */
+    public static synchronized void stop() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    /**
+     * 获取正在运行的运行器
+     * @return 运行器，未运行时返回null
+     */
+    public static synchronized ShardedRecommendationRunner getInstance() {
+        return instance;
+    }
+
+    private static Properties loadConfiguration() {
+        Properties config = new Properties();
+        try (InputStream input = ShardedRecommendationRunner.class.getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (input != null) {
+                config.load(input);
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not load " + CONFIG_FILE + ": " + e.getMessage());
+        }
+        return config;
+    }
+
+    private ShardedRecommendationRunner(Properties config) {
+        this.dbManager = new Dbmanager();
+        this.nodeId = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID().toString().substring(0, 8);
+        this.shardCount = Integer.parseInt(config.getProperty("recommend.shards.count", "16"));
+        this.leaseSeconds = Integer.parseInt(config.getProperty("recommend.shards.lease_seconds", "120"));
+        this.workerCount = Integer.parseInt(config.getProperty("recommend.shards.workers", "1"));
+        this.usersPerBatch = Integer.parseInt(config.getProperty("recommend.shards.users_per_batch", "50"));
+        this.pollMillis = Long.parseLong(config.getProperty("recommend.shards.poll_seconds", "30")) * 1000;
+    }
+
+    private void startThreads() {
+        running = true;
+
+        // 心跳线程使用自己的数据库连接，按租约时长的三分之一续约
+        heartbeatDbManager = new Dbmanager();
+        long heartbeatMillis = Math.max(1000, leaseSeconds * 1000L / 3);
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "recommendation-shard-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::renewLeases, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < workerCount; i++) {
+            String owner = nodeId + "#" + i;
+            Thread worker = new Thread(() -> runWorker(owner), "recommendation-shard-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        System.out.println("🧩 ShardedRecommendationRunner started on " + nodeId + " (" + shardCount + " shards, "
+                + workerCount + " workers, lease " + leaseSeconds + "s)");
+    }
+
+    private void shutdown() {
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+            heartbeatDbManager.closeConnection();
+        }
+        dbManager.closeConnection();
+    }
+
+    /**
+     * 启动一次全量分片推荐；已有运行未完成时加入该运行而不是重复启动
+     * 本节点的工作线程立即开始领取分片，其他节点在下一次轮询时加入
+     * @return run_epoch（运行编号）、started（是否启动了新运行）和 shard_count
+     * @throws SQLException 如果数据库操作失败
+     */
+    public synchronized Map<String, Object> startRun() throws SQLException {
+        Map<String, Object> run = dbManager.startRecommendationRun(shardCount);
+        run.put("shard_count", shardCount);
+        notifyAll();
+        System.out.println("🧩 Recommendation run " + run.get("run_epoch")
+                + (Boolean.TRUE.equals(run.get("started")) ? " started" : " already in progress, joined"));
+        return run;
+    }
+
+    /**
+     * 启动（或加入）一次全量分片推荐并等待所有节点处理完全部分片，分片完成进度登记到运行中
+     * 运行被取消时取消数据库中的整次运行，各节点的工作线程在下一次心跳后停止
+     * @param run 登记的运行
+     * @throws SQLException 如果数据库操作失败
+     * @throws InterruptedException 如果等待时被中断
+     */
+    public void runAndWait(OrchestratorRun run) throws SQLException, InterruptedException {
+        Map<String, Object> started = startRun();
+        int runEpoch = (Integer) started.get("run_epoch");
+        OrchestratorRun.Counter shards = run.addCounter("shards", shardCount);
+        long waitMillis = Math.min(pollMillis, 5000);
+
+        try {
+            while (true) {
+                if (run.isCancelled()) {
+                    throw new InterruptedException("Run cancelled");
+                }
+                int completed = 0;
+                for (Map<String, Object> shard : getShards()) {
+                    if ((Integer) shard.get("completed_epoch") >= runEpoch) {
+                        completed++;
+                    }
+                }
+                shards.set(completed);
+                if (completed >= shardCount) {
+                    System.out.println("🎉 Recommendation run " + runEpoch + " completed on all shards");
+                    return;
+                }
+                Thread.sleep(waitMillis);
+            }
+        } catch (InterruptedException e) {
+            int cancelled;
+            synchronized (this) {
+                cancelled = dbManager.cancelRecommendationRun(shardCount);
+            }
+            System.out.println("🛑 Recommendation run " + runEpoch + " cancelled (" + cancelled + " shards skipped)");
+            throw e;
+        }
+    }
+
+    /**
+     * 获取各分片的租约和完成状态
+     * @throws SQLException 如果数据库查询失败
+     */
+    public synchronized List<Map<String, Object>> getShards() throws SQLException {
+        return dbManager.getRecommendationShards(shardCount);
+    }
+
+    private void runWorker(String owner) {
+        Dbmanager workerDb = new Dbmanager();
+        RecommendationOrchestrator orchestrator = null;
+        try {
+            while (running) {
+                boolean processed = false;
+                try {
+                    for (int shardId : workerDb.getClaimableShards(shardCount)) {
+                        if (orchestrator == null) {
+                            orchestrator = new RecommendationOrchestrator();
+                        }
+                        Integer runEpoch = workerDb.claimShard(shardId, owner, leaseSeconds);
+                        if (runEpoch == null) {
+                            // 已被其他工作线程领取
+                            continue;
+                        }
+                        processShard(workerDb, orchestrator, owner, shardId, runEpoch);
+                        processed = true;
+                        break;
+                    }
+                } catch (SQLException e) {
+                    System.err.println("ShardedRecommendationRunner: Failed to claim shard: " + e.getMessage());
+                }
+
+                // 处理完一个分片后立即尝试下一个，没有可领取的分片时等待下一次轮询
+                if (!processed) {
+                    synchronized (this) {
+                        wait(pollMillis);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workerDb.closeConnection();
+        }
+    }
+
+    /**
+     * 分批处理分片中的用户，每批之前检查租约是否仍然有效
+     */
+    private void processShard(Dbmanager workerDb, RecommendationOrchestrator orchestrator,
+                              String owner, int shardId, int runEpoch) throws SQLException {
+        lostLeases.remove(shardId);
+        heldLeases.put(shardId, owner);
+        boolean completed = false;
+        try {
+            System.out.println("🧩 Run " + runEpoch + ": processing shard " + shardId);
+
+            // 按user_id键集分页逐批读取分片中的用户，内存中只保留当前一批
+            int afterUserId = 0;
+            int processed = 0;
+            while (true) {
+                if (!running) {
+                    return;
+                }
+                if (lostLeases.contains(shardId)) {
+                    System.err.println("ShardedRecommendationRunner: Lease on shard " + shardId
+                            + " was lost, stopping after " + processed + " users");
+                    return;
+                }
+                List<Map<String, Object>> users = workerDb.getUsersInShard(shardId, shardCount, afterUserId, usersPerBatch);
+                if (users.isEmpty()) {
+                    break;
+                }
+                orchestrator.generateRecommendations(users);
+                processed += users.size();
+                afterUserId = (Integer) users.get(users.size() - 1).get("user_id");
+                if (users.size() < usersPerBatch) {
+                    break;
+                }
+            }
+
+            completed = workerDb.completeShard(shardId, owner, runEpoch);
+            if (completed) {
+                System.out.println("✅ Run " + runEpoch + ": shard " + shardId + " completed (" + processed + " users)");
+            }
+        } finally {
+            heldLeases.remove(shardId);
+            if (!completed) {
+                // 未完成的分片立即释放，其他工作线程不必等到租约过期
+                try {
+                    workerDb.releaseShard(shardId, owner);
+                } catch (SQLException e) {
+                    System.err.println("ShardedRecommendationRunner: Failed to release shard " + shardId + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 为本节点持有的全部租约续约，续约失败的分片标记为已丢失
+     */
+    private void renewLeases() {
+        for (Map.Entry<Integer, String> lease : heldLeases.entrySet()) {
+            int shardId = lease.getKey();
+            try {
+                if (!heartbeatDbManager.renewShardLease(shardId, lease.getValue(), leaseSeconds)) {
+                    lostLeases.add(shardId);
+                }
+            } catch (SQLException e) {
+                // 暂时无法续约时保留租约，租约过期前的下一次心跳会重试
+                System.err.println("ShardedRecommendationRunner: Failed to renew lease on shard " + shardId + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package org.example.service;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.function.Consumer;
+
+/**
+ * arXiv Atom响应流式解析器
+ * 基于StAX逐个解析entry，解析完一个就交给回调处理，内存占用与结果页大小无关
+ */
+public class ArxivAtomParser {
+    private static final String ATOM_NS = "http://www.w3.org/2005/Atom";
+    private static final String OPENSEARCH_NS = "http://a9.com/-/spec/opensearch/1.1/";
+    private static final String ARXIV_NS = "http://arxiv.org/schemas/atom";
+
+    private final XMLInputFactory factory;
+
+    public ArxivAtomParser() {
+        this.factory = XMLInputFactory.newInstance();
+        // 禁用DTD和外部实体，防止XXE
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    /**
+     * 解析arXiv Atom响应流
+     * @param in 响应字节流（调用方负责关闭）
+     * @param consumer 每解析出一个论文条目就调用一次
+     * @return 分页信息（totalResults、startIndex、itemsPerPage）及本页条目数
+     * @throws IOException 如果XML格式错误或读取失败
+     */
+    public FeedInfo parse(InputStream in, Consumer<ArxivEntry> consumer) throws IOException {
+        FeedInfo feedInfo = new FeedInfo();
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(in, "UTF-8");
+            ArxivEntry current = null;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String ns = reader.getNamespaceURI();
+                    String name = reader.getLocalName();
+
+                    if (current == null) {
+                        if (OPENSEARCH_NS.equals(ns)) {
+                            readFeedInfo(reader, name, feedInfo);
+                        } else if (ATOM_NS.equals(ns) && "entry".equals(name)) {
+                            current = new ArxivEntry();
+                        }
+                    } else if (ATOM_NS.equals(ns)) {
+                        readEntryElement(reader, name, current);
+                    } else if (ARXIV_NS.equals(ns) && "primary_category".equals(name)) {
+                        current.setPrimaryCategory(reader.getAttributeValue(null, "term"));
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && current != null
+                        && "entry".equals(reader.getLocalName()) && ATOM_NS.equals(reader.getNamespaceURI())) {
+                    // arXiv对错误的ID会返回一个id为.../api/errors#...的entry，跳过
+                    if (current.getArxivId() != null) {
+                        feedInfo.entryCount++;
+                        consumer.accept(current);
+                    }
+                    current = null;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to parse arXiv response: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // 忽略关闭异常
+                }
+            }
+        }
+        return feedInfo;
+    }
+
+    /**
+     * 只解析分页信息和条目数，不构建论文条目
+     * @param in 响应字节流（调用方负责关闭）
+     * @return 分页信息及本页的论文条目数（与parse()的计数一致，不含错误条目）
+     * @throws IOException 如果XML格式错误或读取失败
+     */
+    public FeedInfo parseFeedInfo(InputStream in) throws IOException {
+        FeedInfo feedInfo = new FeedInfo();
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(in, "UTF-8");
+            boolean inEntry = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String ns = reader.getNamespaceURI();
+                    String name = reader.getLocalName();
+                    if (!inEntry && OPENSEARCH_NS.equals(ns)) {
+                        readFeedInfo(reader, name, feedInfo);
+                    } else if (ATOM_NS.equals(ns) && "entry".equals(name)) {
+                        inEntry = true;
+                    } else if (inEntry && ATOM_NS.equals(ns) && "id".equals(name)
+                            && reader.getElementText().contains("/abs/")) {
+                        // 与parse()一致，只统计有arXiv ID的条目
+                        feedInfo.entryCount++;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && inEntry
+                        && "entry".equals(reader.getLocalName()) && ATOM_NS.equals(reader.getNamespaceURI())) {
+                    inEntry = false;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to parse arXiv response: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // 忽略关闭异常
+                }
+            }
+        }
+        return feedInfo;
+    }
+
+    /**
+     * 读取OpenSearch分页元素
+     */
+    private void readFeedInfo(XMLStreamReader reader, String name, FeedInfo feedInfo) throws XMLStreamException {
+        switch (name) {
+            case "totalResults":
+                feedInfo.totalResults = parseIntOrZero(reader.getElementText());
+                break;
+            case "startIndex":
+                feedInfo.startIndex = parseIntOrZero(reader.getElementText());
+                break;
+            case "itemsPerPage":
+                feedInfo.itemsPerPage = parseIntOrZero(reader.getElementText());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 读取entry内的Atom元素
+     */
+    private void readEntryElement(XMLStreamReader reader, String name, ArxivEntry entry) throws XMLStreamException {
+        switch (name) {
+            case "id": {
+                String id = reader.getElementText();
+                if (id.contains("/abs/")) {
+                    entry.setIdFromUrl(id);
+                }
+                break;
+            }
+            case "title":
+                entry.setTitle(normalize(reader.getElementText()));
+                break;
+            case "summary":
+                entry.setSummary(normalize(reader.getElementText()));
+                break;
+            case "published":
+                entry.setPublished(parseInstant(reader.getElementText()));
+                break;
+            case "updated":
+                entry.setUpdated(parseInstant(reader.getElementText()));
+                break;
+            case "name":
+                entry.getAuthors().add(normalize(reader.getElementText()));
+                break;
+            case "category": {
+                String term = reader.getAttributeValue(null, "term");
+                if (term != null) {
+                    entry.getCategories().add(term);
+                }
+                break;
+            }
+            case "link":
+                if ("pdf".equals(reader.getAttributeValue(null, "title"))) {
+                    entry.setPdfUrl(reader.getAttributeValue(null, "href"));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private String normalize(String text) {
+        return text.replaceAll("\\s+", " ").trim();
+    }
+
+    private Instant parseInstant(String text) {
+        try {
+            return Instant.parse(text.trim());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private int parseIntOrZero(String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * arXiv响应的分页信息
+     */
+    public static class FeedInfo {
+        private int totalResults;
+        private int startIndex;
+        private int itemsPerPage;
+        private int entryCount;
+
+        public int getTotalResults() {
+            return totalResults;
+        }
+
+        public int getStartIndex() {
+            return startIndex;
+        }
+
+        public int getItemsPerPage() {
+            return itemsPerPage;
+        }
+
+        /**
+         * 本页实际解析出的论文条目数
+         */
+        public int getEntryCount() {
+            return entryCount;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.example.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * arXiv论文条目
+ * 对应arXiv Atom响应中的一个entry
+ */
+public class ArxivEntry {
+    private static final Pattern VERSION_PATTERN = Pattern.compile("^(.+?)v(\\d+)$");
+
+    private String arxivId;
+    private int version;
+    private String title;
+    private List<String> authors = new ArrayList<>();
+    private String summary;
+    private String primaryCategory;
+    private List<String> categories = new ArrayList<>();
+    private Instant published;
+    private Instant updated;
+    private String pdfUrl;
+
+    /**
+     * 从arXiv摘要页URL或带版本号的ID中解析ID和版本
+     * @param idOrUrl 如 http://arxiv.org/abs/2301.00001v2 或 2301.00001v2
+     */
+    public void setIdFromUrl(String idOrUrl) {
+        String id = idOrUrl.trim();
+        int absIndex = id.indexOf("/abs/");
+        if (absIndex >= 0) {
+            id = id.substring(absIndex + "/abs/".length());
+        }
+        Matcher matcher = VERSION_PATTERN.matcher(id);
+        if (matcher.matches()) {
+            this.arxivId = matcher.group(1);
+            this.version = Integer.parseInt(matcher.group(2));
+        } else {
+            this.arxivId = id;
+            this.version = 0;
+        }
+    }
+
+    /**
+     * 去掉arXiv ID中的版本号（如：2301.00001v2 -> 2301.00001）
+     */
+    public static String stripVersion(String idOrUrl) {
+        ArxivEntry entry = new ArxivEntry();
+        entry.setIdFromUrl(idOrUrl);
+        return entry.getArxivId();
+    }
+
+    /**
+     * 获取不带版本号的arXiv ID（如：2301.00001）
+     */
+    public String getArxivId() {
+        return arxivId;
+    }
+
+    public void setArxivId(String arxivId) {
+        this.arxivId = arxivId;
+    }
+
+    /**
+     * 获取版本号，未知时为0
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    /**
+     * 获取带版本号的arXiv ID（如：2301.00001v2）
+     */
+    public String getVersionedId() {
+        return version > 0 ? arxivId + "v" + version : arxivId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public List<String> getAuthors() {
+        return authors;
+    }
+
+    public void setAuthors(List<String> authors) {
+        this.authors = authors;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public void setSummary(String summary) {
+        this.summary = summary;
+    }
+
+    public String getPrimaryCategory() {
+        return primaryCategory;
+    }
+
+    public void setPrimaryCategory(String primaryCategory) {
+        this.primaryCategory = primaryCategory;
+    }
+
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    public void setCategories(List<String> categories) {
+        this.categories = categories;
+    }
+
+    public Instant getPublished() {
+        return published;
+    }
+
+    public void setPublished(Instant published) {
+        this.published = published;
+    }
+
+    public Instant getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(Instant updated) {
+        this.updated = updated;
+    }
+
+    public String getPdfUrl() {
+        if (pdfUrl == null && arxivId != null) {
+            return "http://arxiv.org/pdf/" + getVersionedId() + ".pdf";
+        }
+        return pdfUrl;
+    }
+
+    public void setPdfUrl(String pdfUrl) {
+        this.pdfUrl = pdfUrl;
+    }
+
+    /**
+     * 作者列表拼接为逗号分隔的字符串
+     */
+    public String getAuthorString() {
+        return authors.isEmpty() ? "Unknown" : String.join(", ", authors);
+    }
+
+    /**
+     * 转换为papers表使用的论文信息Map（title, author, abstract, pdf_url）
+     */
+    public Map<String, String> toPaperInfo() {
+        Map<String, String> paperInfo = new HashMap<>();
+        if (title != null) {
+            paperInfo.put("title", title);
+        }
+        paperInfo.put("author", getAuthorString());
+        if (summary != null) {
+            paperInfo.put("abstract", summary);
+        }
+        String pdf = getPdfUrl();
+        if (pdf != null) {
+            paperInfo.put("pdf_url", pdf);
+        }
+        return paperInfo;
+    }
+
+    /**
+     * 转换为Dbmanager.upsertPapers使用的论文Map（arxiv_id, arxiv_version, title, author, abstract, pdf_url）
+     */
+    public Map<String, Object> toPaperRow() {
+        Map<String, String> paperInfo = toPaperInfo();
+        Map<String, Object> paper = new HashMap<>();
+        paper.put("arxiv_id", arxivId);
+        paper.put("arxiv_version", version);
+        paper.put("title", paperInfo.getOrDefault("title", ""));
+        paper.put("author", paperInfo.getOrDefault("author", ""));
+        paper.put("abstract", paperInfo.getOrDefault("abstract", ""));
+        paper.put("pdf_url", paperInfo.getOrDefault("pdf_url", ""));
+        return paper;
+    }
+}
@@ -0,0 +1,184 @@
+package org.example.service;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * arXiv分页抓取器
+ * 按start/max_results翻页遍历一次查询的全部结果，直到totalResults，
+ * 并遵守arXiv API的使用建议：每页不超过2000条、两次请求间隔至少3秒、单次查询最多30000条
+ * 每页的响应体原样交给下游解析，抓取与解析可以在不同线程中并行进行
+ */
+public class ArxivHarvester {
+    private static final String ARXIV_API_BASE = "http://export.arxiv.org/api/query";
+    private static final int MAX_PAGE_SIZE = 2000;
+    private static final int MAX_TOTAL_RESULTS = 30000;
+    // arXiv偶尔会对有结果的查询返回空页，重试几次
+    private static final int EMPTY_PAGE_RETRIES = 3;
+
+    private final OkHttpClient httpClient;
+    private final ArxivAtomParser atomParser;
+    private final int pageSize;
+    private final long pageDelayMillis;
+    private long lastRequestAt = 0;
+
+    /**
+     * @param httpClient HTTP客户端
+     * @param pageSize 每页条数（最大2000）
+     * @param pageDelayMillis 两次请求之间的最小间隔（毫秒）
+     */
+    public ArxivHarvester(OkHttpClient httpClient, int pageSize, long pageDelayMillis) {
+        this.httpClient = httpClient;
+        this.atomParser = new ArxivAtomParser();
+        this.pageSize = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        this.pageDelayMillis = pageDelayMillis;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * 遍历查询的全部结果页，把每页的响应体交给consumer
+     * @param searchQuery arXiv search_query（如：cat:cs.* AND submittedDate:[... TO ...]）
+     * @param startOffset 起始偏移量
+     * @param consumer 页消费者，按submittedDate升序收到各页
+     * @return 抓取结果：查询结果总数、停止时的偏移量及是否已抓取到totalResults
+     * @throws IOException 如果API调用失败
+     * @throws InterruptedException 如果等待限流间隔或交付页面时被中断
+     */
+    public HarvestResult fetchPages(String searchQuery, int startOffset, PageConsumer consumer)
+            throws IOException, InterruptedException {
+        int start = startOffset;
+        int totalResults = Integer.MAX_VALUE;
+        int emptyPages = 0;
+
+        while (start < Math.min(totalResults, MAX_TOTAL_RESULTS)) {
+            byte[] body = fetchPage(searchQuery, start);
+            ArxivAtomParser.FeedInfo feedInfo = atomParser.parseFeedInfo(new ByteArrayInputStream(body));
+            int pageTotal = feedInfo.getTotalResults();
+            int entryCount = feedInfo.getEntryCount();
+
+            // 空页：没有条目，或偏移量已超过本次返回的总数；第一页为空时同样重试，避免把有结果的窗口误判为空
+            if (entryCount == 0 || start >= pageTotal) {
+                if ((totalResults == Integer.MAX_VALUE || start < totalResults) && ++emptyPages <= EMPTY_PAGE_RETRIES) {
+                    System.out.println("arXiv returned an empty page at offset " + start + ", retrying...");
+                    continue;
+                }
+                if (totalResults == Integer.MAX_VALUE) {
+                    totalResults = pageTotal;
+                }
+                break;
+            }
+
+            emptyPages = 0;
+            totalResults = pageTotal;
+            // 按实际返回的条目数前进；短页缺少的条目由下一次请求从新的偏移量处取回
+            int nextOffset = start + entryCount;
+            if (entryCount < Math.min(pageSize, totalResults - start)) {
+                System.out.println("arXiv returned a short page at offset " + start + " (" + entryCount
+                        + " entries), continuing from offset " + nextOffset);
+            }
+            consumer.accept(start, nextOffset, totalResults, body);
+            System.out.println("Fetched arXiv page: " + nextOffset + "/" + totalResults);
+            start = nextOffset;
+        }
+
+        if (totalResults > MAX_TOTAL_RESULTS && totalResults != Integer.MAX_VALUE) {
+            System.err.println("⚠️ Query matched " + totalResults + " results, only the first "
+                    + MAX_TOTAL_RESULTS + " are reachable through the arXiv API. Use a narrower window.");
+        }
+        return new HarvestResult(totalResults == Integer.MAX_VALUE ? 0 : totalResults, start);
+    }
+
+    /**
+     * 抓取一页结果的响应体
+     */
+    private byte[] fetchPage(String searchQuery, int start) throws IOException, InterruptedException {
+        awaitRateLimit();
+
+        HttpUrl url = HttpUrl.get(ARXIV_API_BASE).newBuilder()
+                .addQueryParameter("search_query", searchQuery)
+                .addQueryParameter("start", String.valueOf(start))
+                .addQueryParameter("max_results", String.valueOf(pageSize))
+                .addQueryParameter("sortBy", "submittedDate")
+                .addQueryParameter("sortOrder", "ascending")
+                .build();
+
+        Request request = new Request.Builder().url(url).get().build();
+
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("arXiv API error: " + response.code());
+            }
+            return response.body().bytes();
+        }
+    }
+
+    /**
+     * 保证两次请求的开始时间间隔不小于pageDelayMillis
+     */
+    private void awaitRateLimit() throws InterruptedException {
+        long waitMillis = lastRequestAt + pageDelayMillis - System.currentTimeMillis();
+        if (waitMillis > 0) {
+            Thread.sleep(waitMillis);
+        }
+        lastRequestAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 一次查询的抓取结果
+     */
+    public static class HarvestResult {
+        private final int totalResults;
+        private final int endOffset;
+
+        HarvestResult(int totalResults, int endOffset) {
+            this.totalResults = totalResults;
+            this.endOffset = endOffset;
+        }
+
+        public int getTotalResults() {
+            return totalResults;
+        }
+
+        /**
+         * 停止抓取时的偏移量（下一条未抓取结果的位置）
+         */
+        public int getEndOffset() {
+            return endOffset;
+        }
+
+        /**
+         * 是否已抓取到totalResults；结果超过API上限或重试后仍遇到空页时为false
+         */
+        public boolean isComplete() {
+            return endOffset >= totalResults;
+        }
+
+        /**
+         * 结果数是否超过arXiv API单次查询的上限，超出部分需要缩小时间窗口后抓取
+         */
+        public boolean isTruncated() {
+            return totalResults > MAX_TOTAL_RESULTS;
+        }
+    }
+
+    /**
+     * 页消费者
+     */
+    public interface PageConsumer {
+        /**
+         * @param offset 本页的起始偏移量
+         * @param nextOffset 下一页的起始偏移量
+         * @param totalResults 查询结果总数
+         * @param body 本页的Atom响应体
+         */
+        void accept(int offset, int nextOffset, int totalResults, byte[] body) throws InterruptedException;
+    }
+}
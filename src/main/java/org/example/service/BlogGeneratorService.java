@@ -7,34 +7,35 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
-import java.util.concurrent.TimeUnit;
+import okio.BufferedSource;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
 /**
  * 博客生成服务
- * 使用DeepSeek API生成论文博客
+ * 使用DeepSeek API生成论文博客，支持一次性返回和流式返回
  */
 public class BlogGeneratorService {
     private static final String DEEPSEEK_API_URL = "https://api.deepseek.com/v1/chat/completions";
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    // 修改提示词、模型或生成参数时递增，使按论文缓存的博客失效
+    private static final String PROMPT_VERSION = "v1";
     
     private final OkHttpClient httpClient;
     private final ObjectMapper objectMapper;
     private String apiKey; // Not final, can be assigned in constructor
 
     public BlogGeneratorService() {
-        // 配置HTTP客户端，增加超时时间
-        // DeepSeek API生成博客可能需要较长时间，所以设置较长的超时
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)      // 连接超时：30秒
-                .readTimeout(120, TimeUnit.SECONDS)          // 读取超时：120秒（博客生成可能需要较长时间）
-                .writeTimeout(30, TimeUnit.SECONDS)          // 写入超时：30秒
-                .build();
+        // 使用共享的DeepSeek客户端，超时在http.properties中配置
+        // DeepSeek API生成博客可能需要较长时间，读取超时默认120秒
+        this.httpClient = HttpClientRegistry.client(HttpClientRegistry.Upstream.DEEPSEEK);
         this.objectMapper = new ObjectMapper();
         loadApiKey();
     }
@@ -80,8 +81,71 @@ public class BlogGeneratorService {
 
         // 构建提示词
         String prompt = buildPrompt(paperTitle, paperAuthor, paperAbstract);
-        
-        // 构建请求体
+        Request request = buildRequest(prompt, false);
+
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw apiError(response);
+            }
+
+            String responseBody = response.body().string();
+            return parseDeepSeekResponse(responseBody);
+        }
+    }
+
+    /**
+     * 以流式方式生成博客：使用stream=true调用DeepSeek，每收到一段内容就回调监听器
+     * @param paperTitle 论文标题
+     * @param paperAuthor 论文作者
+     * @param paperAbstract 论文摘要
+     * @param listener 内容片段监听器，在调用线程上按顺序回调
+     * @return 完整的博客内容（Markdown格式）
+     * @throws IOException 如果API调用失败或流被中断
+     */
+    public String streamBlog(String paperTitle, String paperAuthor, String paperAbstract,
+                             BlogStreamListener listener) throws IOException {
+        if (apiKey == null || apiKey.isEmpty()) {
+            throw new IOException("DeepSeek API key is not configured. Please set DEEPSEEK_API_KEY environment variable.");
+        }
+
+        String prompt = buildPrompt(paperTitle, paperAuthor, paperAbstract);
+        Request request = buildRequest(prompt, true);
+
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw apiError(response);
+            }
+
+            // 响应为SSE格式：每个事件一行"data: {json}"，以"data: [DONE]"结束
+            StringBuilder blog = new StringBuilder();
+            BufferedSource source = response.body().source();
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (!line.startsWith("data:")) {
+                    continue; // 空行和keep-alive注释
+                }
+                String data = line.substring("data:".length()).trim();
+                if (data.equals("[DONE]")) {
+                    return blog.toString();
+                }
+
+                JsonNode choices = objectMapper.readTree(data).path("choices");
+                if (choices.isArray() && choices.size() > 0) {
+                    JsonNode content = choices.get(0).path("delta").path("content");
+                    if (content.isTextual() && !content.asText().isEmpty()) {
+                        blog.append(content.asText());
+                        listener.onDelta(content.asText());
+                    }
+                }
+            }
+            throw new IOException("DeepSeek stream ended before completion");
+        }
+    }
+
+    /**
+     * 构建DeepSeek chat completions请求
+     */
+    private Request buildRequest(String prompt, boolean stream) throws IOException {
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("model", "deepseek-chat");
         requestBody.put("messages", new Object[]{
@@ -89,75 +153,102 @@ public class BlogGeneratorService {
         });
         requestBody.put("temperature", 0.7);
         requestBody.put("max_tokens", 2000);
+        if (stream) {
+            requestBody.put("stream", true);
+        }
 
         String jsonBody = objectMapper.writeValueAsString(requestBody);
-        
-        Request request = new Request.Builder()
+
+        return new Request.Builder()
                 .url(DEEPSEEK_API_URL)
                 .post(RequestBody.create(jsonBody, JSON))
                 .addHeader("Authorization", "Bearer " + apiKey)
                 .addHeader("Content-Type", "application/json")
                 .build();
+    }
 
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                String errorBody = "Unknown error";
-                String errorDetail = "";
-                
-                if (response.body() != null) {
-                    errorBody = response.body().string();
-                    // 尝试解析错误详情
-                    try {
-                        JsonNode errorNode = objectMapper.readTree(errorBody);
-                        if (errorNode.has("error")) {
-                            JsonNode error = errorNode.get("error");
-                            if (error.has("message")) {
-                                errorDetail = error.get("message").asText();
-                            } else if (error.has("type")) {
-                                errorDetail = error.get("type").asText();
-                            }
-                        }
-                    } catch (Exception e) {
-                        // 如果无法解析JSON，使用原始错误体
-                        errorDetail = errorBody;
+    /**
+     * 将失败的DeepSeek响应转换为带友好提示的异常
+     */
+    private IOException apiError(Response response) throws IOException {
+        String errorBody = "Unknown error";
+        String errorDetail = "";
+
+        if (response.body() != null) {
+            errorBody = response.body().string();
+            // 尝试解析错误详情
+            try {
+                JsonNode errorNode = objectMapper.readTree(errorBody);
+                if (errorNode.has("error")) {
+                    JsonNode error = errorNode.get("error");
+                    if (error.has("message")) {
+                        errorDetail = error.get("message").asText();
+                    } else if (error.has("type")) {
+                        errorDetail = error.get("type").asText();
                     }
                 }
-                
-                int statusCode = response.code();
-                String errorMessage;
-                
-                // 根据HTTP状态码提供更友好的错误信息
-                switch (statusCode) {
-                    case 401:
-                        errorMessage = "DeepSeek API认证失败：API密钥无效或已过期。请检查api.properties中的密钥是否正确。";
-                        break;
-                    case 402:
-                    case 403:
-                        errorMessage = "DeepSeek API访问被拒绝：可能是账户余额不足或权限不足。请检查DeepSeek账户余额和API权限。";
-                        if (!errorDetail.isEmpty()) {
-                            errorMessage += " 详细信息: " + errorDetail;
-                        }
-                        break;
-                    case 429:
-                        errorMessage = "DeepSeek API请求频率过高：请稍后再试。";
-                        break;
-                    case 500:
-                    case 502:
-                    case 503:
-                        errorMessage = "DeepSeek API服务器错误：服务暂时不可用，请稍后再试。";
-                        break;
-                    default:
-                        errorMessage = String.format("DeepSeek API错误 (HTTP %d): %s", statusCode, 
-                            !errorDetail.isEmpty() ? errorDetail : errorBody);
-                }
-                
-                System.err.println("DeepSeek API Error: HTTP " + statusCode + " - " + errorMessage);
-                System.err.println("Response body: " + errorBody);
-                throw new IOException(errorMessage);
+            } catch (Exception e) {
+                // 如果无法解析JSON，使用原始错误体
+                errorDetail = errorBody;
             }
+        }
 
-            String responseBody = response.body().string();
-            return parseDeepSeekResponse(responseBody);
+        int statusCode = response.code();
+        String errorMessage;
+
+        // 根据HTTP状态码提供更友好的错误信息
+        switch (statusCode) {
+            case 401:
+                errorMessage = "DeepSeek API认证失败：API密钥无效或已过期。请检查api.properties中的密钥是否正确。";
+                break;
+            case 402:
+            case 403:
+                errorMessage = "DeepSeek API访问被拒绝：可能是账户余额不足或权限不足。请检查DeepSeek账户余额和API权限。";
+                if (!errorDetail.isEmpty()) {
+                    errorMessage += " 详细信息: " + errorDetail;
+                }
+                break;
+            case 429:
+                errorMessage = "DeepSeek API请求频率过高：请稍后再试。";
+                break;
+            case 500:
+            case 502:
+            case 503:
+                errorMessage = "DeepSeek API服务器错误：服务暂时不可用，请稍后再试。";
+                break;
+            default:
+                errorMessage = String.format("DeepSeek API错误 (HTTP %d): %s", statusCode,
+                    !errorDetail.isEmpty() ? errorDetail : errorBody);
+        }
+
+        System.err.println("DeepSeek API Error: HTTP " + statusCode + " - " + errorMessage);
+        System.err.println("Response body: " + errorBody);
+        return new IOException(errorMessage);
+    }
+
+    /**
+     * 当前提示词版本
+     */
+    public String getPromptVersion() {
+        return PROMPT_VERSION;
+    }
+
+    /**
+     * 计算博客的内容地址：提示词版本和论文内容相同时生成的博客可以共享
+     * @return SHA-256十六进制字符串
+     */
+    public String contentHash(String paperTitle, String paperAuthor, String paperAbstract) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String key = PROMPT_VERSION + "\n" + paperTitle + "\n" + paperAuthor + "\n" + paperAbstract;
+            byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
         }
     }
 
@@ -196,5 +287,11 @@ public class BlogGeneratorService {
         
         throw new IOException("Invalid response format from DeepSeek API");
     }
-}
 
+    /**
+     * 流式生成的内容片段监听器
+     */
+    public interface BlogStreamListener {
+        void onDelta(String text);
+    }
+}
@@ -0,0 +1,154 @@
+package org.example.service;
+
+import org.example.data_access_layer.Dbmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 博客生成任务服务
+ * 任务以blog类型写入jobs表，由任务队列的工作线程领取并调用DeepSeek生成博客，
+ * 提交任务的请求线程只写入任务记录，不会阻塞在LLM调用上
+ */
+public class BlogJobService implements JobQueueService.JobHandler {
+    public static final String JOB_TYPE = "blog";
+    private static final String CONFIG_FILE = "jobs.properties";
+    private static final int PRIORITY = 0;
+
+    private static BlogJobService instance;
+
+    private final Dbmanager dbManager;
+    private final JobQueueService jobQueue;
+    private int maxQueued;
+
+    /**
+     * 获取全局任务服务
+     */
+    public static synchronized BlogJobService getInstance() {
+        if (instance == null) {
+            instance = new BlogJobService();
+        }
+        return instance;
+    }
+
+    private BlogJobService() {
+        this.dbManager = new Dbmanager();
+        this.jobQueue = JobQueueService.getInstance();
+        loadConfiguration();
+    }
+
+    /**
+     * 加载任务配置，文件不存在时使用默认值
+     */
+    private void loadConfiguration() {
+        Properties props = new Properties();
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (input != null) {
+                props.load(input);
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not load " + CONFIG_FILE + ": " + e.getMessage());
+        }
+
+        this.maxQueued = Integer.parseInt(props.getProperty("blog.jobs.max_queued", "500"));
+    }
+
+    /**
+     * 提交博客生成任务；同一用户和论文已有未结束的任务时直接返回该任务
+     * @param userId 用户ID
+     * @param paperId 论文ID
+     * @return 任务Map（job_id、status等），existing表示是否为已有任务
+     * @throws SQLException 如果数据库操作失败
+     * @throws RejectedExecutionException 如果排队任务数已达上限
+     */
+    public synchronized Map<String, Object> submit(int userId, int paperId) throws SQLException {
+        if (jobQueue.countQueued(JOB_TYPE) >= maxQueued) {
+            throw new RejectedExecutionException("Blog job queue is full (" + maxQueued + " queued jobs)");
+        }
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("user_id", userId);
+        payload.put("paper_id", paperId);
+        Map<String, Object> job = jobQueue.enqueue(JOB_TYPE, payload, PRIORITY, userId + ":" + paperId);
+
+        Map<String, Object> blogJob = toBlogJob(job);
+        blogJob.put("existing", job.get("existing"));
+        return blogJob;
+    }
+
+    /**
+     * 获取任务状态
+     * @return 任务Map，不存在或不是博客生成任务时返回null
+     */
+    public Map<String, Object> getJob(long jobId) throws SQLException {
+        Map<String, Object> job = jobQueue.getJob(jobId);
+        if (job == null || !JOB_TYPE.equals(job.get("job_type"))) {
+            return null;
+        }
+        return toBlogJob(job);
+    }
+
+    /**
+     * 获取已成功任务生成的推荐记录
+     * @return 推荐Map（含blog），任务未成功时返回null
+     */
+    public synchronized Map<String, Object> getResult(Map<String, Object> job) throws SQLException {
+        Object recommendationId = job.get("recommendation_id");
+        if (!"succeeded".equals(job.get("status")) || recommendationId == null) {
+            return null;
+        }
+        return dbManager.getRecommendationById((Integer) recommendationId);
+    }
+
+    /**
+     * 生成博客并写入推荐表
+     */
+    @Override
+    public Map<String, Object> handle(Map<String, Object> payload, Dbmanager workerDb) throws Exception {
+        int userId = (Integer) payload.get("user_id");
+        int paperId = (Integer) payload.get("paper_id");
+        System.out.println("📝 Blog job: generating blog for paper " + paperId + ", user " + userId);
+
+        Map<String, Object> paper = workerDb.getPaperById(paperId);
+        if (paper == null) {
+            throw new IllegalArgumentException("Paper not found");
+        }
+
+        RecommendationWriter recommendationWriter = new RecommendationWriter(new BlogGeneratorService(), workerDb);
+        RecommendationWriter.RecommendationResult recommendation = recommendationWriter.writeRecommendation(userId, paper);
+        System.out.println("✅ Blog job succeeded (recommendation " + recommendation.getRecommendationId()
+                + (recommendation.isCached() ? ", cached blog" : "") + ")");
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("recommendation_id", recommendation.getRecommendationId());
+        result.put("cached", recommendation.isCached());
+        return result;
+    }
+
+    /**
+     * 把通用任务转换为博客生成任务的返回格式
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> toBlogJob(Map<String, Object> job) {
+        Map<String, Object> payload = (Map<String, Object>) job.get("payload");
+        Map<String, Object> result = (Map<String, Object>) job.get("result");
+
+        Map<String, Object> blogJob = new HashMap<>();
+        blogJob.put("job_id", job.get("job_id"));
+        blogJob.put("user_id", payload != null ? payload.get("user_id") : null);
+        blogJob.put("paper_id", payload != null ? payload.get("paper_id") : null);
+        blogJob.put("status", job.get("status"));
+        blogJob.put("attempts", job.get("attempts"));
+        blogJob.put("recommendation_id", result != null ? result.get("recommendation_id") : null);
+        blogJob.put("error_message", job.get("error_message"));
+        blogJob.put("created_at", job.get("created_at"));
+        blogJob.put("started_at", job.get("started_at"));
+        blogJob.put("finished_at", job.get("finished_at"));
+        return blogJob;
+    }
+}
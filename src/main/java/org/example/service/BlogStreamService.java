@@ -0,0 +1,126 @@
+package org.example.service;
+
+import org.example.data_access_layer.Dbmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流式博客生成服务
+ * 在有界线程池中调用DeepSeek流式接口，把内容片段实时转交给调用方（如SSE连接），
+ * 生成完成后将完整博客写入recommendations表；容器的请求线程不会阻塞在LLM调用上
+ */
+public class BlogStreamService {
+    private static final String CONFIG_FILE = "jobs.properties";
+
+    private static BlogStreamService instance;
+
+    private final BlogGeneratorService blogGeneratorService;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+
+    /**
+     * 流式生成监听器，所有回调都在同一个生成线程上按顺序发生
+     */
+    public interface StreamListener extends BlogGeneratorService.BlogStreamListener {
+        /**
+         * 博客生成完成且已写入推荐表
+         */
+        void onComplete(RecommendationWriter.RecommendationResult result);
+
+        /**
+         * 生成或写入失败
+         */
+        void onError(Exception e);
+    }
+
+    /**
+     * 获取全局流式生成服务
+     */
+    public static synchronized BlogStreamService getInstance() {
+        if (instance == null) {
+            instance = new BlogStreamService();
+        }
+        return instance;
+    }
+
+    private BlogStreamService() {
+        Properties props = new Properties();
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (input != null) {
+                props.load(input);
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not load " + CONFIG_FILE + ": " + e.getMessage());
+        }
+
+        // 每个流读取响应体期间都占用一个DeepSeek并发名额，超过上限的流线程只会阻塞等待名额
+        int maxConcurrent = Math.min(Integer.parseInt(props.getProperty("blog.stream.max_concurrent", "8")),
+                HttpClientRegistry.maxConcurrent(HttpClientRegistry.Upstream.DEEPSEEK));
+        int maxQueued = Integer.parseInt(props.getProperty("blog.stream.max_queued", "32"));
+        this.timeoutMillis = Long.parseLong(props.getProperty("blog.stream.timeout_ms", "300000"));
+        this.blogGeneratorService = new BlogGeneratorService();
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxQueued)), runnable -> {
+                    Thread thread = new Thread(runnable, "blog-stream-" + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 流式连接的最长持续时间（毫秒）
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * 提交流式生成
+     * @param userId 用户ID
+     * @param paper 论文信息Map（至少包含paper_id、title、author、abstract）
+     * @param listener 内容片段和结果监听器
+     * @throws RejectedExecutionException 如果并发流和排队数已达上限
+     */
+    public void stream(int userId, Map<String, Object> paper, StreamListener listener) {
+        executor.execute(() -> {
+            // 每个流使用自己的数据库连接，写入完成后关闭
+            Dbmanager streamDb = new Dbmanager();
+            try {
+                RecommendationWriter writer = new RecommendationWriter(blogGeneratorService, streamDb);
+                RecommendationWriter.RecommendationResult result =
+                        writer.streamRecommendation(userId, paper, listener);
+                System.out.println("✅ Streamed blog for paper " + paper.get("paper_id") + ", user " + userId
+                        + " (recommendation " + result.getRecommendationId() + ")");
+                listener.onComplete(result);
+            } catch (Exception e) {
+                System.err.println("❌ Blog stream for paper " + paper.get("paper_id") + " failed: " + e.getMessage());
+                listener.onError(e);
+            } finally {
+                streamDb.closeConnection();
+            }
+        });
+    }
+
+    /**
+     * 停止线程池，正在进行的流会被中断
+     */
+    public void shutdown() {
+        synchronized (BlogStreamService.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+        executor.shutdownNow();
+    }
+}
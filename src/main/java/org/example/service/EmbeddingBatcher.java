@@ -0,0 +1,178 @@
+package org.example.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 向量请求微批处理器
+ * 在一个很短的时间窗口内收集并发的generateEmbedding请求，合并为一次批量Embeddings API调用，
+ * 再把结果分发给各个调用方的Future。
+ * 收集线程只负责组批，批次交给有界的发送线程池执行，最多maxConcurrent个批次同时在途；
+ * 发送线程全忙时收集线程等待，期间到达的请求合并进下一个更大的批次
+ */
+public class EmbeddingBatcher {
+
+    /**
+     * 批量生成向量的函数，返回结果与输入文本一一对应
+     */
+    public interface BatchEmbedder {
+        List<List<Double>> embed(List<String> texts) throws IOException;
+    }
+
+    private final BatchEmbedder embedder;
+    private final int maxBatchSize;
+    private final long windowMillis;
+    private final BlockingQueue<PendingRequest> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService dispatcher;
+    // 空闲的发送线程数
+    private final Semaphore dispatchPermits;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * @param embedder 批量向量生成函数
+     * @param maxBatchSize 单批最大文本数量
+     * @param windowMillis 收集请求的时间窗口（毫秒）
+     * @param maxConcurrent 同时在途的批次数上限
+     */
+    public EmbeddingBatcher(BatchEmbedder embedder, int maxBatchSize, long windowMillis, int maxConcurrent) {
+        this.embedder = embedder;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.windowMillis = Math.max(0, windowMillis);
+        int threads = Math.max(1, maxConcurrent);
+        this.dispatchPermits = new Semaphore(threads);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "embedding-dispatch-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.worker = new Thread(this::runLoop, "embedding-batcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 提交一个文本，返回其向量的Future
+     * @param text 要转换为向量的文本
+     * @return 向量Future，批量调用失败时以异常完成
+     */
+    public CompletableFuture<List<Double>> submit(String text) {
+        PendingRequest pending = new PendingRequest(text);
+        if (!running) {
+            pending.future.completeExceptionally(new IOException("EmbeddingBatcher has been shut down"));
+            return pending.future;
+        }
+        queue.add(pending);
+        return pending.future;
+    }
+
+    /**
+     * 停止后台线程，未处理的请求以异常完成
+     */
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+        dispatcher.shutdownNow();
+        List<PendingRequest> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        failAll(remaining, new IOException("EmbeddingBatcher has been shut down"));
+    }
+
+    /**
+     * 后台循环：等待空闲的发送线程，阻塞等待第一个请求，然后在时间窗口内继续收集，
+     * 直到窗口结束或达到批大小，再交给发送线程
+     */
+    private void runLoop() {
+        while (running) {
+            List<PendingRequest> batch = new ArrayList<>(maxBatchSize);
+            try {
+                dispatchPermits.acquire();
+                batch.add(queue.take());
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+                while (batch.size() < maxBatchSize) {
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    PendingRequest next = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                failAll(batch, new IOException("EmbeddingBatcher interrupted"));
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                dispatcher.execute(() -> {
+                    try {
+                        dispatch(batch);
+                    } finally {
+                        dispatchPermits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // 已关闭
+                dispatchPermits.release();
+                failAll(batch, new IOException("EmbeddingBatcher has been shut down"));
+            }
+        }
+    }
+
+    /**
+     * 发送一个批次并完成对应的Future
+     */
+    private void dispatch(List<PendingRequest> batch) {
+        List<String> texts = new ArrayList<>(batch.size());
+        for (PendingRequest pending : batch) {
+            texts.add(pending.text);
+        }
+
+        try {
+            List<List<Double>> embeddings = embedder.embed(texts);
+            if (embeddings == null || embeddings.size() != batch.size()) {
+                throw new IOException("Batch embedding returned " + (embeddings == null ? 0 : embeddings.size())
+                        + " vectors for " + batch.size() + " texts");
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(embeddings.get(i));
+            }
+        } catch (Exception e) {
+            failAll(batch, e);
+        }
+    }
+
+    private void failAll(List<PendingRequest> batch, Throwable error) {
+        for (PendingRequest pending : batch) {
+            pending.future.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * 等待中的单个请求
+     */
+    private static class PendingRequest {
+        final String text;
+        final CompletableFuture<List<Double>> future = new CompletableFuture<>();
+
+        PendingRequest(String text) {
+            this.text = text;
+        }
+    }
+}
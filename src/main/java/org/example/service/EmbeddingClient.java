@@ -0,0 +1,228 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Gemini向量客户端
+ * 进程内共享一个实例，持有Gemini配置、HTTP客户端和微批处理器，
+ * 所有IndexService实例的向量请求都经由它合并发送
+ */
+public class EmbeddingClient {
+    private static final String CONFIG_FILE = "vector.properties";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private static EmbeddingClient instance;
+
+    // 相同文本的并发向量请求只发送一次
+    private final SingleFlight<String, List<Double>> embeddingFlights = new SingleFlight<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OkHttpClient httpClient;
+    private final EmbeddingBatcher batcher;
+
+    private String batchApiUrl;
+    private String model;
+    private String apiKey;
+    private boolean proxyEnabled;
+    private String proxyHost;
+    private int proxyPort;
+    private int batchMaxSize;
+    private long batchWindowMillis;
+
+    /**
+     * 获取全局向量客户端（首次调用时加载配置并启动微批处理器）
+     * @throws IOException 如果配置文件缺失或未配置API密钥
+     */
+    public static synchronized EmbeddingClient getInstance() throws IOException {
+        if (instance == null) {
+            instance = new EmbeddingClient();
+        }
+        return instance;
+    }
+
+    private EmbeddingClient() throws IOException {
+        loadConfiguration();
+
+        // 使用共享的Gemini客户端，超时在http.properties中配置
+        OkHttpClient sharedClient = HttpClientRegistry.client(HttpClientRegistry.Upstream.GEMINI);
+
+        // 配置代理（派生的客户端仍共享连接池和调度器）
+        if (proxyEnabled) {
+            Proxy proxy = new Proxy(Proxy.Type.HTTP,
+                    new InetSocketAddress(proxyHost, proxyPort));
+            sharedClient = sharedClient.newBuilder().proxy(proxy).build();
+            System.out.println("EmbeddingClient: Proxy configured - " + proxyHost + ":" + proxyPort);
+        }
+        this.httpClient = sharedClient;
+
+        // 同时在途的批次数与Gemini的并发上限一致
+        int maxConcurrent = HttpClientRegistry.maxConcurrent(HttpClientRegistry.Upstream.GEMINI);
+        this.batcher = new EmbeddingBatcher(this::generateEmbeddings, batchMaxSize, batchWindowMillis, maxConcurrent);
+        System.out.println("EmbeddingClient: Embedding batcher started (max batch " + batchMaxSize
+                + ", window " + batchWindowMillis + "ms, " + maxConcurrent + " concurrent batches)");
+    }
+
+    /**
+     * 加载配置文件
+     */
+    private void loadConfiguration() throws IOException {
+        Properties props = new Properties();
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (input == null) {
+                throw new IOException("Configuration file not found: " + CONFIG_FILE);
+            }
+            props.load(input);
+
+            String apiUrl = props.getProperty("embeddings.api_url");
+            this.model = props.getProperty("embeddings.model");
+            this.batchApiUrl = props.getProperty("embeddings.batch_api_url",
+                    apiUrl != null ? apiUrl.replace(":embedContent", ":batchEmbedContents") : null);
+
+            // 微批配置：Gemini batchEmbedContents单次最多100条
+            this.batchMaxSize = Integer.parseInt(props.getProperty("embeddings.batch.max_size", "100"));
+            this.batchWindowMillis = Long.parseLong(props.getProperty("embeddings.batch.window_ms", "20"));
+
+            // 优先从环境变量获取API密钥
+            this.apiKey = System.getenv(props.getProperty("embeddings.api_key_env"));
+            if (this.apiKey == null || this.apiKey.isEmpty()) {
+                this.apiKey = props.getProperty("embeddings.api_key");
+            }
+
+            // 加载代理配置
+            this.proxyEnabled = Boolean.parseBoolean(props.getProperty("proxy.enabled", "false"));
+            this.proxyHost = props.getProperty("proxy.host", "127.0.0.1");
+            this.proxyPort = Integer.parseInt(props.getProperty("proxy.port", "7897"));
+
+            if (this.apiKey == null || this.apiKey.isEmpty()) {
+                throw new IOException("Gemini API key is not configured. Please set the environment variable or configure in " + CONFIG_FILE);
+            }
+
+            System.out.println("EmbeddingClient: Configuration loaded successfully");
+            System.out.println("EmbeddingClient: Using Gemini model: " + this.model);
+            System.out.println("EmbeddingClient: Proxy enabled: " + this.proxyEnabled);
+
+        } catch (IOException e) {
+            System.err.println("EmbeddingClient: Failed to load configuration: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * 生成文本向量，并发调用会被微批处理器合并为一次批量请求
+     * @param text 要转换为向量的文本
+     * @return 向量列表
+     * @throws IOException 如果API调用失败
+     */
+    public List<Double> generateEmbedding(String text) throws IOException {
+        try {
+            return generateEmbeddingAsync(text).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for embedding", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to generate embedding: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 异步生成文本向量，由微批处理器合并发送
+     * 相同文本已有请求在进行中时共享该请求的结果
+     * @param text 要转换为向量的文本
+     * @return 向量Future
+     */
+    public CompletableFuture<List<Double>> generateEmbeddingAsync(String text) {
+        return embeddingFlights.submit(text, () -> batcher.submit(text));
+    }
+
+    /**
+     * 使用Gemini batchEmbedContents API批量生成文本向量
+     * @param texts 要转换为向量的文本列表
+     * @return 向量列表，与输入顺序一致
+     * @throws IOException 如果API调用失败
+     */
+    public List<List<Double>> generateEmbeddings(List<String> texts) throws IOException {
+        if (texts.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // 构建请求体 - Gemini批量格式
+        List<Map<String, Object>> requests = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("model", "models/" + model);
+            item.put("content", Map.of("parts", new Object[]{Map.of("text", text)}));
+            requests.add(item);
+        }
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("requests", requests);
+
+        String jsonBody = objectMapper.writeValueAsString(requestBody);
+
+        // 构建请求 - 使用x-goog-api-key头
+        Request request = new Request.Builder()
+                .url(batchApiUrl)
+                .post(RequestBody.create(jsonBody, JSON))
+                .addHeader("x-goog-api-key", apiKey)
+                .addHeader("Content-Type", "application/json")
+                .build();
+
+        // 发送请求
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                String errorBody = response.body() != null ? response.body().string() : "Unknown error";
+                throw new IOException("Gemini API error (HTTP " + response.code() + "): " + errorBody);
+            }
+
+            String responseBody = response.body().string();
+            return parseGeminiBatchEmbeddingResponse(responseBody, texts.size());
+        }
+    }
+
+    /**
+     * 解析Gemini batchEmbedContents API响应
+     * @param jsonResponse API响应JSON
+     * @param expectedCount 请求中的文本数量
+     * @return 向量列表
+     * @throws IOException 如果解析失败
+     */
+    private List<List<Double>> parseGeminiBatchEmbeddingResponse(String jsonResponse, int expectedCount) throws IOException {
+        JsonNode rootNode = objectMapper.readTree(jsonResponse);
+
+        // Gemini批量响应格式: {"embeddings": [{"values": [float, ...]}, ...]}
+        JsonNode embeddingsNode = rootNode.get("embeddings");
+        if (embeddingsNode != null && embeddingsNode.isArray() && embeddingsNode.size() == expectedCount) {
+            List<List<Double>> embeddings = new ArrayList<>(expectedCount);
+            for (JsonNode embeddingNode : embeddingsNode) {
+                JsonNode valuesNode = embeddingNode.get("values");
+                if (valuesNode == null || !valuesNode.isArray()) {
+                    throw new IOException("Invalid response format from Gemini Embeddings API: missing values");
+                }
+                List<Double> embedding = new ArrayList<>(valuesNode.size());
+                for (JsonNode value : valuesNode) {
+                    embedding.add(value.asDouble());
+                }
+                embeddings.add(embedding);
+            }
+            return embeddings;
+        }
+
+        throw new IOException("Invalid response format from Gemini Embeddings API: " + jsonResponse);
+    }
+}
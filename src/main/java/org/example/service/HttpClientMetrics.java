@@ -0,0 +1,164 @@
+package org.example.service;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个上游的HTTP调用指标
+ * 作为OkHttp的EventListener收集调用次数、失败数、新建/复用连接数、状态码分布和耗时，
+ * 并由ResilienceInterceptor记录重试和熔断情况
+ */
+public class HttpClientMetrics extends EventListener {
+    private final String upstream;
+    private final ConnectionPool connectionPool;
+
+    private final AtomicLong callsStarted = new AtomicLong();
+    private final AtomicLong callsSucceeded = new AtomicLong();
+    private final AtomicLong callsFailed = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong connectionsAcquired = new AtomicLong();
+    private final AtomicLong http2Connections = new AtomicLong();
+    private final AtomicLong totalCallMillis = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong givenUp = new AtomicLong();
+    private final AtomicLong circuitRejected = new AtomicLong();
+    private final AtomicLong circuitOpened = new AtomicLong();
+    private final AtomicLong[] statusClasses = new AtomicLong[6];
+    private final Map<Call, Long> callStartedAt = new ConcurrentHashMap<>();
+    private volatile ResilienceInterceptor.CircuitBreaker circuitBreaker;
+
+    public HttpClientMetrics(String upstream, ConnectionPool connectionPool) {
+        this.upstream = upstream;
+        this.connectionPool = connectionPool;
+        for (int i = 0; i < statusClasses.length; i++) {
+            statusClasses[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * 所有调用共用同一个监听器实例
+     */
+    public EventListener.Factory factory() {
+        return call -> this;
+    }
+
+    @Override
+    public void callStart(Call call) {
+        callsStarted.incrementAndGet();
+        inFlight.incrementAndGet();
+        callStartedAt.put(call, System.nanoTime());
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        connectionsOpened.incrementAndGet();
+        if (protocol == Protocol.HTTP_2) {
+            http2Connections.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        connectionsAcquired.incrementAndGet();
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        int statusClass = response.code() / 100;
+        if (statusClass >= 1 && statusClass <= 5) {
+            statusClasses[statusClass].incrementAndGet();
+        }
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        callsSucceeded.incrementAndGet();
+        finish(call);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        callsFailed.incrementAndGet();
+        finish(call);
+    }
+
+    private void finish(Call call) {
+        inFlight.decrementAndGet();
+        Long startedAt = callStartedAt.remove(call);
+        if (startedAt != null) {
+            totalCallMillis.addAndGet((System.nanoTime() - startedAt) / 1_000_000);
+        }
+    }
+
+    void setCircuitBreaker(ResilienceInterceptor.CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    /**
+     * 重试次数用尽或请求不可重试，最终以失败返回
+     */
+    void recordGiveUp() {
+        givenUp.incrementAndGet();
+    }
+
+    void recordCircuitRejected() {
+        circuitRejected.incrementAndGet();
+    }
+
+    void recordCircuitOpened() {
+        circuitOpened.incrementAndGet();
+    }
+
+    /**
+     * 指标快照
+     * @return 包含调用数、连接数、状态码分布、平均耗时、连接池状态以及重试和熔断计数的Map
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long finished = callsSucceeded.get() + callsFailed.get();
+        long acquired = connectionsAcquired.get();
+        long opened = connectionsOpened.get();
+
+        metrics.put("upstream", upstream);
+        metrics.put("calls_started", callsStarted.get());
+        metrics.put("calls_succeeded", callsSucceeded.get());
+        metrics.put("calls_failed", callsFailed.get());
+        metrics.put("in_flight", inFlight.get());
+        metrics.put("avg_call_ms", finished > 0 ? totalCallMillis.get() / finished : 0);
+        metrics.put("connections_opened", opened);
+        metrics.put("connections_reused", Math.max(0, acquired - opened));
+        metrics.put("http2_connections", http2Connections.get());
+        metrics.put("pool_connections", connectionPool.connectionCount());
+        metrics.put("pool_idle_connections", connectionPool.idleConnectionCount());
+
+        Map<String, Long> statusCounts = new LinkedHashMap<>();
+        for (int i = 1; i < statusClasses.length; i++) {
+            statusCounts.put(i + "xx", statusClasses[i].get());
+        }
+        metrics.put("responses", statusCounts);
+
+        metrics.put("retries", retries.get());
+        metrics.put("given_up", givenUp.get());
+        metrics.put("circuit_state", circuitBreaker != null ? circuitBreaker.getState().name() : "NONE");
+        metrics.put("circuit_opened", circuitOpened.get());
+        metrics.put("circuit_rejected", circuitRejected.get());
+        return metrics;
+    }
+}
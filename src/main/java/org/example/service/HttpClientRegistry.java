@@ -0,0 +1,212 @@
+package org.example.service;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 共享HTTP客户端注册表
+ * 每个上游（arXiv、Gemini、DeepSeek）一个客户端，均由同一个基础客户端派生，
+ * 共享调度器线程和TLS配置；每个上游有独立的连接池、超时、并发上限、重试与熔断策略和调用指标
+ * 客户端在进程内只创建一次，连接在多次请求之间保持复用
+ */
+public class HttpClientRegistry {
+    private static final String CONFIG_FILE = "http.properties";
+
+    /**
+     * 上游服务
+     */
+    public enum Upstream {
+        ARXIV("arxiv"),
+        GEMINI("gemini"),
+        DEEPSEEK("deepseek");
+
+        private final String key;
+
+        Upstream(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private static HttpClientRegistry instance;
+
+    private final Map<Upstream, OkHttpClient> clients = new EnumMap<>(Upstream.class);
+    private final Map<Upstream, HttpClientMetrics> metrics = new EnumMap<>(Upstream.class);
+    private final Map<Upstream, Integer> maxConcurrent = new EnumMap<>(Upstream.class);
+
+    /**
+     * 获取全局注册表（首次调用时创建）
+     */
+    public static synchronized HttpClientRegistry getInstance() {
+        if (instance == null) {
+            instance = new HttpClientRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * 获取上游对应的共享客户端
+     */
+    public static OkHttpClient client(Upstream upstream) {
+        return getInstance().clients.get(upstream);
+    }
+
+    /**
+     * 获取上游的并发调用上限（http.<upstream>.max_concurrent）
+     */
+    public static int maxConcurrent(Upstream upstream) {
+        return getInstance().maxConcurrent.get(upstream);
+    }
+
+    private HttpClientRegistry() {
+        Properties props = new Properties();
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (input != null) {
+                props.load(input);
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not load " + CONFIG_FILE + ": " + e.getMessage());
+        }
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Integer.parseInt(props.getProperty("http.dispatcher.max_requests", "64")));
+        dispatcher.setMaxRequestsPerHost(Integer.parseInt(props.getProperty("http.dispatcher.max_requests_per_host", "16")));
+
+        OkHttpClient baseClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .retryOnConnectionFailure(true)
+                .build();
+
+        for (Upstream upstream : Upstream.values()) {
+            String prefix = "http." + upstream.getKey() + ".";
+            ConnectionPool connectionPool = new ConnectionPool(
+                    Integer.parseInt(props.getProperty(prefix + "max_idle_connections", "5")),
+                    Long.parseLong(props.getProperty(prefix + "keep_alive_seconds", "300")),
+                    TimeUnit.SECONDS);
+            HttpClientMetrics upstreamMetrics = new HttpClientMetrics(upstream.getKey(), connectionPool);
+            int upstreamMaxConcurrent = Math.max(1, Integer.parseInt(props.getProperty(prefix + "max_concurrent", "8")));
+
+            List<Protocol> protocols = new ArrayList<>();
+            if (Boolean.parseBoolean(props.getProperty(prefix + "http2", "true"))) {
+                protocols.add(Protocol.HTTP_2);
+            }
+            protocols.add(Protocol.HTTP_1_1);
+
+            OkHttpClient client = baseClient.newBuilder()
+                    .connectionPool(connectionPool)
+                    .protocols(protocols)
+                    .connectTimeout(Long.parseLong(props.getProperty(prefix + "connect_timeout_ms", "30000")), TimeUnit.MILLISECONDS)
+                    .readTimeout(Long.parseLong(props.getProperty(prefix + "read_timeout_ms", "60000")), TimeUnit.MILLISECONDS)
+                    .writeTimeout(Long.parseLong(props.getProperty(prefix + "write_timeout_ms", "30000")), TimeUnit.MILLISECONDS)
+                    // 重试在并发限制之外，退避等待时不占用并发名额
+                    .addInterceptor(new ResilienceInterceptor(upstream.getKey(),
+                            Integer.parseInt(props.getProperty(prefix + "retry.max_attempts", "3")),
+                            Long.parseLong(props.getProperty(prefix + "retry.base_delay_ms", "500")),
+                            Long.parseLong(props.getProperty(prefix + "retry.max_delay_ms", "30000")),
+                            Boolean.parseBoolean(props.getProperty(prefix + "retry.post", "false")),
+                            Integer.parseInt(props.getProperty(prefix + "circuit.failure_threshold", "5")),
+                            Long.parseLong(props.getProperty(prefix + "circuit.open_ms", "30000")),
+                            upstreamMetrics))
+                    .addInterceptor(new ConcurrencyLimitInterceptor(upstreamMaxConcurrent))
+                    .eventListenerFactory(upstreamMetrics.factory())
+                    .build();
+
+            clients.put(upstream, client);
+            metrics.put(upstream, upstreamMetrics);
+            maxConcurrent.put(upstream, upstreamMaxConcurrent);
+        }
+        System.out.println("HttpClientRegistry: Shared HTTP clients initialized for " + clients.keySet());
+    }
+
+    /**
+     * 所有上游的调用指标快照
+     * @return 上游名称到指标的映射
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<Upstream, HttpClientMetrics> entry : metrics.entrySet()) {
+            snapshot.put(entry.getKey().getKey(), entry.getValue().snapshot());
+        }
+        return snapshot;
+    }
+
+    /**
+     * 限制对同一上游的并发调用数
+     * OkHttp调度器的maxRequestsPerHost只约束异步调用，这里对同步调用同样生效；
+     * 名额持有到响应体关闭为止，流式响应（如DeepSeek stream=true）读取响应体期间同样计入并发
+     */
+    private static class ConcurrencyLimitInterceptor implements Interceptor {
+        private final Semaphore permits;
+
+        ConcurrencyLimitInterceptor(int maxConcurrent) {
+            this.permits = new Semaphore(Math.max(1, maxConcurrent), true);
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for an HTTP permit");
+            }
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    permits.release();
+                }
+            };
+
+            Response response;
+            try {
+                response = chain.proceed(chain.request());
+            } catch (IOException | RuntimeException | Error e) {
+                release.run();
+                throw e;
+            }
+            ResponseBody body = response.body();
+            if (body == null) {
+                release.run();
+                return response;
+            }
+
+            BufferedSource source = Okio.buffer(new ForwardingSource(body.source()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        release.run();
+                    }
+                }
+            });
+            return response.newBuilder()
+                    .body(ResponseBody.create(source, body.contentType(), body.contentLength()))
+                    .build();
+        }
+    }
+}
@@ -1,105 +1,48 @@
 package org.example.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import okhttp3.*;
 import org.example.data_access_layer.Dbmanager;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.InetSocketAddress;
-import java.net.Proxy;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
-import java.util.concurrent.TimeUnit;
-import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 索引服务
- * 使用OpenAI Embeddings API将论文摘要转换为向量并存储到向量数据库
+ * 使用Gemini Embeddings API将论文摘要转换为向量并存储到向量数据库
+ * 向量请求由进程内共享的EmbeddingClient合并发送
  */
 public class IndexService {
-    private static final String CONFIG_FILE = "vector.properties";
-    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
-
-    private final OkHttpClient httpClient;
+    private final EmbeddingClient embeddingClient;
     private final ObjectMapper objectMapper;
     private final Dbmanager dbManager;
-
-    private String apiUrl;
-    private String model;
-    private String apiKey;
-    private boolean proxyEnabled;
-    private String proxyHost;
-    private int proxyPort;
+    private volatile IndexListener indexListener;
 
     public IndexService() throws IOException {
+        this.embeddingClient = EmbeddingClient.getInstance();
         this.objectMapper = new ObjectMapper();
         this.dbManager = new Dbmanager();
-        loadConfiguration();
-
-        // 配置HTTP客户端
-        OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(60, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS);
-
-        // 配置代理
-        if (proxyEnabled) {
-            Proxy proxy = new Proxy(Proxy.Type.HTTP,
-                    new InetSocketAddress(proxyHost, proxyPort));
-            clientBuilder.proxy(proxy);
-            System.out.println("IndexService: Proxy configured - " + proxyHost + ":" + proxyPort);
-        }
-
-        this.httpClient = clientBuilder.build();
     }
 
     /**
-     * 加载配置文件
+     * 论文向量写入后的回调
      */
-    private void loadConfiguration() throws IOException {
-        Properties props = new Properties();
-        try (InputStream input = getClass().getClassLoader().getResourceAsStream(CONFIG_FILE)) {
-            if (input == null) {
-                throw new IOException("Configuration file not found: " + CONFIG_FILE);
-            }
-            props.load(input);
-
-            // 加载向量数据库配置
-            String vectorDbUrl = props.getProperty("vectordb.url");
-            String vectorDbUser = props.getProperty("vectordb.user");
-            String vectorDbPassword = props.getProperty("vectordb.password");
-
-            // 加载OpenAI配置
-            this.apiUrl = props.getProperty("embeddings.api_url");
-            this.model = props.getProperty("embeddings.model");
-
-            // 优先从环境变量获取API密钥
-            this.apiKey = System.getenv(props.getProperty("embeddings.api_key_env"));
-            if (this.apiKey == null || this.apiKey.isEmpty()) {
-                this.apiKey = props.getProperty("embeddings.api_key");
-            }
-
-            // 加载代理配置
-            this.proxyEnabled = Boolean.parseBoolean(props.getProperty("proxy.enabled", "false"));
-            this.proxyHost = props.getProperty("proxy.host", "127.0.0.1");
-            this.proxyPort = Integer.parseInt(props.getProperty("proxy.port", "7897"));
-
-            if (this.apiKey == null || this.apiKey.isEmpty()) {
-                throw new IOException("Gemini API key is not configured. Please set the environment variable or configure in " + CONFIG_FILE);
-            }
-
-            System.out.println("IndexService: Configuration loaded successfully");
-            System.out.println("IndexService: Using Gemini model: " + this.model);
-            System.out.println("IndexService: Proxy enabled: " + this.proxyEnabled);
+    public interface IndexListener {
+        /**
+         * @param paperIds 刚建立索引的论文ID
+         * @param embeddings 对应的向量，与paperIds顺序一致
+         */
+        void onPapersIndexed(List<Integer> paperIds, List<List<Double>> embeddings);
+    }
 
-        } catch (IOException e) {
-            System.err.println("IndexService: Failed to load configuration: " + e.getMessage());
-            throw e;
-        }
+    /**
+     * 设置论文索引回调（如反向匹配感兴趣的用户），回调异常不影响索引结果
+     */
+    public void setIndexListener(IndexListener indexListener) {
+        this.indexListener = indexListener;
     }
 
     /**
@@ -125,67 +68,88 @@ public class IndexService {
         List<Double> embedding = generateEmbedding(abstractText);
 
         // 存储到向量数据库
-        return storeEmbedding(paperId, embedding);
+        boolean stored = storeEmbedding(paperId, embedding);
+        if (stored) {
+            notifyIndexed(List.of(paperId), List.of(embedding));
+        }
+        return stored;
     }
 
     /**
      * 使用Gemini API生成文本向量
+     * 并发调用会被微批处理器合并为一次批量请求
      * @param text 要转换为向量的文本
      * @return 向量列表
      * @throws IOException 如果API调用失败
      */
     public List<Double> generateEmbedding(String text) throws IOException {
-        // 构建请求体 - Gemini格式
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", "models/" + model);
-        requestBody.put("content", Map.of("parts", new Object[]{Map.of("text", text)}));
-
-        String jsonBody = objectMapper.writeValueAsString(requestBody);
-
-        // 构建请求 - 使用x-goog-api-key头
-        Request request = new Request.Builder()
-                .url(apiUrl)
-                .post(RequestBody.create(jsonBody, JSON))
-                .addHeader("x-goog-api-key", apiKey)
-                .addHeader("Content-Type", "application/json")
-                .build();
+        return embeddingClient.generateEmbedding(text);
+    }
 
-        // 发送请求
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                String errorBody = response.body() != null ? response.body().string() : "Unknown error";
-                throw new IOException("Gemini API error (HTTP " + response.code() + "): " + errorBody);
-            }
+    /**
+     * 异步生成文本向量，由共享的微批处理器合并发送
+     * 相同文本已有请求在进行中时共享该请求的结果
+     * @param text 要转换为向量的文本
+     * @return 向量Future
+     */
+    public CompletableFuture<List<Double>> generateEmbeddingAsync(String text) {
+        return embeddingClient.generateEmbeddingAsync(text);
+    }
 
-            String responseBody = response.body().string();
-            return parseGeminiEmbeddingResponse(responseBody);
-        }
+    /**
+     * 使用Gemini batchEmbedContents API批量生成文本向量
+     * @param texts 要转换为向量的文本列表
+     * @return 向量列表，与输入顺序一致
+     * @throws IOException 如果API调用失败
+     */
+    public List<List<Double>> generateEmbeddings(List<String> texts) throws IOException {
+        return embeddingClient.generateEmbeddings(texts);
     }
 
     /**
-     * 解析Gemini Embeddings API响应
-     * @param jsonResponse API响应JSON
-     * @return 向量列表
-     * @throws IOException 如果解析失败
+     * 批量为论文创建向量索引，一次batchEmbedContents请求生成全部向量
+     * @param papers 论文列表，每项包含paper_id和abstract；摘要为空的论文会被跳过
+     * @return 成功存储向量的论文数量
+     * @throws IOException 如果API调用失败
+     * @throws Exception 如果数据库操作失败
      */
-    private List<Double> parseGeminiEmbeddingResponse(String jsonResponse) throws IOException {
-        JsonNode rootNode = objectMapper.readTree(jsonResponse);
+    public int indexPapers(List<Map<String, Object>> papers) throws Exception {
+        List<Integer> paperIds = new ArrayList<>(papers.size());
+        List<String> texts = new ArrayList<>(papers.size());
+        for (Map<String, Object> paper : papers) {
+            String abstractText = (String) paper.get("abstract");
+            if (abstractText == null || abstractText.trim().isEmpty()) {
+                System.err.println("Paper has no abstract, skipping: " + paper.get("paper_id"));
+                continue;
+            }
+            paperIds.add((Integer) paper.get("paper_id"));
+            texts.add(abstractText);
+        }
 
-        // Gemini API响应格式: {"embedding": {"values": [float, float, ...]}}
-        if (rootNode.has("embedding") && rootNode.get("embedding").has("values")) {
-            JsonNode valuesNode = rootNode.get("embedding").get("values");
-            if (valuesNode.isArray()) {
-                // 将JsonNode转换为List<Double>
-                List<Double> embedding = new java.util.ArrayList<>();
-                for (JsonNode value : valuesNode) {
-                    embedding.add(value.asDouble());
-                }
+        List<List<Double>> embeddings = generateEmbeddings(texts);
 
-                return embedding;
+        List<Integer> storedIds = new ArrayList<>(paperIds.size());
+        List<List<Double>> storedEmbeddings = new ArrayList<>(paperIds.size());
+        for (int i = 0; i < paperIds.size(); i++) {
+            if (storeEmbedding(paperIds.get(i), embeddings.get(i))) {
+                storedIds.add(paperIds.get(i));
+                storedEmbeddings.add(embeddings.get(i));
             }
         }
+        notifyIndexed(storedIds, storedEmbeddings);
+        return storedIds.size();
+    }
 
-        throw new IOException("Invalid response format from Gemini Embeddings API: " + jsonResponse);
+    private void notifyIndexed(List<Integer> paperIds, List<List<Double>> embeddings) {
+        IndexListener listener = indexListener;
+        if (listener == null || paperIds.isEmpty()) {
+            return;
+        }
+        try {
+            listener.onPapersIndexed(paperIds, embeddings);
+        } catch (Exception e) {
+            System.err.println("IndexService: Index listener failed: " + e.getMessage());
+        }
     }
 
     /**
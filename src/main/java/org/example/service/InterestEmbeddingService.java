@@ -0,0 +1,106 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.data_access_layer.Dbmanager;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用户兴趣向量生成任务
+ * 用户更新兴趣后以interest_embedding类型写入jobs表，由任务队列的工作线程生成向量，
+ * 存入interest_embeddings表并同步到反向匹配使用的兴趣向量索引，然后提交候选集刷新任务
+ */
+public class InterestEmbeddingService implements JobQueueService.JobHandler {
+    public static final String JOB_TYPE = "interest_embedding";
+    // 兴趣向量是生成推荐的前提且调用很快，优先于博客生成
+    private static final int PRIORITY = 10;
+    // 按新兴趣向量重新评分用户候选集的任务，由编排层的CandidateRefresher处理
+    public static final String CANDIDATE_REFRESH_JOB_TYPE = "candidate_refresh";
+    private static final int CANDIDATE_REFRESH_PRIORITY = 5;
+
+    private static InterestEmbeddingService instance;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private IndexService indexService;
+
+    /**
+     * 获取全局服务
+     */
+    public static synchronized InterestEmbeddingService getInstance() {
+        if (instance == null) {
+            instance = new InterestEmbeddingService();
+        }
+        return instance;
+    }
+
+    private InterestEmbeddingService() {
+    }
+
+    /**
+     * 提交兴趣向量生成任务
+     * @param userId 用户ID
+     * @param interest 用户兴趣文本
+     * @return 任务Map
+     * @throws SQLException 如果数据库操作失败
+     */
+    public Map<String, Object> submit(int userId, String interest) throws SQLException {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("user_id", userId);
+        payload.put("interest", interest);
+        return JobQueueService.getInstance().enqueue(JOB_TYPE, payload, PRIORITY, null);
+    }
+
+    /**
+     * 生成并保存兴趣向量；用户兴趣在任务执行前已再次修改时跳过，由较新的任务处理
+     */
+    @Override
+    public Map<String, Object> handle(Map<String, Object> payload, Dbmanager workerDb) throws Exception {
+        int userId = (Integer) payload.get("user_id");
+        String interest = (String) payload.get("interest");
+
+        Map<String, Object> user = workerDb.getUserById(userId);
+        if (user == null) {
+            throw new IllegalArgumentException("User not found");
+        }
+        Map<String, Object> result = new HashMap<>();
+        if (!interest.equals(user.get("interest"))) {
+            result.put("skipped", "Interest changed before the job ran");
+            return result;
+        }
+
+        System.out.println("🔄 Generating interest embedding for user " + userId);
+        List<Double> embedding = getIndexService().generateEmbedding(interest);
+        String embeddingJson = objectMapper.writeValueAsString(embedding);
+
+        // 存储到interest_embeddings表（作为历史记录）
+        if (!workerDb.insertInterestEmbedding(userId, embeddingJson, embedding.size())) {
+            throw new SQLException("Failed to store interest embedding");
+        }
+        // 同步到反向匹配使用的兴趣向量索引
+        InterestVectorIndex.getInstance().update(userId, embedding);
+        System.out.println("✅ Successfully generated and stored interest embedding for user " + userId);
+
+        // 同一用户未执行的刷新任务合并为一个；执行中的刷新可能使用了旧的兴趣向量，不合并
+        Map<String, Object> refreshPayload = new HashMap<>();
+        refreshPayload.put("user_id", userId);
+        JobQueueService.getInstance().enqueue(CANDIDATE_REFRESH_JOB_TYPE, refreshPayload,
+                CANDIDATE_REFRESH_PRIORITY, String.valueOf(userId), false);
+
+        result.put("dimension", embedding.size());
+        return result;
+    }
+
+    /**
+     * 获取共享的IndexService，首次调用时创建
+     */
+    private synchronized IndexService getIndexService() throws IOException {
+        if (indexService == null) {
+            indexService = new IndexService();
+        }
+        return indexService;
+    }
+}
@@ -0,0 +1,160 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.data_access_layer.Dbmanager;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用户兴趣向量索引
+ * 在内存中保存每个用户最新的兴趣向量（已归一化），用于新论文建立索引时反向查找感兴趣的用户
+ * 向量从interest_embeddings表加载，按刷新间隔整体重载，用户更新兴趣时单独更新
+ */
+public class InterestVectorIndex {
+    private static InterestVectorIndex instance;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Integer, float[]> vectors = new ConcurrentHashMap<>();
+    private volatile long loadedAt;
+
+    /**
+     * 匹配结果
+     */
+    public static class Match {
+        private final int userId;
+        private final double score;
+
+        Match(int userId, double score) {
+            this.userId = userId;
+            this.score = score;
+        }
+
+        public int getUserId() {
+            return userId;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * 获取全局索引
+     */
+    public static synchronized InterestVectorIndex getInstance() {
+        if (instance == null) {
+            instance = new InterestVectorIndex();
+        }
+        return instance;
+    }
+
+    private InterestVectorIndex() {
+    }
+
+    /**
+     * 距上次加载超过refreshMillis时从数据库重新加载全部用户的最新兴趣向量
+     * @param dbManager 调用方的数据库连接
+     * @param refreshMillis 刷新间隔（毫秒）
+     * @throws SQLException 如果数据库查询失败
+     */
+    public synchronized void refreshIfStale(Dbmanager dbManager, long refreshMillis) throws SQLException {
+        if (loadedAt > 0 && System.currentTimeMillis() - loadedAt < refreshMillis) {
+            return;
+        }
+
+        Map<Integer, String> embeddings = dbManager.getLatestInterestEmbeddings();
+        Map<Integer, float[]> loaded = new ConcurrentHashMap<>();
+        for (Map.Entry<Integer, String> entry : embeddings.entrySet()) {
+            try {
+                loaded.put(entry.getKey(), normalize(parseEmbedding(entry.getValue())));
+            } catch (IOException e) {
+                System.err.println("InterestVectorIndex: Invalid interest embedding for user " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+        vectors.keySet().retainAll(loaded.keySet());
+        vectors.putAll(loaded);
+        loadedAt = System.currentTimeMillis();
+        System.out.println("InterestVectorIndex: Loaded interest vectors for " + vectors.size() + " users");
+    }
+
+    /**
+     * 用户兴趣向量更新后同步到索引
+     */
+    public void update(int userId, List<Double> embedding) {
+        double[] values = new double[embedding.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = embedding.get(i);
+        }
+        vectors.put(userId, normalize(values));
+    }
+
+    /**
+     * 查找与论文向量余弦相似度不低于阈值的用户
+     * @param paperEmbedding 论文向量
+     * @param threshold 相似度阈值
+     * @param limit 最多返回的用户数（取得分最高的）
+     * @return 按得分降序排列的匹配用户
+     */
+    public List<Match> match(List<Double> paperEmbedding, double threshold, int limit) {
+        double[] paperVector = new double[paperEmbedding.size()];
+        for (int i = 0; i < paperVector.length; i++) {
+            paperVector[i] = paperEmbedding.get(i);
+        }
+        float[] normalized = normalize(paperVector);
+
+        List<Match> matches = new ArrayList<>();
+        for (Map.Entry<Integer, float[]> entry : vectors.entrySet()) {
+            float[] userVector = entry.getValue();
+            if (userVector.length != normalized.length) {
+                continue;
+            }
+            double score = 0.0;
+            for (int i = 0; i < normalized.length; i++) {
+                score += userVector[i] * normalized[i];
+            }
+            if (score >= threshold) {
+                matches.add(new Match(entry.getKey(), score));
+            }
+        }
+
+        matches.sort((a, b) -> Double.compare(b.score, a.score));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * 归一化为单位向量，之后的点积即为余弦相似度
+     */
+    private float[] normalize(double[] vector) {
+        double sum = 0.0;
+        for (double value : vector) {
+            sum += value * value;
+        }
+        double norm = Math.sqrt(sum);
+        float[] normalized = new float[vector.length];
+        if (norm == 0.0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private double[] parseEmbedding(String embeddingJson) throws IOException {
+        JsonNode jsonNode = objectMapper.readTree(embeddingJson);
+        if (!jsonNode.isArray()) {
+            throw new IOException("Embedding is not a JSON array");
+        }
+        double[] embedding = new double[jsonNode.size()];
+        for (int i = 0; i < embedding.length; i++) {
+            embedding[i] = jsonNode.get(i).asDouble();
+        }
+        return embedding;
+    }
+}
@@ -0,0 +1,304 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.data_access_layer.Dbmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 数据库任务队列
+ * 任务持久化在jobs表中（类型、JSON参数、优先级、尝试次数、可见性超时），每个节点启动固定数量的工作线程，
+ * 以 FOR UPDATE SKIP LOCKED 领取已注册类型的任务并交给对应的处理器。
+ * 失败的任务按指数退避重试，处理中崩溃的任务在可见性超时后被任意节点重新领取
+ */
+public class JobQueueService {
+    private static final String CONFIG_FILE = "jobs.properties";
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+
+    private static JobQueueService instance;
+
+    /**
+     * 任务处理器
+     */
+    public interface JobHandler {
+        /**
+         * 处理一个任务，需在可见性超时内完成；同一任务可能被执行多次，处理应当是幂等的
+         * @param payload 任务参数
+         * @param workerDb 工作线程的数据库连接
+         * @return 任务结果（保存为JSON），可以为null
+         * @throws IllegalArgumentException 任务不可能成功（如引用的记录已不存在），不再重试
+         * @throws Exception 其他失败，尝试次数未用尽时重新排队
+         */
+        Map<String, Object> handle(Map<String, Object> payload, Dbmanager workerDb) throws Exception;
+    }
+
+    private final Dbmanager dbManager;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, JobHandler> handlers = new ConcurrentHashMap<>();
+    private final Object workSignal = new Object();
+    private final String nodeId;
+    private int workerCount;
+    private long pollIntervalMillis;
+    private int visibilitySeconds;
+    private int maxAttempts;
+    private int retryBackoffSeconds;
+    private volatile boolean running;
+
+    /**
+     * 获取全局任务队列（工作线程由start()启动）
+     */
+    public static synchronized JobQueueService getInstance() {
+        if (instance == null) {
+            instance = new JobQueueService();
+        }
+        return instance;
+    }
+
+    private JobQueueService() {
+        this.dbManager = new Dbmanager();
+        this.nodeId = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID().toString().substring(0, 8);
+        loadConfiguration();
+    }
+
+    /**
+     * 加载任务配置，文件不存在时使用默认值
+     */
+    private void loadConfiguration() {
+        Properties props = new Properties();
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (input != null) {
+                props.load(input);
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not load " + CONFIG_FILE + ": " + e.getMessage());
+        }
+
+        this.workerCount = Integer.parseInt(props.getProperty("jobs.workers", "4"));
+        this.pollIntervalMillis = Long.parseLong(props.getProperty("jobs.poll_interval_ms", "5000"));
+        this.visibilitySeconds = Integer.parseInt(props.getProperty("jobs.visibility_timeout_seconds", "600"));
+        this.maxAttempts = Integer.parseInt(props.getProperty("jobs.max_attempts", "3"));
+        this.retryBackoffSeconds = Integer.parseInt(props.getProperty("jobs.retry_backoff_seconds", "30"));
+    }
+
+    /**
+     * 注册任务类型的处理器，需在start()之前调用
+     */
+    public void registerHandler(String jobType, JobHandler handler) {
+        handlers.put(jobType, handler);
+    }
+
+    /**
+     * 启动工作线程，只领取已注册类型的任务
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < workerCount; i++) {
+            String owner = nodeId + "#" + i;
+            Thread worker = new Thread(() -> runWorker(owner), "job-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        System.out.println("JobQueueService: Started " + workerCount + " job workers for " + handlers.keySet());
+    }
+
+    /**
+     * 停止工作线程（正在处理的任务在可见性超时后重新被领取）
+     */
+    public void shutdown() {
+        synchronized (JobQueueService.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+        running = false;
+        synchronized (workSignal) {
+            workSignal.notifyAll();
+        }
+        synchronized (this) {
+            dbManager.closeConnection();
+        }
+    }
+
+    /**
+     * 提交任务；dedupeKey不为空且已有相同类型和去重键的未结束任务时直接返回该任务
+     * 去重由jobs表上(job_type, active_key)的唯一键保证，多个节点同时提交时只有一个插入成功
+     * @param jobType 任务类型
+     * @param payload 任务参数
+     * @param priority 优先级，越大越先执行
+     * @param dedupeKey 去重键，可以为null
+     * @return 任务Map（payload和result已解析），existing表示是否为已有任务
+     * @throws SQLException 如果数据库操作失败
+     */
+    public Map<String, Object> enqueue(String jobType, Map<String, Object> payload, int priority,
+                                       String dedupeKey) throws SQLException {
+        return enqueue(jobType, payload, priority, dedupeKey, true);
+    }
+
+    /**
+     * 提交任务，可选择只与排队中的任务去重
+     * 任务在执行时读取最新数据（如候选集刷新）时应传false：执行中的任务可能已读到旧数据，新的提交不能合并进去
+     * @param dedupeWhileRunning 为true时与排队中和执行中的任务去重，为false时只与排队中的任务去重
+     * @see #enqueue(String, Map, int, String)
+     */
+    public synchronized Map<String, Object> enqueue(String jobType, Map<String, Object> payload, int priority,
+                                                    String dedupeKey, boolean dedupeWhileRunning) throws SQLException {
+        String payloadJson;
+        try {
+            payloadJson = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Job payload is not serializable: " + e.getMessage(), e);
+        }
+
+        long jobId = -1;
+        for (int attempt = 0; jobId <= 0; attempt++) {
+            if (dedupeKey != null) {
+                Map<String, Object> active = dbManager.getActiveJob(jobType, dedupeKey);
+                if (active != null) {
+                    Map<String, Object> job = parseJob(active);
+                    job.put("existing", true);
+                    return job;
+                }
+            }
+            try {
+                jobId = dbManager.insertJob(jobType, payloadJson, priority, dedupeKey, dedupeWhileRunning, maxAttempts);
+            } catch (SQLIntegrityConstraintViolationException e) {
+                // 其他节点刚插入了相同去重键的任务，重新查询并返回它；该任务在查询前已结束时再次插入
+                if (attempt >= 2) {
+                    throw e;
+                }
+                continue;
+            }
+            if (jobId <= 0) {
+                throw new SQLException("Failed to insert job");
+            }
+        }
+
+        synchronized (workSignal) {
+            workSignal.notify();
+        }
+
+        Map<String, Object> job = parseJob(dbManager.getJob(jobId));
+        job.put("existing", false);
+        return job;
+    }
+
+    /**
+     * 获取任务
+     * @return 任务Map（payload和result已解析），不存在时返回null
+     */
+    public synchronized Map<String, Object> getJob(long jobId) throws SQLException {
+        Map<String, Object> job = dbManager.getJob(jobId);
+        return job != null ? parseJob(job) : null;
+    }
+
+    /**
+     * 统计某类型排队中的任务数量
+     */
+    public synchronized int countQueued(String jobType) throws SQLException {
+        return dbManager.countQueuedJobs(jobType);
+    }
+
+    /**
+     * 工作线程：使用自己的数据库连接领取并处理任务，没有可执行的任务时等待新任务或轮询间隔
+     */
+    private void runWorker(String owner) {
+        Dbmanager workerDb = new Dbmanager();
+        List<String> jobTypes = new ArrayList<>(handlers.keySet());
+
+        try {
+            while (running) {
+                Map<String, Object> job;
+                try {
+                    job = workerDb.claimNextJob(jobTypes, owner, visibilitySeconds);
+                } catch (SQLException e) {
+                    System.err.println("JobQueueService: Failed to claim job: " + e.getMessage());
+                    job = null;
+                }
+
+                if (job == null) {
+                    synchronized (workSignal) {
+                        workSignal.wait(pollIntervalMillis);
+                    }
+                    continue;
+                }
+
+                processJob(parseJob(job), owner, workerDb);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workerDb.closeConnection();
+        }
+    }
+
+    /**
+     * 处理单个任务，结果或失败原因写回任务记录
+     */
+    @SuppressWarnings("unchecked")
+    private void processJob(Map<String, Object> job, String owner, Dbmanager workerDb) {
+        long jobId = (Long) job.get("job_id");
+        String jobType = (String) job.get("job_type");
+        int attempts = (Integer) job.get("attempts");
+        int jobMaxAttempts = (Integer) job.get("max_attempts");
+        JobHandler handler = handlers.get(jobType);
+
+        try {
+            Map<String, Object> result = handler.handle((Map<String, Object>) job.get("payload"), workerDb);
+            String resultJson = result != null ? objectMapper.writeValueAsString(result) : null;
+            if (!workerDb.completeJob(jobId, owner, resultJson)) {
+                System.err.println("JobQueueService: Job " + jobId + " finished after its visibility timeout expired");
+            }
+        } catch (Exception e) {
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            try {
+                if (e instanceof IllegalArgumentException || attempts >= jobMaxAttempts) {
+                    System.err.println("❌ " + jobType + " job " + jobId + " failed: " + message);
+                    workerDb.failJob(jobId, owner, message);
+                } else {
+                    int delaySeconds = retryBackoffSeconds << (attempts - 1);
+                    System.err.println("⚠️ " + jobType + " job " + jobId + " failed (attempt " + attempts + "/"
+                            + jobMaxAttempts + "), retrying in " + delaySeconds + "s: " + message);
+                    workerDb.retryJob(jobId, owner, message, delaySeconds);
+                }
+            } catch (SQLException ex) {
+                System.err.println("JobQueueService: Failed to record failure of job " + jobId + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 把数据库中的payload和result从JSON解析为Map
+     */
+    private Map<String, Object> parseJob(Map<String, Object> job) {
+        job.put("payload", parseJson((String) job.get("payload")));
+        job.put("result", parseJson((String) job.get("result")));
+        return job;
+    }
+
+    private Map<String, Object> parseJson(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, MAP_TYPE);
+        } catch (JsonProcessingException e) {
+            System.err.println("JobQueueService: Invalid job JSON: " + e.getMessage());
+            return null;
+        }
+    }
+}
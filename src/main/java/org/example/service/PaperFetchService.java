@@ -1,14 +1,19 @@
 package org.example.service;
 
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * 论文抓取服务
@@ -16,10 +21,17 @@ import java.util.regex.Pattern;
  */
 public class PaperFetchService {
     private static final String ARXIV_API_BASE = "http://export.arxiv.org/api/query";
+    // 批量抓取时每个请求包含的ID数量
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    // arXiv要求两次请求间隔至少3秒
+    private static final long REQUEST_INTERVAL_MILLIS = 3000;
+
     private final OkHttpClient httpClient;
+    private final ArxivAtomParser atomParser;
 
     public PaperFetchService() {
-        this.httpClient = new OkHttpClient();
+        this.httpClient = HttpClientRegistry.client(HttpClientRegistry.Upstream.ARXIV);
+        this.atomParser = new ArxivAtomParser();
     }
 
     /**
@@ -29,6 +41,17 @@ public class PaperFetchService {
      * @throws IOException 如果API调用失败
      */
     public Map<String, String> fetchPaperByArxivId(String arxivId) throws IOException {
+        ArxivEntry entry = fetchEntryByArxivId(arxivId);
+        return entry != null ? entry.toPaperInfo() : Map.of();
+    }
+
+    /**
+     * 根据arXiv ID抓取论文条目
+     * @param arxivId arXiv论文ID（如：2301.00001）
+     * @return 论文条目，arXiv上不存在时返回null
+     * @throws IOException 如果API调用失败
+     */
+    public ArxivEntry fetchEntryByArxivId(String arxivId) throws IOException {
         String url = ARXIV_API_BASE + "?id_list=" + arxivId;
         Request request = new Request.Builder().url(url).get().build();
 
@@ -36,85 +59,98 @@ public class PaperFetchService {
             if (!response.isSuccessful()) {
                 throw new IOException("Unexpected code " + response);
             }
-            String responseBody = response.body().string();
-            return parseArxivResponse(responseBody);
+            ArxivEntry[] first = new ArxivEntry[1];
+            try (InputStream body = response.body().byteStream()) {
+                atomParser.parse(body, entry -> {
+                    if (first[0] == null) {
+                        first[0] = entry;
+                    }
+                });
+            }
+            return first[0];
         }
     }
 
     /**
-     * 解析arXiv API的XML响应
+     * 批量抓取论文，每个请求通过id_list携带最多batchSize个ID
+     * @param arxivIds arXiv论文ID列表（可带版本号）
+     * @param batchSize 每个请求包含的ID数量
+     * @return 以请求ID为键的抓取结果，以及arXiv上不存在的ID
+     * @throws IOException 如果API调用失败
      */
-    private Map<String, String> parseArxivResponse(String xmlResponse) throws IOException {
-        Map<String, String> paperInfo = new HashMap<>();
-        
-        // 使用正则表达式提取entry标签内的内容
-        Pattern entryPattern = Pattern.compile("<entry>(.*?)</entry>", Pattern.DOTALL);
-        Matcher entryMatcher = entryPattern.matcher(xmlResponse);
-
-        if (entryMatcher.find()) {
-            String entryXml = entryMatcher.group(1);
-
-            // 提取标题（在entry标签内）
-            String title = extractXmlValue(entryXml, "<title>", "</title>");
-            if (title != null) {
-                title = title.replaceAll("\\s+", " ").trim();
-                paperInfo.put("title", title);
-            }
-
-            // 提取作者
-            String authors = extractAuthors(entryXml);
-            paperInfo.put("author", authors);
+    public BatchFetchResult fetchEntriesByArxivIds(Collection<String> arxivIds, int batchSize) throws IOException {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(arxivIds));
+        int size = Math.max(1, batchSize);
+        BatchFetchResult result = new BatchFetchResult();
 
-            // 提取摘要
-            String summary = extractXmlValue(entryXml, "<summary>", "</summary>");
-            if (summary != null) {
-                summary = summary.replaceAll("\\s+", " ").trim();
-                paperInfo.put("abstract", summary);
+        for (int from = 0; from < ids.size(); from += size) {
+            List<String> chunk = ids.subList(from, Math.min(from + size, ids.size()));
+            if (from > 0) {
+                try {
+                    Thread.sleep(REQUEST_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted between arXiv batch requests", e);
+                }
             }
 
-            // 提取PDF URL
-            String pdfUrl = extractXmlValue(entryXml, "<id>", "</id>");
-            if (pdfUrl != null && pdfUrl.contains("arxiv.org")) {
-                pdfUrl = pdfUrl.replace("/abs/", "/pdf/") + ".pdf";
-                paperInfo.put("pdf_url", pdfUrl);
+            Map<String, ArxivEntry> returned = fetchChunk(chunk);
+            for (String id : chunk) {
+                ArxivEntry entry = returned.get(id.trim());
+                if (entry != null) {
+                    result.found.put(id, entry);
+                } else {
+                    result.missing.add(id);
+                }
             }
         }
-        
-        return paperInfo;
+        return result;
     }
 
     /**
-     * 从XML中提取指定标签的值
+     * 抓取一批ID，返回同时以带版本号和不带版本号的ID为键的条目
      */
-    private String extractXmlValue(String xml, String startTag, String endTag) {
-        int startIndex = xml.indexOf(startTag);
-        if (startIndex == -1) {
-            return null;
-        }
-        startIndex += startTag.length();
-        int endIndex = xml.indexOf(endTag, startIndex);
-        if (endIndex == -1) {
-            return null;
+    private Map<String, ArxivEntry> fetchChunk(List<String> chunk) throws IOException {
+        HttpUrl url = HttpUrl.get(ARXIV_API_BASE).newBuilder()
+                .addQueryParameter("id_list", String.join(",", chunk))
+                .addQueryParameter("max_results", String.valueOf(chunk.size()))
+                .build();
+        Request request = new Request.Builder().url(url).get().build();
+
+        Map<String, ArxivEntry> entries = new HashMap<>();
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Unexpected code " + response);
+            }
+            try (InputStream body = response.body().byteStream()) {
+                atomParser.parse(body, entry -> {
+                    entries.put(entry.getVersionedId(), entry);
+                    entries.putIfAbsent(entry.getArxivId(), entry);
+                });
+            }
         }
-        return xml.substring(startIndex, endIndex).trim();
+        return entries;
     }
 
     /**
-     * 提取作者列表
+     * 批量抓取结果
      */
-    private String extractAuthors(String entryXml) {
-        Pattern authorPattern = Pattern.compile("<name>(.*?)</name>");
-        Matcher authorMatcher = authorPattern.matcher(entryXml);
-        
-        StringBuilder authors = new StringBuilder();
-        while (authorMatcher.find()) {
-            if (authors.length() > 0) {
-                authors.append(", ");
-            }
-            authors.append(authorMatcher.group(1).trim());
+    public static class BatchFetchResult {
+        private final Map<String, ArxivEntry> found = new LinkedHashMap<>();
+        private final List<String> missing = new ArrayList<>();
+
+        /**
+         * 以请求ID为键的论文条目
+         */
+        public Map<String, ArxivEntry> getFound() {
+            return found;
+        }
+
+        /**
+         * arXiv上不存在的请求ID
+         */
+        public List<String> getMissing() {
+            return missing;
         }
-        
-        return authors.length() > 0 ? authors.toString() : "Unknown";
     }
 }
-
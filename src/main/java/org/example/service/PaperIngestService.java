@@ -0,0 +1,200 @@
+package org.example.service;
+
+import org.example.data_access_layer.Dbmanager;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 论文入库服务
+ * 从arXiv抓取论文并写入数据库，供PapersApi和FetchOrchestrator在进程内共用
+ * 论文按arXiv ID幂等入库：已入库且版本未更新的论文不会重复抓取、插入或建立索引
+ */
+public class PaperIngestService {
+    private final PaperFetchService paperFetchService;
+    private final Dbmanager dbManager;
+
+    public PaperIngestService(PaperFetchService paperFetchService, Dbmanager dbManager) {
+        this.paperFetchService = paperFetchService;
+        this.dbManager = dbManager;
+    }
+
+    /**
+     * 根据arXiv ID抓取论文并写入papers表，已入库的论文直接返回，不再请求arXiv
+     * @param arxivId arXiv论文ID（如：2301.00001）
+     * @return 包含paper_id、title、author、existing的Map；arXiv上不存在该论文时返回null
+     * @throws IOException 如果arXiv API调用失败
+     * @throws SQLException 如果写入数据库失败
+     */
+    public Map<String, Object> ingestByArxivId(String arxivId) throws IOException, SQLException {
+        Map<String, Object> existing = dbManager.getPaperByArxivId(ArxivEntry.stripVersion(arxivId));
+        if (existing != null) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("paper_id", existing.get("paper_id"));
+            result.put("title", existing.get("title"));
+            result.put("author", existing.get("author"));
+            result.put("existing", true);
+            return result;
+        }
+
+        ArxivEntry entry = paperFetchService.fetchEntryByArxivId(arxivId);
+        if (entry == null) {
+            return null;
+        }
+        Map<String, Object> result = ingestEntry(entry);
+        result.put("existing", false);
+        return result;
+    }
+
+    /**
+     * 批量抓取论文并写入papers表，每个arXiv请求最多包含100个ID
+     * 请求arXiv前先批量排除已入库的ID
+     * @param arxivIds arXiv论文ID列表
+     * @return 包含papers（新入库论文）、existing（已入库的ID）、missing（arXiv上不存在的ID）、failed（入库失败的ID）的Map
+     * @throws IOException 如果arXiv API调用失败
+     * @throws SQLException 如果查询已入库论文失败
+     */
+    public Map<String, Object> ingestByArxivIds(List<String> arxivIds) throws IOException, SQLException {
+        Set<String> baseIds = new LinkedHashSet<>();
+        for (String arxivId : arxivIds) {
+            baseIds.add(ArxivEntry.stripVersion(arxivId));
+        }
+        Map<String, Integer> known = dbManager.getKnownArxivVersions(baseIds);
+
+        List<String> existing = new ArrayList<>();
+        List<String> toFetch = new ArrayList<>();
+        for (String arxivId : arxivIds) {
+            if (known.containsKey(ArxivEntry.stripVersion(arxivId))) {
+                existing.add(arxivId);
+            } else {
+                toFetch.add(arxivId);
+            }
+        }
+
+        List<Map<String, Object>> papers = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        if (!toFetch.isEmpty()) {
+            PaperFetchService.BatchFetchResult fetched =
+                    paperFetchService.fetchEntriesByArxivIds(toFetch, PaperFetchService.DEFAULT_BATCH_SIZE);
+            missing.addAll(fetched.getMissing());
+
+            for (Map.Entry<String, ArxivEntry> item : fetched.getFound().entrySet()) {
+                try {
+                    Map<String, Object> paper = ingestEntry(item.getValue());
+                    paper.put("arxiv_id", item.getKey());
+                    papers.add(paper);
+                } catch (SQLException e) {
+                    System.err.println("Failed to insert paper " + item.getKey() + ": " + e.getMessage());
+                    failed.add(item.getKey());
+                }
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("papers", papers);
+        result.put("existing", existing);
+        result.put("missing", missing);
+        result.put("failed", failed);
+        return result;
+    }
+
+    /**
+     * 批量写入已解析的arXiv条目，先批量查询已入库并建立索引的ID，
+     * 只写入新论文、版本号更大的论文以及入库后尚未建立索引的论文；
+     * 需要写入的论文用一次多行事务upsert写入，再用一次查询取回paper_id
+     * @param entries arXiv论文条目
+     * @return 需要（重新）建立向量索引的论文，每项包含paper_id、title、author和abstract
+     * @throws SQLException 如果查询已入库论文或写入失败（整批回滚）
+     */
+    public List<Map<String, Object>> ingestEntries(List<ArxivEntry> entries) throws SQLException {
+        Set<String> ids = new LinkedHashSet<>();
+        for (ArxivEntry entry : entries) {
+            ids.add(entry.getArxivId());
+        }
+        Map<String, Integer> indexed = dbManager.getIndexedArxivVersions(ids);
+
+        // 同一批中重复的论文只保留版本号最大的条目
+        Map<String, ArxivEntry> changed = new LinkedHashMap<>();
+        for (ArxivEntry entry : entries) {
+            Integer indexedVersion = indexed.get(entry.getArxivId());
+            if (indexedVersion != null && indexedVersion >= entry.getVersion()) {
+                continue;
+            }
+            ArxivEntry previous = changed.get(entry.getArxivId());
+            if (previous == null || previous.getVersion() < entry.getVersion()) {
+                changed.put(entry.getArxivId(), entry);
+            }
+        }
+        if (changed.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>(changed.size());
+        for (ArxivEntry entry : changed.values()) {
+            rows.add(entry.toPaperRow());
+        }
+        // 写入失败时整批失败，调用方不能保存越过该批的检查点，否则续抓时会永久跳过这些论文
+        try {
+            dbManager.upsertPapers(rows);
+        } catch (SQLException e) {
+            throw new SQLException("Failed to insert batch of " + rows.size() + " papers: " + e.getMessage(), e);
+        }
+        Map<String, Integer> paperIds = dbManager.getPaperIdsByArxivIds(changed.keySet());
+
+        List<Map<String, Object>> changedPapers = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Integer paperId = paperIds.get((String) row.get("arxiv_id"));
+            if (paperId == null) {
+                throw new SQLException("Failed to insert paper " + row.get("arxiv_id"));
+            }
+            Map<String, Object> paper = new HashMap<>();
+            paper.put("paper_id", paperId);
+            paper.put("title", row.get("title"));
+            paper.put("author", row.get("author"));
+            paper.put("abstract", row.get("abstract"));
+            changedPapers.add(paper);
+        }
+        return changedPapers;
+    }
+
+    /**
+     * 将已解析的arXiv条目按arXiv ID插入或更新到papers表，无需再次请求arXiv
+     * @param entry arXiv论文条目
+     * @return 包含paper_id、title、author的Map
+     * @throws SQLException 如果写入数据库失败
+     */
+    public Map<String, Object> ingestEntry(ArxivEntry entry) throws SQLException {
+        Map<String, String> paperInfo = entry.toPaperInfo();
+        String title = paperInfo.get("title");
+        String author = paperInfo.get("author");
+        String abstractText = paperInfo.get("abstract");
+        String pdfUrl = paperInfo.get("pdf_url");
+
+        int paperId = dbManager.upsertPaper(
+            entry.getArxivId(),
+            entry.getVersion(),
+            title != null ? title : "",
+            author != null ? author : "",
+            abstractText != null ? abstractText : "",
+            pdfUrl != null ? pdfUrl : ""
+        );
+
+        if (paperId <= 0) {
+            throw new SQLException("Failed to insert paper");
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("paper_id", paperId);
+        result.put("title", title);
+        result.put("author", author);
+        return result;
+    }
+}
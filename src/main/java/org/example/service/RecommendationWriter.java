@@ -0,0 +1,163 @@
+package org.example.service;
+
+import org.example.data_access_layer.Dbmanager;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 推荐写入服务
+ * 使用调用方已加载的用户和论文数据生成博客并写入推荐表，避免重复查询
+ * 博客按论文内容和提示词版本缓存在paper_blogs表中，推荐记录只保存引用
+ */
+public class RecommendationWriter {
+    // 所有写入器共享，按论文和内容地址合并进行中的博客生成
+    private static final SingleFlight<String, Map<String, Object>> blogFlights = new SingleFlight<>();
+
+    private final BlogGeneratorService blogGeneratorService;
+    private final Dbmanager dbManager;
+
+    public RecommendationWriter(BlogGeneratorService blogGeneratorService, Dbmanager dbManager) {
+        this.blogGeneratorService = blogGeneratorService;
+        this.dbManager = dbManager;
+    }
+
+    /**
+     * 为用户生成论文博客并写入recommendations表
+     * 同一论文内容和提示词版本的博客只生成一次，其他用户的推荐直接引用paper_blogs中的博客
+     * @param userId 用户ID
+     * @param paper 论文信息Map（至少包含paper_id、title、author、abstract）
+     * @return 包含recommendation_id和blog的结果
+     * @throws IOException 如果博客生成失败
+     * @throws SQLException 如果写入数据库失败
+     */
+    public RecommendationResult writeRecommendation(int userId, Map<String, Object> paper)
+            throws IOException, SQLException {
+        return streamRecommendation(userId, paper, null);
+    }
+
+    /**
+     * 以流式方式生成论文博客，生成完成后写入recommendations表
+     * 命中缓存或合并到进行中的生成时不调用DeepSeek，整篇博客作为一个片段回调
+     * @param userId 用户ID
+     * @param paper 论文信息Map（至少包含paper_id、title、author、abstract）
+     * @param listener 内容片段监听器，为null时一次性生成
+     * @return 包含recommendation_id和完整blog的结果
+     * @throws IOException 如果博客生成失败或流被中断
+     * @throws SQLException 如果写入数据库失败
+     */
+    public RecommendationResult streamRecommendation(int userId, Map<String, Object> paper,
+                                                     BlogGeneratorService.BlogStreamListener listener)
+            throws IOException, SQLException {
+        int paperId = (Integer) paper.get("paper_id");
+        String paperTitle = paper.get("title") != null ? (String) paper.get("title") : "";
+        String paperAuthor = paper.get("author") != null ? (String) paper.get("author") : "";
+        String paperAbstract = paper.get("abstract") != null ? (String) paper.get("abstract") : "";
+
+        // 先查按论文共享的博客，只有未命中时才调用DeepSeek
+        String contentHash = blogGeneratorService.contentHash(paperTitle, paperAuthor, paperAbstract);
+        Map<String, Object> cached = dbManager.getPaperBlog(paperId, contentHash);
+        if (cached != null) {
+            String blogContent = (String) cached.get("blog");
+            if (listener != null) {
+                listener.onDelta(blogContent);
+            }
+            int recommendationId = insertRecommendation(userId, paperId, (Integer) cached.get("blog_id"));
+            return new RecommendationResult(recommendationId, blogContent, true);
+        }
+
+        // 同一博客的并发请求（如重复点击、编排器与API同时触发）合并为一次生成和写入，
+        // 合并的请求直接得到写入后的博客ID，合并结束后到达的请求查询时命中缓存
+        boolean[] generated = new boolean[1];
+        Map<String, Object> blog;
+        try {
+            blog = blogFlights.execute(paperId + ":" + contentHash, () -> {
+                // 查询缓存之后、加入合并之前，上一次生成可能刚好写入完成
+                Map<String, Object> stored = dbManager.getPaperBlog(paperId, contentHash);
+                if (stored != null) {
+                    return stored;
+                }
+                generated[0] = true;
+                return generateAndStoreBlog(paperId, contentHash, paperTitle, paperAuthor, paperAbstract, listener);
+            });
+        } catch (IOException | SQLException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // 生成和写入只抛出以上异常
+            throw new IOException("Blog generation failed", e);
+        }
+
+        String blogContent = (String) blog.get("blog");
+        if (!generated[0] && listener != null) {
+            // 等待了其他请求的生成结果或命中缓存，整篇博客作为一个片段回调
+            listener.onDelta(blogContent);
+        }
+
+        int recommendationId = insertRecommendation(userId, paperId, (Integer) blog.get("blog_id"));
+        return new RecommendationResult(recommendationId, blogContent, !generated[0]);
+    }
+
+    /**
+     * 调用DeepSeek生成博客并写入paper_blogs
+     * @return 包含blog_id和blog的Map
+     */
+    private Map<String, Object> generateAndStoreBlog(int paperId, String contentHash, String paperTitle,
+                                                     String paperAuthor, String paperAbstract,
+                                                     BlogGeneratorService.BlogStreamListener listener)
+            throws IOException, SQLException {
+        String blogContent = listener != null
+                ? blogGeneratorService.streamBlog(paperTitle, paperAuthor, paperAbstract, listener)
+                : blogGeneratorService.generateBlog(paperTitle, paperAuthor, paperAbstract);
+
+        // 相同内容地址只保留一份，其他节点并发写入时得到同一个博客ID
+        int blogId = dbManager.insertPaperBlog(paperId, blogGeneratorService.getPromptVersion(), contentHash, blogContent);
+        if (blogId <= 0) {
+            throw new SQLException("Failed to insert paper blog");
+        }
+
+        Map<String, Object> blog = new HashMap<>();
+        blog.put("blog_id", blogId);
+        blog.put("blog", blogContent);
+        return blog;
+    }
+
+    private int insertRecommendation(int userId, int paperId, int blogId) throws SQLException {
+        int recommendationId = dbManager.insertRecommendation(userId, paperId, blogId);
+        if (recommendationId <= 0) {
+            throw new SQLException("Failed to insert recommendation");
+        }
+        return recommendationId;
+    }
+
+    /**
+     * 推荐写入结果
+     */
+    public static class RecommendationResult {
+        private final int recommendationId;
+        private final String blog;
+        private final boolean cached;
+
+        public RecommendationResult(int recommendationId, String blog, boolean cached) {
+            this.recommendationId = recommendationId;
+            this.blog = blog;
+            this.cached = cached;
+        }
+
+        public int getRecommendationId() {
+            return recommendationId;
+        }
+
+        public String getBlog() {
+            return blog;
+        }
+
+        /**
+         * 博客是否来自按论文共享的缓存（未调用DeepSeek）
+         */
+        public boolean isCached() {
+            return cached;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package org.example.service;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 出站调用的重试与熔断拦截器
+ * 对可重试的请求在网络异常、429和5xx时按指数退避加随机抖动重试，优先遵守Retry-After；
+ * 连续失败达到阈值时打开熔断器，在冷却期内直接失败，冷却后放行一个试探请求
+ */
+public class ResilienceInterceptor implements Interceptor {
+    private final String upstream;
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final boolean retryPost;
+    private final CircuitBreaker circuitBreaker;
+    private final HttpClientMetrics metrics;
+
+    /**
+     * @param upstream 上游名称
+     * @param maxAttempts 最多尝试次数（含第一次）
+     * @param baseDelayMillis 退避基数（毫秒）
+     * @param maxDelayMillis 单次等待上限（毫秒），同样约束Retry-After
+     * @param retryPost 是否重试POST请求（仅当上游的POST没有副作用时开启）
+     * @param failureThreshold 打开熔断器的连续失败次数
+     * @param openMillis 熔断器打开后的冷却时间（毫秒）
+     * @param metrics 上游的调用指标
+     */
+    public ResilienceInterceptor(String upstream, int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                                 boolean retryPost, int failureThreshold, long openMillis,
+                                 HttpClientMetrics metrics) {
+        this.upstream = upstream;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.retryPost = retryPost;
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, openMillis);
+        this.metrics = metrics;
+        metrics.setCircuitBreaker(circuitBreaker);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        boolean retryable = isIdempotent(request);
+
+        for (int attempt = 1; ; attempt++) {
+            if (!circuitBreaker.allowRequest()) {
+                metrics.recordCircuitRejected();
+                throw new IOException("Circuit breaker is open for " + upstream + ", failing fast");
+            }
+
+            Response response = null;
+            IOException failure = null;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                // 线程被中断或调用被取消时不再重试；读写超时按普通失败处理
+                if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+                    circuitBreaker.releaseTrial();
+                    throw e;
+                }
+                failure = e;
+            }
+
+            if (failure == null && !isRetryableStatus(response.code())) {
+                circuitBreaker.recordSuccess();
+                return response;
+            }
+
+            recordFailure();
+            if (!retryable || attempt >= maxAttempts) {
+                metrics.recordGiveUp();
+                if (failure != null) {
+                    throw failure;
+                }
+                return response;
+            }
+
+            long delay = backoffDelay(attempt, response);
+            String reason = failure != null ? failure.getMessage() : "HTTP " + response.code();
+            if (response != null) {
+                response.close();
+            }
+            metrics.recordRetry();
+            System.err.println("⚠️ " + upstream + " call failed (" + reason + "), retrying in " + delay
+                    + "ms (attempt " + (attempt + 1) + "/" + maxAttempts + ")");
+            sleep(delay);
+        }
+    }
+
+    private void recordFailure() {
+        if (circuitBreaker.recordFailure()) {
+            metrics.recordCircuitOpened();
+            System.err.println("❌ Circuit breaker opened for " + upstream);
+        }
+    }
+
+    private boolean isIdempotent(Request request) {
+        String method = request.method();
+        return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method)
+                || "DELETE".equals(method) || (retryPost && "POST".equals(method));
+    }
+
+    private boolean isRetryableStatus(int code) {
+        return code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    /**
+     * 计算等待时间：有Retry-After时遵守它，否则为[0, min(上限, 基数*2^(n-1))]内的随机值（full jitter）
+     */
+    private long backoffDelay(int attempt, Response response) {
+        if (response != null) {
+            long retryAfter = parseRetryAfter(response.header("Retry-After"));
+            if (retryAfter >= 0) {
+                return Math.min(retryAfter, maxDelayMillis);
+            }
+        }
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * 解析Retry-After（秒数或HTTP日期）
+     * @return 等待毫秒数，无法解析时返回-1
+     */
+    private long parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, at.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException ignored) {
+                return -1;
+            }
+        }
+    }
+
+    private void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+
+    /**
+     * 熔断器
+     * CLOSED：正常放行，连续失败达到阈值后转为OPEN
+     * OPEN：拒绝所有请求，冷却时间过后转为HALF_OPEN
+     * HALF_OPEN：只放行一个试探请求，成功则CLOSED，失败则重新OPEN
+     */
+    public static class CircuitBreaker {
+        public enum State { CLOSED, OPEN, HALF_OPEN }
+
+        private final int failureThreshold;
+        private final long openMillis;
+
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean trialInFlight;
+
+        public CircuitBreaker(int failureThreshold, long openMillis) {
+            this.failureThreshold = Math.max(1, failureThreshold);
+            this.openMillis = openMillis;
+        }
+
+        public synchronized boolean allowRequest() {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+                state = State.HALF_OPEN;
+                trialInFlight = false;
+            }
+            if (state == State.OPEN) {
+                return false;
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+            }
+            return true;
+        }
+
+        public synchronized void recordSuccess() {
+            consecutiveFailures = 0;
+            state = State.CLOSED;
+            trialInFlight = false;
+        }
+
+        /**
+         * @return 本次失败是否使熔断器由关闭/半开转为打开
+         */
+        public synchronized boolean recordFailure() {
+            consecutiveFailures++;
+            trialInFlight = false;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 试探请求未得出结果（如被取消）时释放名额，允许下一个请求试探
+         */
+        public synchronized void releaseTrial() {
+            trialInFlight = false;
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+    }
+}
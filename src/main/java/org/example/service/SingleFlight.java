@@ -0,0 +1,96 @@
+package org.example.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 合并相同键的并发调用
+ * 同一个键同时只有一个调用在执行，其间到达的相同请求等待并共享它的结果或异常，
+ * 调用结束后键即被移除，之后的请求会重新执行
+ * 同一个键必须代表同一项工作，否则等待者会拿到与自己请求不符的结果
+ * @param <K> 键类型
+ * @param <V> 结果类型
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 可抛出受检异常的调用
+     */
+    @FunctionalInterface
+    public interface Call<V, E extends Exception> {
+        V call() throws E;
+    }
+
+    /**
+     * 在当前线程执行调用，已有相同键的调用在执行时等待并返回它的结果
+     * @param key 调用键
+     * @param call 实际调用
+     * @return 调用结果
+     * @throws E 本次或被合并的调用抛出的异常
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends Exception> V execute(K key, Call<V, E> call) throws E {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                // 相同键的调用抛出相同类型的受检异常
+                throw (E) cause;
+            }
+        }
+
+        try {
+            V value = call.call();
+            inFlight.remove(key, flight);
+            flight.complete(value);
+            return value;
+        } catch (Exception | Error e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * 异步调用，已有相同键的调用在执行时直接返回它的Future
+     * @param key 调用键
+     * @param call 发起实际调用并返回其Future
+     * @return 共享的结果Future
+     */
+    public CompletableFuture<V> submit(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return existing;
+        }
+
+        CompletableFuture<V> source;
+        try {
+            source = call.get();
+        } catch (RuntimeException | Error e) {
+            source = CompletableFuture.failedFuture(e);
+        }
+        source.whenComplete((value, error) -> {
+            inFlight.remove(key, flight);
+            if (error != null) {
+                flight.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            } else {
+                flight.complete(value);
+            }
+        });
+        return flight;
+    }
+}
@@ -58,7 +58,22 @@ if ($fetchSuccess -and $paperId) {
     Write-Host "正在生成博客..." -ForegroundColor Gray
 
     try {
-        $blogResponse = Invoke-RestMethod -Uri "$baseUrl/api/papers/$paperId/generate-blog" -Method POST -ContentType "application/json" -Body $blogBody -ErrorAction Stop
+        $jobResponse = Invoke-RestMethod -Uri "$baseUrl/api/papers/$paperId/generate-blog" -Method POST -ContentType "application/json" -Body $blogBody -ErrorAction Stop
+
+        Write-Host "博客生成任务已提交" -ForegroundColor Green
+        $jobResponse | ConvertTo-Json -Depth 10
+        Write-Host ""
+
+        # 轮询任务状态，直到成功或失败
+        $statusUrl = "$baseUrl$($jobResponse.data.status_url)"
+        $jobStatus = $jobResponse.data.job_status
+        while ($jobStatus -eq "queued" -or $jobStatus -eq "running") {
+            Start-Sleep -Seconds 3
+            $jobStatus = (Invoke-RestMethod -Uri $statusUrl -Method GET -ErrorAction Stop).data.job_status
+            Write-Host "任务状态: $jobStatus" -ForegroundColor Gray
+        }
+
+        $blogResponse = Invoke-RestMethod -Uri "$baseUrl$($jobResponse.data.result_url)" -Method GET -ErrorAction Stop
 
         Write-Host "博客生成成功！" -ForegroundColor Green
         Write-Host ""
@@ -0,0 +1,25 @@
+-- 迁移脚本：增量推荐评分
+-- 每次推荐只对上次评分之后新建立索引的论文计算相似度，并与持久化的候选集合并
+
+-- 每个用户的评分水位
+CREATE TABLE IF NOT EXISTS user_scoring_state (
+    user_id INT PRIMARY KEY,
+    last_embedding_id INT NOT NULL DEFAULT 0,   -- 已评分的最大paper_embeddings.id
+    interest_embedding_id INT NULL,             -- 评分时使用的interest_embeddings.id，兴趣变化后重新全量评分
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE CASCADE
+);
+
+-- 每个用户得分最高的未推荐论文（最多recommend.candidate_heap_size篇）
+CREATE TABLE IF NOT EXISTS user_candidates (
+    user_id INT NOT NULL,
+    paper_id INT NOT NULL,
+    score DOUBLE NOT NULL,                      -- 用户兴趣与论文摘要向量的余弦相似度
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, paper_id),
+    INDEX idx_user_candidates_score (user_id, score),
+    FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE CASCADE,
+    FOREIGN KEY (paper_id) REFERENCES papers(paper_id) ON DELETE CASCADE
+);
+
+COMMIT;